@@ -0,0 +1,70 @@
+package com.uyghurjava.spring.security.login.benchmark;
+
+import com.uyghurjava.spring.security.login.security.service.audit.AuditLog;
+import com.uyghurjava.spring.security.login.security.service.metrics.AuthMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AuditLog.signin() as called by AuthController: the cost added to a request, with the writer thread draining
+ * the ring into segment files of a temporary directory. The dropped count is printed at the end of each trial:
+ * when it is not 0 the writer did not keep up and part of the time measured is the drop path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AuditLogBenchmark {
+
+    private Path directory;
+    private AuditLog auditLog;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("audit-benchmark");
+        auditLog = new AuditLog();
+        ReflectionTestUtils.setField(auditLog, "directory", directory.toString());
+        ReflectionTestUtils.setField(auditLog, "bufferSize", 65536);
+        ReflectionTestUtils.setField(auditLog, "segmentBytes", 64L << 20);
+        ReflectionTestUtils.setField(auditLog, "maxSegments", 4);
+        ReflectionTestUtils.setField(auditLog, "forceMs", 1000L);
+        auditLog.init();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        auditLog.shutdown();
+        System.out.println("audit log: " + auditLog.stats());
+        File[] segments = directory.toFile().listFiles();
+        if(segments != null){
+            for (File segment : segments){
+                segment.delete();
+            }
+        }
+        directory.toFile().delete();
+    }
+
+    @Benchmark
+    public void signin(){
+        auditLog.signin(AuthMetrics.SigninOutcome.SUCCESS, 42, "benchmarkUser", "192.168.1.10");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void signinConcurrent(){
+        auditLog.signin(AuthMetrics.SigninOutcome.SUCCESS, 42, "benchmarkUser", "192.168.1.10");
+    }
+}
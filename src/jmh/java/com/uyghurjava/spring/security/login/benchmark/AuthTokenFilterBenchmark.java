@@ -0,0 +1,82 @@
+package com.uyghurjava.spring.security.login.benchmark;
+
+import com.uyghurjava.spring.security.login.security.service.UserDetailsImpl;
+import com.uyghurjava.spring.security.login.security.service.UserDetailsServiceImpl;
+import com.uyghurjava.spring.security.login.security.service.jwt.AuthTokenFilter;
+import com.uyghurjava.spring.security.login.security.service.jwt.JwtUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AuthTokenFilter.doFilterInternal() against a mock request carrying the JWT cookie
+ * (tokenMode=session: the opaque session token, cacheMaxSize and statelessPrincipal do not apply).
+ * The user lookup returns a prebuilt UserDetails, so the database is not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AuthTokenFilterBenchmark {
+
+    private static final String FILTERED_ATTRIBUTE = AuthTokenFilter.class.getName() + ".FILTERED";
+
+    @Param({"0", "10000"})
+    public int cacheMaxSize;
+
+    @Param({"false", "true"})
+    public boolean statelessPrincipal;
+
+    @Param({"jwt", "session"})
+    public String tokenMode;
+
+    private AuthTokenFilter filter;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setUp(){
+        JwtUtils jwtUtils = BenchmarkFixtures.jwtUtils(cacheMaxSize, statelessPrincipal, tokenMode);
+        UserDetailsImpl userDetails = UserDetailsImpl.build(BenchmarkFixtures.user(2));
+        UserDetailsServiceImpl userDetailsService = new UserDetailsServiceImpl() {
+            @Override
+            public UserDetails loadUserByUsername(String username) {
+                return userDetails;
+            }
+        };
+        filter = new AuthTokenFilter();
+        ReflectionTestUtils.setField(filter, "jwtUtils", jwtUtils);
+        ReflectionTestUtils.setField(filter, "userDetailsService", userDetailsService);
+        ReflectionTestUtils.setField(filter, "authMetrics", BenchmarkFixtures.authMetrics());
+
+        String token = jwtUtils.generateJwtCookie(userDetails).getValue();
+        request = new MockHttpServletRequest("GET", "/api/test/user");
+        request.setCookies(new Cookie(BenchmarkFixtures.JWT_COOKIE, token));
+        response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public Authentication doFilterInternal() throws ServletException, IOException {
+        request.removeAttribute(FILTERED_ATTRIBUTE);
+        filter.doFilter(request, response, new MockFilterChain());
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return authentication;
+    }
+}
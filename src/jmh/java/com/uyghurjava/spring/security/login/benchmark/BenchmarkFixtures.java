@@ -0,0 +1,126 @@
+package com.uyghurjava.spring.security.login.benchmark;
+
+import com.uyghurjava.spring.security.login.models.ERole;
+import com.uyghurjava.spring.security.login.models.Role;
+import com.uyghurjava.spring.security.login.models.User;
+import com.uyghurjava.spring.security.login.security.service.jwt.JwtKeyRing;
+import com.uyghurjava.spring.security.login.security.service.jwt.JwtUtils;
+import com.uyghurjava.spring.security.login.security.service.invalidation.LocalInvalidationBus;
+import com.uyghurjava.spring.security.login.security.service.jwt.TokenRevocationStore;
+import com.uyghurjava.spring.security.login.security.service.metrics.AuthMetrics;
+import com.uyghurjava.spring.security.login.security.service.session.SessionStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Objects of the authentication hot path, built without the Spring context,
+ * with the same settings as application.properties.
+ */
+final class BenchmarkFixtures {
+
+    static final String JWT_SECRET = "uyghurCoderSecretKey";
+    static final String JWT_COOKIE = "uyghurCoder";
+    static final int JWT_EXPIRATION_MS = 1800000;
+
+    private BenchmarkFixtures() {
+    }
+
+    static JwtUtils jwtUtils(int cacheMaxSize, boolean statelessPrincipal){
+        return jwtUtils(cacheMaxSize, statelessPrincipal, "jwt");
+    }
+
+    static JwtUtils jwtUtils(int cacheMaxSize, boolean statelessPrincipal, String tokenMode){
+        JwtUtils jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", JWT_EXPIRATION_MS);
+        ReflectionTestUtils.setField(jwtUtils, "jwtCookie", JWT_COOKIE);
+        ReflectionTestUtils.setField(jwtUtils, "jwtCacheMaxSize", cacheMaxSize);
+        ReflectionTestUtils.setField(jwtUtils, "statelessPrincipal", statelessPrincipal);
+        ReflectionTestUtils.setField(jwtUtils, "jwtMaxLength", 4096);
+        ReflectionTestUtils.setField(jwtUtils, "jwtRejectedCacheMaxSize", cacheMaxSize);
+        ReflectionTestUtils.setField(jwtUtils, "jwtRejectedCacheTtlMs", 60000L);
+        ReflectionTestUtils.setField(jwtUtils, "revocationStore", revocationStore());
+        ReflectionTestUtils.setField(jwtUtils, "jwtKeyRing", jwtKeyRing());
+        ReflectionTestUtils.setField(jwtUtils, "authMetrics", authMetrics());
+        ReflectionTestUtils.setField(jwtUtils, "tokenMode", tokenMode);
+        ReflectionTestUtils.setField(jwtUtils, "sessionStore", sessionStore());
+        jwtUtils.init();
+        return jwtUtils;
+    }
+
+    //meters in a SimpleMeterRegistry: the benchmarks pay for the recording, as in production
+    static AuthMetrics authMetrics(){
+        AuthMetrics authMetrics = new AuthMetrics();
+        ReflectionTestUtils.setField(authMetrics, "meterRegistry", new SimpleMeterRegistry());
+        authMetrics.init();
+        return authMetrics;
+    }
+
+    //HS512 key ring of jwtSecret, without rotation
+    static JwtKeyRing jwtKeyRing(){
+        JwtKeyRing keyRing = new JwtKeyRing();
+        ReflectionTestUtils.setField(keyRing, "jwtSecret", JWT_SECRET);
+        ReflectionTestUtils.setField(keyRing, "jwtExpirationMs", (long) JWT_EXPIRATION_MS);
+        ReflectionTestUtils.setField(keyRing, "algorithmName", "HS512");
+        ReflectionTestUtils.setField(keyRing, "privateKeyFile", "");
+        ReflectionTestUtils.setField(keyRing, "publicKeyFile", "");
+        try {
+            keyRing.init();
+        } catch (IOException | GeneralSecurityException e){
+            throw new IllegalStateException(e);
+        }
+        return keyRing;
+    }
+
+    //empty session store, sessions live as long as the JWTs
+    static SessionStore sessionStore(){
+        SessionStore store = new SessionStore();
+        ReflectionTestUtils.setField(store, "sessionDurationMs", (long) JWT_EXPIRATION_MS);
+        ReflectionTestUtils.setField(store, "maxSessions", 100000);
+        ReflectionTestUtils.setField(store, "sweepMs", 60000L);
+        store.init();
+        return store;
+    }
+
+    //single-member in-process bus: nothing is delivered, as on a single instance
+    static LocalInvalidationBus invalidationBus(){
+        LocalInvalidationBus bus = new LocalInvalidationBus();
+        ReflectionTestUtils.setField(bus, "batchMs", 50L);
+        ReflectionTestUtils.setField(bus, "channel", "benchmark");
+        ReflectionTestUtils.setField(bus, "authMetrics", authMetrics());
+        bus.init();
+        return bus;
+    }
+
+    //empty revocation store: every token pays for the Bloom filter check, as in production
+    static TokenRevocationStore revocationStore(){
+        TokenRevocationStore store = new TokenRevocationStore();
+        ReflectionTestUtils.setField(store, "expectedSize", 10000);
+        ReflectionTestUtils.setField(store, "revocationFile", "");
+        ReflectionTestUtils.setField(store, "invalidationBus", invalidationBus());
+        try {
+            store.init();
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+        return store;
+    }
+
+    //user with the first roleCount roles of ERole
+    static User user(int roleCount){
+        User user = new User("benchUser", "bench@uyghurjava.com", "$2a$10$BC6OBR7BiRLT1P7Q1evxUuMsyCTaHGJJLqXTFXT.bA3FdrWTA6zRa");
+        user.setId(1L);
+        Set<Role> roles = new HashSet<>();
+        ERole[] names = ERole.values();
+        for (int i = 0; i < roleCount; i++){
+            roles.add(new Role(i + 1, names[i]));
+        }
+        user.setRoles(roles);
+        return user;
+    }
+}
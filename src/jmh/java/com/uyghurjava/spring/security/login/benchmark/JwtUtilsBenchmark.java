@@ -0,0 +1,67 @@
+package com.uyghurjava.spring.security.login.benchmark;
+
+import com.uyghurjava.spring.security.login.security.service.jwt.JwtUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JwtUtils: token generation, validation and username parsing.
+ * cacheMaxSize=0 measures the full parse and HS512 signature check, cacheMaxSize=10000 a replayed cookie.
+ * Forged and garbage tokens measure the rejection of bad cookies: a forged signature is parsed once and then rejected
+ * from the rejected-token cache, garbage is rejected by the pre-check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtUtilsBenchmark {
+
+    @Param({"0", "10000"})
+    public int cacheMaxSize;
+
+    private JwtUtils jwtUtils;
+    private String token;
+    private String forgedToken;
+    private String garbageToken;
+
+    @Setup
+    public void setUp(){
+        jwtUtils = BenchmarkFixtures.jwtUtils(cacheMaxSize, false);
+        token = jwtUtils.generateTokenFromUsername("benchUser");
+        String signature = token.substring(token.lastIndexOf('.') + 1);
+        forgedToken = token.substring(0, token.lastIndexOf('.') + 1) + new StringBuilder(signature).reverse();
+        garbageToken = "eyJhbGciOiJub25lIn0.not-a-jwt." + signature;
+    }
+
+    @Benchmark
+    public String generateTokenFromUsername(){
+        return jwtUtils.generateTokenFromUsername("benchUser");
+    }
+
+    @Benchmark
+    public boolean validateJwtToken(){
+        return jwtUtils.validateJwtToken(token);
+    }
+
+    @Benchmark
+    public String getUserNameFromJwtToken(){
+        return jwtUtils.getUserNameFromJwtToken(token);
+    }
+
+    @Benchmark
+    public boolean validateForgedToken(){
+        return jwtUtils.validateJwtToken(forgedToken);
+    }
+
+    @Benchmark
+    public boolean validateGarbageToken(){
+        return jwtUtils.validateJwtToken(garbageToken);
+    }
+}
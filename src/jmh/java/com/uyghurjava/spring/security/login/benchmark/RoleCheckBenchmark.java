@@ -0,0 +1,81 @@
+package com.uyghurjava.spring.security.login.benchmark;
+
+import com.uyghurjava.spring.security.login.models.ERole;
+import com.uyghurjava.spring.security.login.models.Role;
+import com.uyghurjava.spring.security.login.models.User;
+import com.uyghurjava.spring.security.login.security.service.RoleMaskMethodSecurityExpressionHandler;
+import com.uyghurjava.spring.security.login.security.service.UserDetailsImpl;
+import org.aopalliance.intercept.MethodInvocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.expression.Expression;
+import org.springframework.security.access.expression.ExpressionUtils;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.util.SimpleMethodInvocation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The @PreAuthorize check of /api/test/user for an admin, per request: principal, Authentication and expression evaluation.
+ * – standard: authorities allocated per principal, DefaultMethodSecurityExpressionHandler,
+ *   "hasRole('USER') or hasRole ('MODERATOR') or hasRole('ADMIN')" (three checks for an admin)
+ * – roleMask: shared authorities of the RoleMask, RoleMaskMethodSecurityExpressionHandler and its role hierarchy, "hasRole('USER')"
+ * Run with -prof gc for the allocation per check.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RoleCheckBenchmark {
+
+    private User user;
+    private MethodInvocation invocation;
+    private DefaultMethodSecurityExpressionHandler standardHandler;
+    private Expression standardExpression;
+    private RoleMaskMethodSecurityExpressionHandler roleMaskHandler;
+    private Expression roleMaskExpression;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        user = BenchmarkFixtures.user(0);
+        user.setRoles(Collections.singleton(new Role(3, ERole.ROLE_ADMIN)));
+        invocation = new SimpleMethodInvocation(this, RoleCheckBenchmark.class.getMethod("roleMask"));
+        standardHandler = new DefaultMethodSecurityExpressionHandler();
+        standardExpression = standardHandler.getExpressionParser()
+                .parseExpression("hasRole('USER') or hasRole ('MODERATOR') or hasRole('ADMIN')");
+        roleMaskHandler = new RoleMaskMethodSecurityExpressionHandler();
+        roleMaskExpression = roleMaskHandler.getExpressionParser().parseExpression("hasRole('USER')");
+    }
+
+    @Benchmark
+    public boolean standard(){
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        for (Role role : user.getRoles()){
+            authorities.add(new SimpleGrantedAuthority(role.getName().name()));
+        }
+        UserDetailsImpl userDetails = new UserDetailsImpl(user.getId(), user.getUsername(), user.getEmail(), user.getPassword(), authorities);
+        UsernamePasswordAuthenticationToken authentication =
+                new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+        return ExpressionUtils.evaluateAsBoolean(standardExpression,
+                standardHandler.createEvaluationContext(authentication, invocation));
+    }
+
+    @Benchmark
+    public boolean roleMask(){
+        UserDetailsImpl userDetails = UserDetailsImpl.build(user);
+        UsernamePasswordAuthenticationToken authentication =
+                new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+        return ExpressionUtils.evaluateAsBoolean(roleMaskExpression,
+                roleMaskHandler.createEvaluationContext(authentication, invocation));
+    }
+}
@@ -0,0 +1,176 @@
+package com.uyghurjava.spring.security.login.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from the launch of a new instance (java -jar, a new JVM) to its first successful /api/auth/signin:
+ * what a scale-out waits for. The packaged jar is run on a file H2 database holding one user, prepared once per mode.
+ * – default: the Spring Boot jar, default profile (ddl-auto=update, every bean created at startup)
+ * – prod: the Spring Boot jar, prod profile (Flyway migrations + validate, lazy initialization)
+ * – prod-cds: the jar of the cds profile with its class-data-sharing archive, prod profile
+ *
+ * Needs the packaged application, run with: mvn -Pbenchmark,cds verify -DskipTests -Djmh.args="StartupBenchmark"
+ * (without the cds profile, only -p mode=default,prod). The output of each instance is in target/startup-benchmark/(mode).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+public class StartupBenchmark {
+
+    private static final String USERNAME = "startupUser";
+    private static final String PASSWORD = "12345678";
+    private static final long STARTUP_TIMEOUT_MS = 120000;
+
+    @Param({"default", "prod", "prod-cds"})
+    public String mode;
+
+    private final File target = new File(System.getProperty("startup.target", "target"));
+    private File workDirectory;
+    private Process process;
+    private int port;
+
+    //prepare: the database of this mode, with its schema and the user of the signins
+    @Setup(Level.Trial)
+    public void prepare() throws IOException, InterruptedException {
+        workDirectory = new File(target, "startup-benchmark/" + mode).getAbsoluteFile();
+        deleteRecursively(workDirectory);
+        if(!workDirectory.mkdirs()){
+            throw new IOException("Cannot create " + workDirectory);
+        }
+        start();
+        post("/api/auth/signup", "{\"username\":\"" + USERNAME + "\",\"email\":\"" + USERNAME + "@uyghurjava.com\","
+                + "\"password\":\"" + PASSWORD + "\",\"role\":[\"user\"]}");
+        stop();
+    }
+
+    @Benchmark
+    public int startToFirstSignin() throws IOException, InterruptedException {
+        start();
+        return post("/api/auth/signin", "{\"username\":\"" + USERNAME + "\",\"password\":\"" + PASSWORD + "\"}");
+    }
+
+    @TearDown(Level.Iteration)
+    public void stop() throws InterruptedException {
+        if(process == null){
+            return;
+        }
+        process.destroy();
+        if(!process.waitFor(30, TimeUnit.SECONDS)){
+            process.destroyForcibly().waitFor();
+        }
+        process = null;
+    }
+
+    //start: launch the instance, its HTTP port is bound once its context is started
+    private void start() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)){
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        if(mode.endsWith("-cds")){
+            command.add("-XX:SharedArchiveFile=" + existing(new File(target, "cds/app.jsa")));
+        }
+        if(mode.startsWith("prod")){
+            command.add("-Dspring.profiles.active=prod");
+        }
+        command.add("-Dspring.datasource.url=jdbc:h2:file:" + new File(workDirectory, "db").getPath());
+        command.add("-Dserver.port=" + port);
+        command.add("-jar");
+        command.add(mode.endsWith("-cds") ? cdsJar() : bootJar());
+        process = new ProcessBuilder(command)
+                .directory(workDirectory)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(new File(workDirectory, "instance.log")))
+                .start();
+    }
+
+    //post: the request, sent again until the instance answers 200
+    private int post(String path, String body) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        byte[] content = body.getBytes(StandardCharsets.UTF_8);
+        while (true){
+            if(!process.isAlive()){
+                throw new IllegalStateException("The instance exited, see " + new File(workDirectory, "instance.log"));
+            }
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+                connection.setRequestMethod("POST");
+                connection.setRequestProperty("Content-Type", "application/json");
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()){
+                    out.write(content);
+                }
+                int status = connection.getResponseCode();
+                connection.disconnect();
+                if(status == 200){
+                    return status;
+                }
+            } catch (IOException e){
+                //not listening yet
+            }
+            if(System.currentTimeMillis() > deadline){
+                throw new IllegalStateException("No successful " + path + " after " + STARTUP_TIMEOUT_MS + " ms");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private String bootJar() throws IOException {
+        File[] jars = target.listFiles((directory, name) -> name.endsWith(".jar"));
+        if(jars == null || jars.length != 1){
+            throw new IOException("Expected the Spring Boot jar in " + target.getAbsolutePath() + ", run mvn package first");
+        }
+        return jars[0].getAbsolutePath();
+    }
+
+    private String cdsJar() throws IOException {
+        File[] jars = new File(target, "cds").listFiles((directory, name) -> name.endsWith("-cds.jar"));
+        if(jars == null || jars.length != 1){
+            throw new IOException("Expected the jar of the cds profile in " + new File(target, "cds").getAbsolutePath()
+                    + ", package with -Pcds first");
+        }
+        return jars[0].getAbsolutePath();
+    }
+
+    private static String existing(File file) throws IOException {
+        if(!file.isFile()){
+            throw new IOException("Missing " + file.getAbsolutePath() + ", package with -Pcds first");
+        }
+        return file.getAbsolutePath();
+    }
+
+    private static void deleteRecursively(File file){
+        File[] children = file.listFiles();
+        if(children != null){
+            for (File child : children){
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
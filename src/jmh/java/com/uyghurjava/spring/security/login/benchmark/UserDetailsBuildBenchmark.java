@@ -0,0 +1,38 @@
+package com.uyghurjava.spring.security.login.benchmark;
+
+import com.uyghurjava.spring.security.login.models.User;
+import com.uyghurjava.spring.security.login.security.service.UserDetailsImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserDetailsImpl.build() for users with 1 to 3 roles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UserDetailsBuildBenchmark {
+
+    @Param({"1", "2", "3"})
+    public int roles;
+
+    private User user;
+
+    @Setup
+    public void setUp(){
+        user = BenchmarkFixtures.user(roles);
+    }
+
+    @Benchmark
+    public UserDetailsImpl build(){
+        return UserDetailsImpl.build(user);
+    }
+}
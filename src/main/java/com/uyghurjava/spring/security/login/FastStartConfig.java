@@ -0,0 +1,63 @@
+package com.uyghurjava.spring.security.login;
+
+import com.uyghurjava.spring.security.login.controller.AuthController;
+import com.uyghurjava.spring.security.login.repository.EntityCache;
+import com.uyghurjava.spring.security.login.security.service.RefreshTokenService;
+import com.uyghurjava.spring.security.login.security.service.RoleRegistry;
+import com.uyghurjava.spring.security.login.security.service.UserDetailsServiceImpl;
+import com.uyghurjava.spring.security.login.security.service.invalidation.InvalidationBus;
+import com.uyghurjava.spring.security.login.security.service.jwt.JwtKeyRing;
+import com.uyghurjava.spring.security.login.security.service.jwt.JwtUtils;
+import com.uyghurjava.spring.security.login.security.service.jwt.TokenRevocationStore;
+import com.uyghurjava.spring.security.login.security.service.password.BCryptCostCalibrator;
+import com.uyghurjava.spring.security.login.security.service.password.PasswordHashingExecutor;
+import com.uyghurjava.spring.security.login.security.service.session.SessionStore;
+import com.uyghurjava.spring.security.login.security.service.throttle.LoginThrottle;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.servlet.Filter;
+
+/**
+ * Startup of the prod profile (application-prod.properties).
+ *
+ * – spring.main.lazy-initialization=true: beans are created on first use (admin and test endpoints, JWKS, bulk import,
+ *   signup index...), except the components of /api/auth/signin and of the authenticated requests listed in signinPathBeans(),
+ *   created at startup so the first signin does not pay for them (BCrypt calibration, role registry, keys, caches);
+ *   the servlet filters too, the Spring Security filter chain would otherwise be built by the first request
+ * – uyghurcoder.app.cdsTrainingRun=true: the application exits once started, the training run of the class-data-sharing
+ *   archive (Maven profile cds) dumps the classes it has loaded
+ */
+@Configuration
+public class FastStartConfig {
+
+    @Bean
+    public static LazyInitializationExcludeFilter signinPathBeans(){
+        return LazyInitializationExcludeFilter.forBeanTypes(
+                Filter.class,
+                AuthController.class,
+                UserDetailsServiceImpl.class,
+                RoleRegistry.class,
+                EntityCache.class,
+                BCryptCostCalibrator.class,
+                PasswordHashingExecutor.class,
+                LoginThrottle.class,
+                JwtKeyRing.class,
+                JwtUtils.class,
+                TokenRevocationStore.class,
+                SessionStore.class,
+                RefreshTokenService.class,
+                InvalidationBus.class);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "uyghurcoder.app.cdsTrainingRun", havingValue = "true")
+    public ApplicationListener<ApplicationReadyEvent> cdsTrainingRunExit(){
+        return event -> System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+}
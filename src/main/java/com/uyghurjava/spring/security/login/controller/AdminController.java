@@ -0,0 +1,188 @@
+package com.uyghurjava.spring.security.login.controller;
+
+import com.uyghurjava.spring.security.login.models.ERole;
+import com.uyghurjava.spring.security.login.models.Role;
+import com.uyghurjava.spring.security.login.payload.response.MessageResponse;
+import com.uyghurjava.spring.security.login.repository.EntityCache;
+import com.uyghurjava.spring.security.login.repository.UserRepository;
+import com.uyghurjava.spring.security.login.security.service.RefreshTokenService;
+import com.uyghurjava.spring.security.login.security.service.RoleRegistry;
+import com.uyghurjava.spring.security.login.security.service.UserDetailsServiceImpl;
+import com.uyghurjava.spring.security.login.security.service.audit.AuditLog;
+import com.uyghurjava.spring.security.login.security.service.audit.AuditLogReader;
+import com.uyghurjava.spring.security.login.security.service.invalidation.InvalidationBus;
+import com.uyghurjava.spring.security.login.security.service.jwt.JwtKeyRing;
+import com.uyghurjava.spring.security.login.security.service.jwt.JwtUtils;
+import com.uyghurjava.spring.security.login.security.service.jwt.TokenRevocationStore;
+import com.uyghurjava.spring.security.login.security.service.password.BCryptCostCalibrator;
+import com.uyghurjava.spring.security.login.security.service.password.PasswordHashingExecutor;
+import com.uyghurjava.spring.security.login.security.service.session.SessionStore;
+import com.uyghurjava.spring.security.login.security.service.throttle.LoginThrottle;
+import com.uyghurjava.spring.security.login.service.LoginActivityTracker;
+import com.uyghurjava.spring.security.login.service.UserIdentityIndex;
+import com.uyghurjava.spring.security.login.service.UserImportJob;
+import com.uyghurjava.spring.security.login.service.UserImportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Controller for operating the service, only for users has ROLE_ADMIN
+ *
+ * – /api/admin/stats: counters of the in-memory caches, of the token revocations, of the password hashing pool, of the sign-in throttle, of the invalidation bus, of the signup uniqueness index, of the Hibernate second-level cache, of the audit log and of the login activity tracker used on the authentication path
+ * – /api/admin/roles/refresh: reload the RoleRegistry after the roles table has been changed (on every instance)
+ * – /api/admin/jwt-keys/rotate: sign the new JWTs with a new key
+ * – /api/admin/password-costs: BCrypt calibration result and number of users by stored BCrypt cost
+ * – /api/admin/users/import: bulk user import (POST text/csv or application/x-ndjson), progress of the imports (GET)
+ * – /api/admin/audit: audit events (signin, signup, signout) of a user and/or a time range, oldest first
+ */
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController
+@RequestMapping("/api/admin")
+@PreAuthorize("hasRole('ADMIN')")
+public class AdminController {
+
+    @Autowired
+    JwtUtils jwtUtils;
+    @Autowired
+    TokenRevocationStore tokenRevocationStore;
+    @Autowired
+    JwtKeyRing jwtKeyRing;
+    @Autowired
+    UserDetailsServiceImpl userDetailsService;
+    @Autowired
+    RoleRegistry roleRegistry;
+    @Autowired
+    RefreshTokenService refreshTokenService;
+    @Autowired
+    PasswordHashingExecutor passwordHashingExecutor;
+    @Autowired
+    BCryptCostCalibrator bCryptCostCalibrator;
+    @Autowired
+    LoginThrottle loginThrottle;
+    @Autowired
+    SessionStore sessionStore;
+    @Autowired
+    InvalidationBus invalidationBus;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    UserImportService userImportService;
+    @Autowired
+    UserIdentityIndex userIdentityIndex;
+    @Autowired
+    EntityCache entityCache;
+    @Autowired
+    AuditLog auditLog;
+
+    @Autowired
+    LoginActivityTracker loginActivityTracker;
+
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> stats(){
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("verifiedTokenCache", jwtUtils.getVerifiedTokenCache().stats());
+        stats.put("rejectedTokenCache", jwtUtils.getRejectedTokenCache().stats());
+        stats.put("tokenRevocations", tokenRevocationStore.stats());
+        stats.put("jwtKeys", jwtKeyRing.stats());
+        stats.put("sessions", sessionStore.stats());
+        stats.put("refreshTokens", refreshTokenService.stats());
+        stats.put("userDetailsCache", userDetailsService.getUserDetailsCache().stats());
+        stats.put("passwordHashing", passwordHashingExecutor.stats());
+        stats.put("loginThrottle", loginThrottle.stats());
+        stats.put("invalidation", invalidationBus.stats());
+        stats.put("signupIndex", userIdentityIndex.stats());
+        stats.put("secondLevelCache", entityCache.stats());
+        stats.put("audit", auditLog.stats());
+        stats.put("loginActivity", loginActivityTracker.stats());
+        return ResponseEntity.ok(stats);
+    }
+
+    @PostMapping("/roles/refresh")
+    public ResponseEntity<Map<ERole, Integer>> refreshRoles(){
+        roleRegistry.refresh();
+        Map<ERole, Integer> roles = new LinkedHashMap<>();
+        for (Role role : roleRegistry.getRoles().values()){
+            roles.put(role.getName(), role.getId());
+        }
+        return ResponseEntity.ok(roles);
+    }
+
+    //rotate the JWT signing key now, the previous key still verifies its tokens during the overlap
+    @PostMapping("/jwt-keys/rotate")
+    public ResponseEntity<Map<String, Object>> rotateJwtKey() throws GeneralSecurityException {
+        jwtKeyRing.rotate();
+        return ResponseEntity.ok(jwtKeyRing.stats());
+    }
+
+    @GetMapping("/password-costs")
+    public ResponseEntity<Map<String, Object>> passwordCosts(){
+        Map<String, Long> distribution = new TreeMap<>();
+        for (Object[] row : userRepository.countUsersByPasswordCost()){
+            distribution.put(String.valueOf(row[0]), ((Number) row[1]).longValue());
+        }
+        Map<String, Object> costs = new LinkedHashMap<>();
+        costs.put("calibration", bCryptCostCalibrator.stats());
+        costs.put("usersByCost", distribution);
+        return ResponseEntity.ok(costs);
+    }
+
+    /**
+     * Import the users of a CSV (text/csv) or NDJSON (application/x-ndjson) upload.
+     * The response holds the number of imported and failed rows and the error of each failed row.
+     */
+    @PostMapping(value = "/users/import", consumes = {"text/csv", "application/x-ndjson"})
+    public ResponseEntity<UserImportJob> importUsers(HttpServletRequest request) throws IOException {
+        String contentType = request.getContentType();
+        String format = contentType != null && contentType.startsWith("text/csv")
+                ? UserImportService.FORMAT_CSV : UserImportService.FORMAT_NDJSON;
+        return ResponseEntity.ok(userImportService.importUsers(request.getInputStream(), format));
+    }
+
+    //progress of the running and last imports
+    @GetMapping("/users/import")
+    public ResponseEntity<List<UserImportJob>> importJobs(){
+        return ResponseEntity.ok(userImportService.getJobs());
+    }
+
+    //audit events, from and to are ISO-8601 instants (2026-01-31T08:00:00Z), 400 if they are not or if from is after to;
+    //404 when uyghurcoder.app.auditDirectory is not set
+    @GetMapping("/audit")
+    public ResponseEntity<?> auditEvents(@RequestParam(required = false) String username,
+                                         @RequestParam(required = false) String from,
+                                         @RequestParam(required = false) String to,
+                                         @RequestParam(defaultValue = "100") int limit) throws IOException {
+        AuditLogReader reader = auditLog.getReader();
+        if(reader == null){
+            return ResponseEntity.notFound().build();
+        }
+        long fromMs;
+        long toMs;
+        try {
+            fromMs = from != null ? Instant.parse(from).toEpochMilli() : 0;
+            toMs = to != null ? Instant.parse(to).toEpochMilli() : Long.MAX_VALUE;
+        } catch (DateTimeException | ArithmeticException e){
+            return ResponseEntity.badRequest().body(new MessageResponse("Error: from and to must be ISO-8601 instants, like 2026-01-31T08:00:00Z"));
+        }
+        if(fromMs > toMs){
+            return ResponseEntity.badRequest().body(new MessageResponse("Error: from is after to"));
+        }
+        return ResponseEntity.ok(reader.find(username, fromMs, toMs, Math.max(1, Math.min(limit, 10000))));
+    }
+}
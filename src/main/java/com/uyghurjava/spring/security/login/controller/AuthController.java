@@ -1,31 +1,40 @@
 package com.uyghurjava.spring.security.login.controller;
 
-import com.uyghurjava.spring.security.login.models.ERole;
 import com.uyghurjava.spring.security.login.models.Role;
 import com.uyghurjava.spring.security.login.models.User;
 import com.uyghurjava.spring.security.login.payload.request.LoginRequest;
 import com.uyghurjava.spring.security.login.payload.request.SignupRequest;
 import com.uyghurjava.spring.security.login.payload.response.MessageResponse;
 import com.uyghurjava.spring.security.login.payload.response.UserInfoResponse;
-import com.uyghurjava.spring.security.login.repository.RoleRepository;
 import com.uyghurjava.spring.security.login.repository.UserRepository;
+import com.uyghurjava.spring.security.login.security.service.RefreshTokenService;
+import com.uyghurjava.spring.security.login.security.service.RoleRegistry;
 import com.uyghurjava.spring.security.login.security.service.UserDetailsImpl;
+import com.uyghurjava.spring.security.login.security.service.UserDetailsServiceImpl;
 import com.uyghurjava.spring.security.login.security.service.jwt.JwtUtils;
+import com.uyghurjava.spring.security.login.security.service.audit.AuditLog;
+import com.uyghurjava.spring.security.login.security.service.metrics.AuthMetrics;
+import com.uyghurjava.spring.security.login.security.service.throttle.LoginThrottle;
+import com.uyghurjava.spring.security.login.service.LoginActivityTracker;
+import com.uyghurjava.spring.security.login.service.UserIdentityIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -35,17 +44,19 @@ import java.util.stream.Collectors;
  *
  * – /api/auth/signup
  *
- * check existing username/email
+ * check existing username/email (UserIdentityIndex: no query for names that are certainly new, else one query)
  * create new User (with ROLE_USER if not specifying role)
- * save User to database using UserRepository
+ * save User to database using UserRepository (a unique constraint violation gets the same 400 as the check)
  * – /api/auth/signin
  *
+ * check the sign-in throttle of the username and the client IP (429 before any password hashing)
  * authenticate { username, password }
  * update SecurityContext using Authentication object
- * generate JWT
+ * generate JWT and refresh token
  * get UserDetails from Authentication object
- * response contains JWT and UserDetails data
- * – /api/auth/signout: clear the Cookie.
+ * response contains JWT, refresh token and UserDetails data
+ * – /api/auth/refreshtoken: rotate the refresh token and generate a new JWT, without checking the password again
+ * – /api/auth/signout: revoke the JWT and the refresh tokens of the session, clear the Cookies.
  */
 
 @CrossOrigin(origins = "*", maxAge = 3600)
@@ -60,34 +71,72 @@ public class AuthController {
     @Autowired
     UserRepository userRepository;
     @Autowired
-    RoleRepository roleRepository;
+    RoleRegistry roleRegistry;
     @Autowired
     PasswordEncoder encoder;
     @Autowired
     JwtUtils jwtUtils;
+    @Autowired
+    UserDetailsServiceImpl userDetailsService;
+    @Autowired
+    RefreshTokenService refreshTokenService;
+    @Autowired
+    AuthMetrics authMetrics;
+    @Autowired
+    LoginThrottle loginThrottle;
+    @Autowired
+    AuditLog auditLog;
+
+    @Autowired
+    LoginActivityTracker loginActivityTracker;
+    //signup only: with lazy initialization (prod profile) the index is warmed by the first signup, not before the first signin
+    @Lazy
+    @Autowired
+    UserIdentityIndex userIdentityIndex;
 
     @PostMapping("/signin")
-    public ResponseEntity<?> authenticateUser(@Valid @RequestBody LoginRequest loginRequest){
-        //authenticate { username, password }
-        Authentication authentication = authenticationManager
-                .authenticate(new UsernamePasswordAuthenticationToken(loginRequest.getUsername(), loginRequest.getPassword()));
+    public ResponseEntity<?> authenticateUser(@Valid @RequestBody LoginRequest loginRequest, HttpServletRequest request){
+        long startedAt = System.nanoTime();
+        String clientIp = request.getRemoteAddr();
+        //authenticate { username, password }, unless the username or the IP is throttled
+        Authentication authentication;
+        try {
+            loginThrottle.check(loginRequest.getUsername(), clientIp);
+            authentication = authenticationManager
+                    .authenticate(new UsernamePasswordAuthenticationToken(loginRequest.getUsername(), loginRequest.getPassword()));
+        } catch (RuntimeException e){
+            if(e instanceof BadCredentialsException){
+                loginThrottle.onFailure(loginRequest.getUsername(), clientIp);
+            }
+            AuthMetrics.SigninOutcome outcome = AuthMetrics.signinOutcome(e);
+            authMetrics.recordSignin(outcome, startedAt);
+            auditLog.signin(outcome, 0, loginRequest.getUsername(), clientIp);
+            throw e;
+        }
+        loginThrottle.onSuccess(loginRequest.getUsername(), clientIp);
         //update SecurityContext using Authentication object
         SecurityContextHolder.getContext().setAuthentication(authentication);
 
         //get UserDetails from Authentication object
         UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
 
-        //generate JWT cookie
+        //generate JWT cookie, and the refresh token cookie to renew it without a new signin
         ResponseCookie jwtCookie = jwtUtils.generateJwtCookie(userDetails);
+        ResponseCookie jwtRefreshCookie = jwtUtils.generateRefreshJwtCookie(
+                refreshTokenService.createRefreshToken(userDetails.getId()));
 
         List<String> roles = userDetails.getAuthorities().stream()
                 .map(item -> item.getAuthority())
                 .collect(Collectors.toList());
 
-        logger.info("Successfully Sign-in (AuthController)");
+        logger.debug("Successfully Sign-in (AuthController)");
+        authMetrics.recordSignin(AuthMetrics.SigninOutcome.SUCCESS, startedAt);
+        auditLog.signin(AuthMetrics.SigninOutcome.SUCCESS, userDetails.getId(), userDetails.getUsername(), clientIp);
+        loginActivityTracker.recordLogin(userDetails.getId());
 
         //response contains JWT and UserDetails data
         return ResponseEntity.ok().header(HttpHeaders.SET_COOKIE, jwtCookie.toString())
+                .header(HttpHeaders.SET_COOKIE, jwtRefreshCookie.toString())
                 .body(new UserInfoResponse(userDetails.getId(),
                         userDetails.getUsername(),
                         userDetails.getEmail(),
@@ -96,58 +145,118 @@ public class AuthController {
     }
 
     @PostMapping("/signup")
-    public ResponseEntity<?> registerUser(@Valid @RequestBody SignupRequest signupRequest){
+    public ResponseEntity<?> registerUser(@Valid @RequestBody SignupRequest signupRequest, HttpServletRequest request){
+        long startedAt = System.nanoTime();
+        String clientIp = request.getRemoteAddr();
         //check existing username/email
-        if(userRepository.existsByUsername(signupRequest.getUsername())){
-            return ResponseEntity.badRequest().body(new MessageResponse("Error: Username is already taken!"));
-        }
-        if (userRepository.existsByEmail(signupRequest.getEmail())){
-            return ResponseEntity.badRequest().body(new MessageResponse("Error Email is already in use!"));
+        ResponseEntity<?> taken = takenResponse(userIdentityIndex.check(signupRequest.getUsername(), signupRequest.getEmail()),
+                signupRequest, clientIp, startedAt);
+        if(taken != null){
+            return taken;
         }
-        //Create new user's account(with ROLE_USER if not specifying role)
-        User user = new User(signupRequest.getUsername(),
-                signupRequest.getEmail(),
-                encoder.encode(signupRequest.getPassword()));
-
-        Set<String> strRoles = signupRequest.getRole();
-
-        Set<Role> roles = new HashSet<>();
-        //(with ROLE_USER if not specifying role)
-        if(strRoles == null || strRoles.isEmpty()){
-            Role userRole = roleRepository.findByName(ERole.ROLE_USER)
-                    .orElseThrow( () -> new RuntimeException("Error: Role is not found"));
-            roles.add(userRole);
-        }else {
-            strRoles.forEach(role -> {
-                switch (role){
-                    case "admin":
-                        Role adminRole = roleRepository.findByName(ERole.ROLE_ADMIN)
-                                .orElseThrow( () -> new RuntimeException("Error: is not found"));
-                        roles.add(adminRole);
-                        break;
-                    case "mod":
-                        Role modRole = roleRepository.findByName(ERole.ROLE_MODERATOR)
-                                .orElseThrow( () -> new RuntimeException("Error: Role is not found"));
-                        roles.add(modRole);
-                        break;
-                    default:
-                        Role userRole = roleRepository.findByName(ERole.ROLE_USER)
-                                .orElseThrow( () -> new RuntimeException("Error: Role is not found"));
-                        roles.add(userRole);
-                }
-            });
+        long userId;
+        try {
+            //Create new user's account(with ROLE_USER if not specifying role)
+            User user = new User(signupRequest.getUsername(),
+                    signupRequest.getEmail(),
+                    encoder.encode(signupRequest.getPassword()));
+
+            //(with ROLE_USER if not specifying role), roles are resolved by the RoleRegistry without any query
+            Set<Role> roles = roleRegistry.resolveRoles(signupRequest.getRole());
+            user.setRoles(roles);
+            userRepository.save(user);
+            userId = user.getId();
+            userIdentityIndex.add(user.getUsername(), user.getEmail());
+            //the cached UserDetails of this username must never serve stale authorities
+            userDetailsService.evictUser(user.getId(), user.getUsername());
+        } catch (DataIntegrityViolationException e){
+            //a concurrent signup inserted the same username or email first: the unique constraint decides
+            taken = takenResponse(userIdentityIndex.conflictAfterViolation(signupRequest.getUsername(), signupRequest.getEmail()),
+                    signupRequest, clientIp, startedAt);
+            if(taken == null){
+                recordSignup(AuthMetrics.SignupOutcome.ERROR, 0, signupRequest, clientIp, startedAt);
+                throw e;
+            }
+            return taken;
+        } catch (RuntimeException e){
+            recordSignup(AuthMetrics.signupOutcome(e), 0, signupRequest, clientIp, startedAt);
+            throw e;
         }
-        user.setRoles(roles);
-        userRepository.save(user);
+        recordSignup(AuthMetrics.SignupOutcome.SUCCESS, userId, signupRequest, clientIp, startedAt);
         return ResponseEntity.ok(new MessageResponse("User registered successfully!"));
     }
 
+    //takenResponse: the 400 of a username or email already in use, null if there is no conflict
+    private ResponseEntity<?> takenResponse(UserIdentityIndex.Conflict conflict, SignupRequest signupRequest, String clientIp, long startedAt){
+        switch (conflict){
+            case USERNAME:
+                recordSignup(AuthMetrics.SignupOutcome.USERNAME_TAKEN, 0, signupRequest, clientIp, startedAt);
+                return ResponseEntity.badRequest().body(new MessageResponse("Error: Username is already taken!"));
+            case EMAIL:
+                recordSignup(AuthMetrics.SignupOutcome.EMAIL_TAKEN, 0, signupRequest, clientIp, startedAt);
+                return ResponseEntity.badRequest().body(new MessageResponse("Error Email is already in use!"));
+            default:
+                return null;
+        }
+    }
+
+    private void recordSignup(AuthMetrics.SignupOutcome outcome, long userId, SignupRequest signupRequest, String clientIp, long startedAt){
+        authMetrics.recordSignup(outcome, startedAt);
+        auditLog.signup(outcome, userId, signupRequest.getUsername(), clientIp);
+    }
+
+    @PostMapping("/refreshtoken")
+    public ResponseEntity<?> refreshtoken(HttpServletRequest request){
+        long startedAt = System.nanoTime();
+        String refreshToken = jwtUtils.getJwtRefreshFromCookies(request);
+        if(refreshToken == null || refreshToken.isEmpty()){
+            authMetrics.recordRefresh(AuthMetrics.RefreshOutcome.EMPTY, startedAt);
+            return ResponseEntity.badRequest().body(new MessageResponse("Refresh Token is empty!"));
+        }
+        ResponseCookie jwtCookie;
+        ResponseCookie jwtRefreshCookie;
+        try {
+            //rotate the refresh token (TokenRefreshException -> 403), no password check
+            RefreshTokenService.Rotation rotation = refreshTokenService.rotateRefreshToken(refreshToken);
+            UserDetailsImpl userDetails = (UserDetailsImpl) userDetailsService.loadUserByUsername(rotation.getUsername());
+
+            jwtCookie = jwtUtils.generateJwtCookie(userDetails);
+            jwtRefreshCookie = jwtUtils.generateRefreshJwtCookie(rotation.getToken());
+        } catch (RuntimeException e){
+            authMetrics.recordRefresh(AuthMetrics.refreshOutcome(e), startedAt);
+            throw e;
+        }
+        authMetrics.recordRefresh(AuthMetrics.RefreshOutcome.SUCCESS, startedAt);
+
+        return ResponseEntity.ok().header(HttpHeaders.SET_COOKIE, jwtCookie.toString())
+                .header(HttpHeaders.SET_COOKIE, jwtRefreshCookie.toString())
+                .body(new MessageResponse("Token is refreshed successfully!"));
+    }
+
     @PostMapping("/signout")
-    public ResponseEntity<?> logoutUser(){
-        //clear the Cookie
+    public ResponseEntity<?> logoutUser(HttpServletRequest request){
+        //the user of the Cookie, authenticated by AuthTokenFilter
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if(authentication != null && authentication.getPrincipal() instanceof UserDetailsImpl){
+            UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+            auditLog.signout(userDetails.getId(), userDetails.getUsername(), request.getRemoteAddr());
+        }
+        //revoke the JWT, a copy of the Cookie is rejected until the token expires
+        String jwt = jwtUtils.getJwtFromCookies(request);
+        if(jwt != null && jwtUtils.revokeJwtToken(jwt)){
+            logger.debug("JWT revoked (AuthController)");
+        }
+        //delete the refresh tokens of this session
+        String refreshToken = jwtUtils.getJwtRefreshFromCookies(request);
+        if(refreshToken != null && !refreshToken.isEmpty()){
+            refreshTokenService.revokeRefreshToken(refreshToken);
+        }
+        //clear the Cookies
         ResponseCookie cookie = jwtUtils.getCleanJwtCookie();
+        ResponseCookie refreshCookie = jwtUtils.getCleanJwtRefreshCookie();
 
         return ResponseEntity.ok().header(HttpHeaders.SET_COOKIE, cookie.toString())
+                .header(HttpHeaders.SET_COOKIE, refreshCookie.toString())
                 .body(new MessageResponse("You have been signed out!"));
     }
 
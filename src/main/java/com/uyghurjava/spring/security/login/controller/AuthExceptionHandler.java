@@ -0,0 +1,46 @@
+package com.uyghurjava.spring.security.login.controller;
+
+import com.uyghurjava.spring.security.login.payload.response.MessageResponse;
+import com.uyghurjava.spring.security.login.security.service.TokenRefreshException;
+import com.uyghurjava.spring.security.login.security.service.password.PasswordHashingRejectedException;
+import com.uyghurjava.spring.security.login.security.service.throttle.LoginThrottledException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * Turns the exceptions of the authentication pipeline into fast, small responses.
+ *
+ * – PasswordHashingRejectedException: 503 Service Unavailable with Retry-After (the password hashing queue is full)
+ * – TokenRefreshException: 403 Forbidden (unknown, expired or reused refresh token)
+ * – LoginThrottledException: 429 Too Many Requests with Retry-After (too many sign-in attempts for a username or an IP)
+ */
+@RestControllerAdvice
+public class AuthExceptionHandler {
+    private static final Logger logger = LoggerFactory.getLogger(AuthExceptionHandler.class);
+
+    @ExceptionHandler(PasswordHashingRejectedException.class)
+    public ResponseEntity<MessageResponse> handlePasswordHashingRejected(PasswordHashingRejectedException e){
+        logger.warn("Password hashing rejected: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new MessageResponse(e.getMessage()));
+    }
+
+    @ExceptionHandler(TokenRefreshException.class)
+    public ResponseEntity<MessageResponse> handleTokenRefresh(TokenRefreshException e){
+        logger.warn("Token refresh rejected: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new MessageResponse(e.getMessage()));
+    }
+
+    @ExceptionHandler(LoginThrottledException.class)
+    public ResponseEntity<MessageResponse> handleLoginThrottled(LoginThrottledException e){
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new MessageResponse(e.getMessage()));
+    }
+}
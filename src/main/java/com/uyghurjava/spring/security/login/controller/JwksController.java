@@ -0,0 +1,33 @@
+package com.uyghurjava.spring.security.login.controller;
+
+import com.uyghurjava.spring.security.login.security.service.jwt.JwtKeyRing;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Public keys of the JWTs, for the services validating our tokens locally
+ *
+ * – /.well-known/jwks.json: JSON Web Key Set of the RS256/ES256 keys of the JwtKeyRing (no keys with HS512).
+ * A client should fetch the set again when it meets an unknown "kid" (the key has been rotated).
+ */
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController
+public class JwksController {
+
+    @Autowired
+    JwtKeyRing jwtKeyRing;
+
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> jwks(){
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(5, TimeUnit.MINUTES).cachePublic())
+                .body(jwtKeyRing.jwks());
+    }
+}
@@ -1,27 +1,42 @@
 package com.uyghurjava.spring.security.login.controller;
 
-import com.uyghurjava.spring.security.login.models.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.uyghurjava.spring.security.login.payload.response.UserPageResponse;
+import com.uyghurjava.spring.security.login.payload.response.UserSummaryResponse;
 import com.uyghurjava.spring.security.login.repository.UserRepository;
+import com.uyghurjava.spring.security.login.repository.projection.UserRoleName;
+import com.uyghurjava.spring.security.login.repository.projection.UserSummary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Controller for testing Authorization
  *
  * There are 4 APIs:
  * – /api/test/all for public access
- * – /api/test/user for users has ROLE_USER or ROLE_MODERATOR or ROLE_ADMIN
+ * – /api/test/user for users has ROLE_USER or ROLE_MODERATOR or ROLE_ADMIN (the role hierarchy: ADMIN > MODERATOR > USER)
  * – /api/test/mod for users has ROLE_MODERATOR
  * – /api/test/admin for users has ROLE_ADMIN
+ * – /api/test/admin/allUsers?afterId=&size= for users has ROLE_ADMIN: one page of users (keyset paging on id, no passwords)
+ * – /api/test/admin/allUsers/export for users has ROLE_ADMIN: all users as NDJSON, written page by page
  *
  * Do you remember that we used @EnableGlobalMethodSecurity(prePostEnabled = true) for WebSecurityConfig class?
  *
@@ -35,15 +50,21 @@ import java.util.List;
 @RequestMapping("/api/test")
 public class TestController {
     private static final Logger logger = LoggerFactory.getLogger(TestController.class);
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int EXPORT_PAGE_SIZE = 1000;
+    private static final byte[] NEW_LINE = {'\n'};
+
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
 
     @GetMapping("/all")
     public String allAccess(){
         return "Public Content";
     }
     @GetMapping("/user")
-    @PreAuthorize("hasRole('USER') or hasRole ('MODERATOR') or hasRole('ADMIN')")
+    @PreAuthorize("hasRole('USER')")
     public String userAccess(){
         return "User Content";
     }
@@ -58,14 +79,73 @@ public class TestController {
         return "Admin Dashboard";
     }
 
+    /**
+     * One page of users ordered by id: the users with id > afterId (keyset paging, the cost of a page does not depend on its position).
+     * Users are read through a projection without password, their roles with one query per page.
+     * @param afterId nextCursor of the previous page (0 for the first page)
+     * @param size number of users of the page (max 1000)
+     * @return the users and the nextCursor (null on the last page)
+     */
     @GetMapping("/admin/allUsers")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<List<User>> allUsers(){
+    public ResponseEntity<UserPageResponse> allUsers(@RequestParam(defaultValue = "0") long afterId,
+                                                     @RequestParam(defaultValue = "100") int size){
         logger.debug("This show allUsers in AuthController starts here");
 
-        List<User> users = userRepository.findAll();
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        List<UserSummaryResponse> users = loadPage(afterId, pageSize);
+        Long nextCursor = users.size() == pageSize ? users.get(users.size() - 1).getId() : null;
         logger.info("All users are successfully loaded!");
-        return ResponseEntity.ok().body(users);
+        return ResponseEntity.ok().body(new UserPageResponse(users, nextCursor));
+    }
+
+    /**
+     * All users as NDJSON (one JSON object per line), written page by page while they are read:
+     * the whole table is never held in memory.
+     */
+    @GetMapping(value = "/admin/allUsers/export", produces = "application/x-ndjson")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportAllUsers(){
+        ObjectWriter writer = objectMapper.writerFor(UserSummaryResponse.class);
+        StreamingResponseBody body = (OutputStream outputStream) -> {
+            long afterId = 0;
+            List<UserSummaryResponse> page;
+            do {
+                page = loadPage(afterId, EXPORT_PAGE_SIZE);
+                for (UserSummaryResponse user : page){
+                    outputStream.write(writer.writeValueAsBytes(user));
+                    outputStream.write(NEW_LINE);
+                }
+                outputStream.flush();
+                if(!page.isEmpty()){
+                    afterId = page.get(page.size() - 1).getId();
+                }
+            } while (page.size() == EXPORT_PAGE_SIZE);
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
+    }
+
+    //loadPage: the users with id > afterId and their role names, in two queries
+    private List<UserSummaryResponse> loadPage(long afterId, int size){
+        List<UserSummary> summaries = userRepository.findUserSummariesAfter(afterId, PageRequest.of(0, size));
+        if(summaries.isEmpty()){
+            return new ArrayList<>();
+        }
+        Map<Long, List<String>> rolesByUser = new HashMap<>();
+        List<Long> ids = new ArrayList<>(summaries.size());
+        for (UserSummary summary : summaries){
+            ids.add(summary.getId());
+            rolesByUser.put(summary.getId(), new ArrayList<>(3));
+        }
+        for (UserRoleName userRole : userRepository.findRoleNamesByUserIds(ids)){
+            rolesByUser.get(userRole.getUserId()).add(userRole.getRole().name());
+        }
+        List<UserSummaryResponse> users = new ArrayList<>(summaries.size());
+        for (UserSummary summary : summaries){
+            users.add(new UserSummaryResponse(summary.getId(), summary.getUsername(), summary.getEmail(),
+                    rolesByUser.get(summary.getId())));
+        }
+        return users;
     }
 
 }
@@ -0,0 +1,97 @@
+package com.uyghurjava.spring.security.login.models;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * Long-lived refresh token of a sign-in session, only its SHA-256 digest is stored.
+ *
+ * Every use rotates the token: the used token is marked as used and a new token of the same family
+ * (same session) is issued. A used token presented again means it has been stolen: the whole family is deleted.
+ */
+@Entity
+@Table(name = "refresh_tokens",
+uniqueConstraints = @UniqueConstraint(columnNames = "token_hash"),
+indexes = {
+        @Index(name = "idx_refresh_tokens_family", columnList = "family_id"),
+        @Index(name = "idx_refresh_tokens_expiry", columnList = "expiry_date")
+})
+public class RefreshToken {
+
+    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(name = "token_hash", nullable = false, length = 64)
+    private String tokenHash;
+
+    @Column(name = "family_id", nullable = false, length = 36)
+    private String familyId;
+
+    @Column(name = "expiry_date", nullable = false)
+    private Instant expiryDate;
+
+    @Column(nullable = false)
+    private boolean used;
+
+    public RefreshToken() {
+    }
+
+    public RefreshToken(User user, String tokenHash, String familyId, Instant expiryDate) {
+        this.user = user;
+        this.tokenHash = tokenHash;
+        this.familyId = familyId;
+        this.expiryDate = expiryDate;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public void setTokenHash(String tokenHash) {
+        this.tokenHash = tokenHash;
+    }
+
+    public String getFamilyId() {
+        return familyId;
+    }
+
+    public void setFamilyId(String familyId) {
+        this.familyId = familyId;
+    }
+
+    public Instant getExpiryDate() {
+        return expiryDate;
+    }
+
+    public void setExpiryDate(Instant expiryDate) {
+        this.expiryDate = expiryDate;
+    }
+
+    public boolean isUsed() {
+        return used;
+    }
+
+    public void setUsed(boolean used) {
+        this.used = used;
+    }
+}
@@ -1,9 +1,21 @@
 package com.uyghurjava.spring.security.login.models;
 
 
+import com.uyghurjava.spring.security.login.repository.HibernateCacheConfig;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Immutable;
+
 import javax.persistence.*;
 
+/**
+ * Reference data, second-level cached read-only (RoleRegistry evicts the region before reloading the roles table).
+ * Immutable: RoleRegistry only inserts the missing roles, a row is never updated.
+ */
 @Entity
+@Immutable
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = HibernateCacheConfig.ROLES_REGION)
 @Table(name = "roles")
 public class Role {
 
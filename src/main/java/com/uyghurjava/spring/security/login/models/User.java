@@ -1,5 +1,11 @@
 package com.uyghurjava.spring.security.login.models;
 
+import com.uyghurjava.spring.security.login.repository.HibernateCacheConfig;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+
 import javax.persistence.*;
 import javax.validation.constraints.Email;
 import javax.validation.constraints.NotBlank;
@@ -7,7 +13,15 @@ import javax.validation.constraints.Size;
 import java.util.HashSet;
 import java.util.Set;
 
+/**
+ * Second-level cached (HibernateCacheConfig): the User, its roles collection and its natural id (username),
+ * so findUserByUsername() is served by the natural-id and entity regions once the user has been loaded.
+ * The login activity columns of the table are mapped by UserLoginActivity, so they are not cached here.
+ */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HibernateCacheConfig.USERS_REGION)
+@NaturalIdCache(region = HibernateCacheConfig.USER_NATURAL_ID_REGION)
 @Table(name = "users",
 uniqueConstraints = {
         @UniqueConstraint(columnNames = "username"),
@@ -15,9 +29,18 @@ uniqueConstraints = {
 })
 public class User {
 
-    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    /**
+     * Ids come from the users_seq sequence in blocks of ID_ALLOCATION_SIZE (pooled optimizer):
+     * unlike IDENTITY, the id is known before the insert, so inserts can be sent in JDBC batches.
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
+    @NaturalId
     @NotBlank
     @Size(max = 20)
     private String username;
@@ -32,6 +55,7 @@ public class User {
     private String password;
 
     @ManyToMany(fetch = FetchType.LAZY) //fetch = FetchType.EAGER --> we should new HashSet<>
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HibernateCacheConfig.USER_ROLES_REGION)
     @JoinTable(name = "user_roles",
     joinColumns = @JoinColumn(name = "user_id"),
     inverseJoinColumns = @JoinColumn(name = "role_id"))
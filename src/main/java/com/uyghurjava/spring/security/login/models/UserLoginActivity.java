@@ -0,0 +1,41 @@
+package com.uyghurjava.spring.security.login.models;
+
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * Login activity of a user: the last_login and login_count columns of the users table, mapped apart from User.
+ *
+ * Written by LoginActivityTracker only (batched JDBC updates), read-only here and not second-level cached:
+ * the cached User does not hold these columns, so the flushes never evict it, and every read
+ * (on any instance) sees the last flushed values.
+ */
+@Entity
+@Immutable
+@Cacheable(false)
+@Table(name = "users", indexes = @Index(name = "idx_users_last_login", columnList = "last_login"))
+public class UserLoginActivity {
+
+    @Id
+    private Long id;
+
+    @Column(name = "last_login")
+    private Instant lastLogin;
+
+    @Column(name = "login_count", columnDefinition = "bigint default 0 not null")
+    private long loginCount;
+
+    public Long getId() {
+        return id;
+    }
+
+    public Instant getLastLogin() {
+        return lastLogin;
+    }
+
+    public long getLoginCount() {
+        return loginCount;
+    }
+}
@@ -0,0 +1,41 @@
+package com.uyghurjava.spring.security.login.payload.response;
+
+/**
+ * A row of a bulk user import that was not imported: line number in the file, username and reason.
+ */
+public class ImportRowError {
+
+    private long line;
+    private String username;
+    private String message;
+
+    public ImportRowError(long line, String username, String message) {
+        this.line = line;
+        this.username = username;
+        this.message = message;
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    public void setLine(long line) {
+        this.line = line;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
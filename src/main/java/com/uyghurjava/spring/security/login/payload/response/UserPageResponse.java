@@ -0,0 +1,34 @@
+package com.uyghurjava.spring.security.login.payload.response;
+
+import java.util.List;
+
+/**
+ * One page of users, ordered by id.
+ * nextCursor is the afterId of the next page, null on the last page.
+ */
+public class UserPageResponse {
+
+    private List<UserSummaryResponse> users;
+    private Long nextCursor;
+
+    public UserPageResponse(List<UserSummaryResponse> users, Long nextCursor) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<UserSummaryResponse> getUsers() {
+        return users;
+    }
+
+    public void setUsers(List<UserSummaryResponse> users) {
+        this.users = users;
+    }
+
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(Long nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,111 @@
+package com.uyghurjava.spring.security.login.repository;
+
+import com.uyghurjava.spring.security.login.models.Role;
+import com.uyghurjava.spring.security.login.models.User;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Eviction and statistics of the Hibernate second-level cache (HibernateCacheConfig).
+ *
+ * Hibernate keeps the regions up to date for the writes it makes on this instance. The cache is per instance, so:
+ * – a user saved on another instance (InvalidationBus USER event, which carries the user id) is evicted with evictUser():
+ *   no query, and only the users.queries region of the query results (the role queries stay cached)
+ * – a roles table changed on another instance is evicted with evictRoles() before the RoleRegistry reloads it
+ * – rows inserted with JDBC (UserBatchRepository) are not seen by the cached user queries: evictUserQueriesAfterCommit()
+ */
+@Component
+public class EntityCache {
+
+    private static final String[] REGIONS = {
+            HibernateCacheConfig.ROLES_REGION,
+            HibernateCacheConfig.USERS_REGION,
+            HibernateCacheConfig.USER_ROLES_REGION,
+            HibernateCacheConfig.USER_NATURAL_ID_REGION
+    };
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    private SessionFactory sessionFactory;
+
+    @PostConstruct
+    public void init(){
+        sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+    }
+
+    //evictUser: the user, its roles and the cached user query results (which may hold it, or not hold it yet); id 0: the queries only
+    public void evictUser(long id){
+        Cache cache = sessionFactory.getCache();
+        if(id > 0){
+            cache.evictEntityData(User.class, id);
+            cache.evictCollectionData(User.class.getName() + ".roles", id);
+        }
+        cache.evictQueryRegion(HibernateCacheConfig.USER_QUERIES_REGION);
+    }
+
+    public void evictRoles(){
+        Cache cache = sessionFactory.getCache();
+        cache.evictEntityData(Role.class);
+        cache.evictDefaultQueryRegion();
+    }
+
+    //evictUserQueriesAfterCommit: once the current transaction commits (now if there is none)
+    public void evictUserQueriesAfterCommit(){
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            evictUserQueries();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evictUserQueries();
+            }
+        });
+    }
+
+    public Map<String, Object> stats(){
+        Statistics statistics = sessionFactory.getStatistics();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (String region : REGIONS){
+            CacheRegionStatistics regionStatistics = statistics.getDomainDataRegionStatistics(region);
+            Map<String, Long> regionStats = new LinkedHashMap<>();
+            regionStats.put("hits", regionStatistics.getHitCount());
+            regionStats.put("misses", regionStatistics.getMissCount());
+            regionStats.put("puts", regionStatistics.getPutCount());
+            regionStats.put("size", regionStatistics.getElementCountInMemory());
+            stats.put(region, regionStats);
+        }
+        Map<String, Long> queryStats = new LinkedHashMap<>();
+        queryStats.put("hits", statistics.getQueryCacheHitCount());
+        queryStats.put("misses", statistics.getQueryCacheMissCount());
+        queryStats.put("puts", statistics.getQueryCachePutCount());
+        stats.put("queries", queryStats);
+        CacheRegionStatistics userQueries = statistics.getQueryRegionStatistics(HibernateCacheConfig.USER_QUERIES_REGION);
+        if(userQueries != null){
+            Map<String, Long> userQueryStats = new LinkedHashMap<>();
+            userQueryStats.put("hits", userQueries.getHitCount());
+            userQueryStats.put("misses", userQueries.getMissCount());
+            userQueryStats.put("puts", userQueries.getPutCount());
+            stats.put(HibernateCacheConfig.USER_QUERIES_REGION, userQueryStats);
+        }
+        stats.put("statementsExecuted", statistics.getPrepareStatementCount());
+        stats.put("statisticsEnabled", statistics.isStatisticsEnabled());
+        return stats;
+    }
+
+    private void evictUserQueries(){
+        sessionFactory.getCache().evictQueryRegion(HibernateCacheConfig.USER_QUERIES_REGION);
+    }
+}
@@ -0,0 +1,90 @@
+package com.uyghurjava.spring.security.login.repository;
+
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.core.config.DefaultConfiguration;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Hibernate second-level cache: in-process Ehcache regions behind JCache (hibernate-jcache).
+ *
+ * Regions (see @Cache and @NaturalIdCache on the entities):
+ * – roles: Role, read-only reference data
+ * – users, users.roles: User and its roles collection, read-write, uyghurcoder.app.entityCacheMaxSize entries
+ *   each, expired after uyghurcoder.app.entityCacheTtlMs
+ * – users.username: natural id (username -> id) of User
+ * – users.queries: results of the cacheable queries of users (UserRepository.findWithRolesByUsername), evicted on their own
+ *   when a user is saved elsewhere, uyghurcoder.app.queryCacheMaxSize entries
+ * – default-query-results-region: results of the other cacheable queries (RoleRepository.findByName), uyghurcoder.app.queryCacheMaxSize entries
+ * – default-update-timestamps-region: last write of each table, never expired (it makes the cached query results stale)
+ *
+ * Every application context has its own CacheManager, closed with the context.
+ * Writes that bypass Hibernate (JDBC) must go through EntityCache.
+ */
+@Configuration
+public class HibernateCacheConfig {
+
+    public static final String ROLES_REGION = "roles";
+    public static final String USERS_REGION = "users";
+    public static final String USER_ROLES_REGION = "users.roles";
+    public static final String USER_NATURAL_ID_REGION = "users.username";
+    public static final String USER_QUERIES_REGION = "users.queries";
+    private static final String QUERY_RESULTS_REGION = "default-query-results-region";
+    private static final String UPDATE_TIMESTAMPS_REGION = "default-update-timestamps-region";
+
+    @Value("${uyghurcoder.app.entityCacheMaxSize:10000}")
+    private long entityCacheMaxSize;
+
+    @Value("${uyghurcoder.app.entityCacheTtlMs:600000}")
+    private long entityCacheTtlMs;
+
+    @Value("${uyghurcoder.app.queryCacheMaxSize:10000}")
+    private long queryCacheMaxSize;
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(){
+        EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(URI.create("urn:hibernate-cache:" + UUID.randomUUID()),
+                new DefaultConfiguration(getClass().getClassLoader()));
+        createRegion(cacheManager, ROLES_REGION, 64, 0);
+        createRegion(cacheManager, USERS_REGION, entityCacheMaxSize, entityCacheTtlMs);
+        createRegion(cacheManager, USER_ROLES_REGION, entityCacheMaxSize, entityCacheTtlMs);
+        createRegion(cacheManager, USER_NATURAL_ID_REGION, entityCacheMaxSize, entityCacheTtlMs);
+        createRegion(cacheManager, USER_QUERIES_REGION, queryCacheMaxSize, entityCacheTtlMs);
+        createRegion(cacheManager, QUERY_RESULTS_REGION, queryCacheMaxSize, entityCacheTtlMs);
+        createRegion(cacheManager, UPDATE_TIMESTAMPS_REGION, 1024, 0);
+        return cacheManager;
+    }
+
+    //the regions are created above, a region missing there is a startup error
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheCustomizer(CacheManager hibernateCacheManager){
+        return properties -> {
+            properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        };
+    }
+
+    //createRegion: heap region of maxSize entries, expired ttlMs after being written (0 = never)
+    private static void createRegion(CacheManager cacheManager, String name, long maxSize, long ttlMs){
+        CacheConfigurationBuilder<Object, Object> builder = CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(Math.max(1, maxSize)));
+        if(ttlMs > 0){
+            builder = builder.withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofMillis(ttlMs)));
+        }
+        cacheManager.createCache(name, Eh107Configuration.fromEhcacheCacheConfiguration(builder.build()));
+    }
+}
@@ -0,0 +1,32 @@
+package com.uyghurjava.spring.security.login.repository;
+
+import com.uyghurjava.spring.security.login.models.RefreshToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+
+    //the token and the username of its user, in one query
+    @Query("select t from RefreshToken t join fetch t.user where t.tokenHash = :tokenHash")
+    Optional<RefreshToken> findWithUserByTokenHash(@Param("tokenHash") String tokenHash);
+
+    //markUsed: 1 if this call used the token, 0 if it had already been used (concurrent refresh or replay)
+    @Modifying
+    @Query("update RefreshToken t set t.used = true where t.id = :id and t.used = false")
+    int markUsed(@Param("id") Long id);
+
+    @Modifying
+    @Query("delete from RefreshToken t where t.familyId = :familyId")
+    int deleteByFamilyId(@Param("familyId") String familyId);
+
+    @Modifying
+    @Query("delete from RefreshToken t where t.expiryDate < :now")
+    int deleteExpired(@Param("now") Instant now);
+}
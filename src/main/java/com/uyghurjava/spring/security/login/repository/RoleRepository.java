@@ -3,11 +3,14 @@ package com.uyghurjava.spring.security.login.repository;
 import com.uyghurjava.spring.security.login.models.ERole;
 import com.uyghurjava.spring.security.login.models.Role;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.util.Optional;
 
 @Repository
 public interface RoleRepository extends JpaRepository<Role, Integer> {
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
     Optional<Role> findByName(ERole name);
 }
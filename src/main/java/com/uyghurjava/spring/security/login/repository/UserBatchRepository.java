@@ -0,0 +1,156 @@
+package com.uyghurjava.spring.security.login.repository;
+
+import com.uyghurjava.spring.security.login.models.Role;
+import com.uyghurjava.spring.security.login.models.User;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Set-based and batched JDBC access to the users and user_roles tables, for bulk operations.
+ *
+ * Ids come from the identifier generator of User.id itself (users_seq with its pooled optimizer):
+ * the JDBC and the Hibernate inserts share the same blocks of ids, so both can insert users side by side.
+ */
+@Repository
+public class UserBatchRepository {
+
+    @Autowired
+    NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    EntityCache entityCache;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    private SessionFactoryImplementor sessionFactory;
+    private IdentifierGenerator userIdGenerator;
+
+    @PostConstruct
+    public void init(){
+        sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        userIdGenerator = sessionFactory.getMetamodel().entityPersister(User.class).getIdentifierGenerator();
+    }
+
+    //findExistingUsernames: the given usernames that are already in the users table, in one query
+    public Set<String> findExistingUsernames(Collection<String> usernames){
+        if(usernames.isEmpty()){
+            return new HashSet<>();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT username FROM users WHERE username IN (:usernames)",
+                new MapSqlParameterSource("usernames", usernames), String.class));
+    }
+
+    //findExistingEmails: the given emails that are already in the users table, in one query
+    public Set<String> findExistingEmails(Collection<String> emails){
+        if(emails.isEmpty()){
+            return new HashSet<>();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT email FROM users WHERE email IN (:emails)",
+                new MapSqlParameterSource("emails", emails), String.class));
+    }
+
+    //forEachIdentity: the username and email of every user, streamed row by row
+    public void forEachIdentity(BiConsumer<String, String> consumer){
+        jdbcTemplate.getJdbcTemplate().query("SELECT username, email FROM users",
+                resultSet -> { consumer.accept(resultSet.getString(1), resultSet.getString(2)); });
+    }
+
+    //nextId: the next user id
+    public long nextId(){
+        return nextIds(1)[0];
+    }
+
+    //nextIds: count user ids, one sequence call per block of User.ID_ALLOCATION_SIZE ids (none while the current block lasts)
+    public long[] nextIds(int count){
+        long[] ids = new long[count];
+        //the generator only uses the session (its own connection) when it reads the sequence
+        try (StatelessSession session = sessionFactory.openStatelessSession()){
+            for (int i = 0; i < count; i++){
+                ids[i] = ((Number) userIdGenerator.generate((SharedSessionContractImplementor) session, null)).longValue();
+            }
+        }
+        return ids;
+    }
+
+    //insertUsers: insert users (with their id already set) and their roles, in two JDBC batches (the cached user queries are evicted on commit)
+    public void insertUsers(List<User> users){
+        entityCache.evictUserQueriesAfterCommit();
+        MapSqlParameterSource[] userParams = new MapSqlParameterSource[users.size()];
+        List<MapSqlParameterSource> roleParams = new ArrayList<>(users.size() * 2);
+        for (int i = 0; i < users.size(); i++){
+            User user = users.get(i);
+            userParams[i] = new MapSqlParameterSource()
+                    .addValue("id", user.getId())
+                    .addValue("username", user.getUsername())
+                    .addValue("email", user.getEmail())
+                    .addValue("password", user.getPassword());
+            for (Role role : user.getRoles()){
+                roleParams.add(new MapSqlParameterSource()
+                        .addValue("userId", user.getId())
+                        .addValue("roleId", role.getId()));
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users(id, username, email, password) VALUES (:id, :username, :email, :password)",
+                userParams);
+        jdbcTemplate.batchUpdate("INSERT INTO user_roles(user_id, role_id) VALUES (:userId, :roleId)",
+                roleParams.toArray(new MapSqlParameterSource[0]));
+    }
+
+    //updateLogins: add the logins to the last_login and login_count columns (UserLoginActivity, not cached), in one JDBC batch
+    public void updateLogins(List<LoginUpdate> logins){
+        MapSqlParameterSource[] params = new MapSqlParameterSource[logins.size()];
+        for (int i = 0; i < logins.size(); i++){
+            LoginUpdate login = logins.get(i);
+            params[i] = new MapSqlParameterSource()
+                    .addValue("id", login.getUserId())
+                    .addValue("lastLogin", Timestamp.from(login.getLastLogin()))
+                    .addValue("count", login.getCount());
+        }
+        //GREATEST: an older batch retried after a newer one does not move last_login back
+        jdbcTemplate.batchUpdate("UPDATE users SET last_login = GREATEST(COALESCE(last_login, :lastLogin), :lastLogin),"
+                + " login_count = login_count + :count WHERE id = :id", params);
+    }
+
+    //LoginUpdate: the logins of a user since the last update
+    public static final class LoginUpdate {
+        private final long userId;
+        private final Instant lastLogin;
+        private final long count;
+
+        public LoginUpdate(long userId, Instant lastLogin, long count) {
+            this.userId = userId;
+            this.lastLogin = lastLogin;
+            this.count = count;
+        }
+
+        public long getUserId() {
+            return userId;
+        }
+
+        public Instant getLastLogin() {
+            return lastLogin;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
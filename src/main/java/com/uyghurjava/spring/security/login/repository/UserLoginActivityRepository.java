@@ -0,0 +1,10 @@
+package com.uyghurjava.spring.security.login.repository;
+
+import com.uyghurjava.spring.security.login.models.UserLoginActivity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+//read-only: the rows are written by UserBatchRepository.updateLogins()
+@Repository
+public interface UserLoginActivityRepository extends JpaRepository<UserLoginActivity, Long> {
+}
@@ -0,0 +1,13 @@
+package com.uyghurjava.spring.security.login.repository;
+
+import com.uyghurjava.spring.security.login.models.User;
+
+import java.util.Optional;
+
+/**
+ * Lookups of a User by its natural id (username), answered by the natural-id and entity cache regions when they can be.
+ */
+public interface UserNaturalIdRepository {
+
+    Optional<User> findUserByUsername(String username);
+}
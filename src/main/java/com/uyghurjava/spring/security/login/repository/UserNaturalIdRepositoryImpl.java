@@ -0,0 +1,20 @@
+package com.uyghurjava.spring.security.login.repository;
+
+import com.uyghurjava.spring.security.login.models.User;
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Optional;
+
+public class UserNaturalIdRepositoryImpl implements UserNaturalIdRepository {
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    //findUserByUsername: username -> id from the natural-id region, then the User from the entity region (a query only on a miss)
+    @Override
+    public Optional<User> findUserByUsername(String username){
+        return entityManager.unwrap(Session.class).bySimpleNaturalId(User.class).loadOptional(username);
+    }
+}
@@ -1,17 +1,58 @@
 package com.uyghurjava.spring.security.login.repository;
 
 import com.uyghurjava.spring.security.login.models.User;
+import com.uyghurjava.spring.security.login.repository.projection.UserIdentity;
+import com.uyghurjava.spring.security.login.repository.projection.UserRoleName;
+import com.uyghurjava.spring.security.login.repository.projection.UserSummary;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, UserNaturalIdRepository {
 
-    Optional<User> findUserByUsername(String username);
+    /**
+     * Principal loader: the user and its roles in one query (fetch join through the entity graph),
+     * in a read-only transaction with read-only entities (no snapshots kept for dirty-checking, no flush).
+     * The query is cacheable, in its own region: a repeated load is served by the users.queries, users and users.roles regions.
+     */
+    @EntityGraph(attributePaths = "roles")
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHE_REGION, value = HibernateCacheConfig.USER_QUERIES_REGION)
+    })
+    @Transactional(readOnly = true)
+    Optional<User> findWithRolesByUsername(String username);
     Boolean existsByUsername(String username);
     Boolean existsByEmail(String email);
 
+    //the users holding this username or this email (at most two rows), in one query
+    List<UserIdentity> findIdentitiesByUsernameOrEmail(String username, String email);
+
+    //number of users by BCrypt cost of the stored hash ($2a$10$... -> "10"): [cost, count]
+    @Query(value = "SELECT SUBSTRING(password, 5, 2) AS cost, COUNT(*) AS users FROM users GROUP BY SUBSTRING(password, 5, 2)",
+            nativeQuery = true)
+    List<Object[]> countUsersByPasswordCost();
+
+    //keyset paging: the users with id > afterId, ordered by id (limit given by the Pageable, no count query)
+    @Query("select u.id as id, u.username as username, u.email as email from User u where u.id > :afterId order by u.id")
+    List<UserSummary> findUserSummariesAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    //role names of a page of users, in one query
+    @Query("select u.id as userId, r.name as role from User u join u.roles r where u.id in :ids")
+    List<UserRoleName> findRoleNamesByUserIds(@Param("ids") Collection<Long> ids);
+
 
 }
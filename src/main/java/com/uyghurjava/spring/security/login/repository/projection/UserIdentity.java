@@ -0,0 +1,9 @@
+package com.uyghurjava.spring.security.login.repository.projection;
+
+/**
+ * Projection of the unique columns of a User.
+ */
+public interface UserIdentity {
+    String getUsername();
+    String getEmail();
+}
@@ -0,0 +1,11 @@
+package com.uyghurjava.spring.security.login.repository.projection;
+
+import com.uyghurjava.spring.security.login.models.ERole;
+
+/**
+ * Projection of one (user id, role name) pair of the user_roles table.
+ */
+public interface UserRoleName {
+    Long getUserId();
+    ERole getRole();
+}
@@ -0,0 +1,10 @@
+package com.uyghurjava.spring.security.login.repository.projection;
+
+/**
+ * Projection of a User without password and roles (one row per user).
+ */
+public interface UserSummary {
+    Long getId();
+    String getUsername();
+    String getEmail();
+}
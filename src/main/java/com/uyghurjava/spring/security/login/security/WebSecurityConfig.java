@@ -1,12 +1,21 @@
 package com.uyghurjava.spring.security.login.security;
 
+import com.uyghurjava.spring.security.login.security.service.RoleMaskHierarchy;
+import com.uyghurjava.spring.security.login.security.service.RoleMaskMethodSecurityExpressionHandler;
 import com.uyghurjava.spring.security.login.security.service.UserDetailsServiceImpl;
 import com.uyghurjava.spring.security.login.security.service.jwt.AuthEntryPointJwt;
 import com.uyghurjava.spring.security.login.security.service.jwt.AuthTokenFilter;
+import com.uyghurjava.spring.security.login.security.service.password.BCryptCostCalibrator;
+import com.uyghurjava.spring.security.login.security.service.password.BestEffortRehashAuthenticationProvider;
+import com.uyghurjava.spring.security.login.security.service.password.CalibratedBCryptPasswordEncoder;
+import com.uyghurjava.spring.security.login.security.service.password.OffloadingPasswordEncoder;
+import com.uyghurjava.spring.security.login.security.service.password.PasswordHashingExecutor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
@@ -14,7 +23,6 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
@@ -56,6 +64,18 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
     @Autowired
     private AuthEntryPointJwt unauthorizedHandler;
 
+    /**
+     * BCrypt runs on this dedicated, bounded worker pool instead of the Tomcat request threads.
+     */
+    @Autowired
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    /**
+     * BCrypt strength calibrated at startup for the configured latency budget per hash.
+     */
+    @Autowired
+    private BCryptCostCalibrator bCryptCostCalibrator;
+
     /**
      * AuthTokenFilter extends OncePerRequestFilter,
      * OncePerRequestFilter makes a single execution for each request to our API.
@@ -74,12 +94,18 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
      *
      * The implementation of UserDetailsService will be used for configuring DaoAuthenticationProvider by AuthenticationManagerBuilder.
      * userDetailsService() method.
+     * The DaoAuthenticationProvider re-encodes the stored hash on login only when the hashing queue has room
+     * (BestEffortRehashAuthenticationProvider).
      * @param auth
      * @throws Exception
      */
     @Override
     protected void configure(AuthenticationManagerBuilder auth) throws Exception {
-       auth.userDetailsService(userDetailsService).passwordEncoder(passwordEncoder());
+       BestEffortRehashAuthenticationProvider authenticationProvider = new BestEffortRehashAuthenticationProvider();
+       authenticationProvider.setUserDetailsService(userDetailsService);
+       authenticationProvider.setUserDetailsPasswordService(userDetailsService);
+       authenticationProvider.setPasswordEncoder(passwordEncoder());
+       auth.authenticationProvider(authenticationProvider);
     }
 
     @Bean
@@ -90,11 +116,30 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
 
     /**
      * We also need a PasswordEncoder for the DaoAuthenticationProvider. If we don’t specify, it will use plain text.
+     * BCrypt hashing and matching are offloaded to the PasswordHashingExecutor (fast 503 when its queue is full).
      * @return
      */
     @Bean
     public PasswordEncoder passwordEncoder(){
-        return new BCryptPasswordEncoder();
+        return new OffloadingPasswordEncoder(new CalibratedBCryptPasswordEncoder(bCryptCostCalibrator.getStrength()),
+                passwordHashingExecutor);
+    }
+
+    /**
+     * Role hierarchy ADMIN > MODERATOR > USER, precomputed in RoleMask (also used by the URL rules below).
+     */
+    @Bean
+    public static RoleHierarchy roleHierarchy(){
+        return new RoleMaskHierarchy();
+    }
+
+    /**
+     * @PreAuthorize role checks are bit tests on the RoleMask of the principal, with the role hierarchy:
+     * hasRole('USER') is true for moderators and admins.
+     */
+    @Bean
+    public static MethodSecurityExpressionHandler methodSecurityExpressionHandler(){
+        return new RoleMaskMethodSecurityExpressionHandler();
     }
 
     /**
@@ -115,6 +160,9 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
                 .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS).and()
                 .authorizeRequests().antMatchers("/api/auth/**").permitAll()
                 .antMatchers("/api/test/**").permitAll()
+                .antMatchers("/.well-known/jwks.json").permitAll()
+                .antMatchers("/actuator/health").permitAll()
+                .antMatchers("/actuator/**").hasRole("ADMIN")
                 .antMatchers(h2ConsolePath + "/**").permitAll()
                 .anyRequest().authenticated();
 
@@ -0,0 +1,173 @@
+package com.uyghurjava.spring.security.login.security.service;
+
+import com.uyghurjava.spring.security.login.models.RefreshToken;
+import com.uyghurjava.spring.security.login.repository.RefreshTokenRepository;
+import com.uyghurjava.spring.security.login.repository.UserRepository;
+import com.uyghurjava.spring.security.login.security.service.jwt.TokenDigestCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Refresh tokens: /api/auth/refreshtoken issues a new access token without checking the password again (no BCrypt).
+ *
+ * – a refresh token is an opaque random value, only its SHA-256 digest is stored (refresh_tokens table)
+ * – every use rotates it: the used token is marked as used, a new token of the same family is issued,
+ *   valid uyghurcoder.app.jwtRefreshExpirationMs from now (sliding session)
+ * – a used token presented again (stolen copy, replay) deletes the whole family: the session must sign in again
+ * – expired tokens are purged every hour
+ */
+@Service
+public class RefreshTokenService {
+    private static final Logger logger = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private static final long PURGE_PERIOD_MS = TimeUnit.HOURS.toMillis(1);
+
+    @Value("${uyghurcoder.app.jwtRefreshExpirationMs:86400000}")
+    private long refreshTokenDurationMs;
+
+    @Autowired
+    RefreshTokenRepository refreshTokenRepository;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private ScheduledExecutorService purgeScheduler;
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder refreshed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder reuseDetected = new LongAdder();
+
+    @PostConstruct
+    public void init(){
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        purgeScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "refresh-token-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purgeScheduler.scheduleAtFixedRate(() -> {
+            try {
+                Integer purged = transactionTemplate.execute(status -> refreshTokenRepository.deleteExpired(Instant.now()));
+                logger.info("Purged {} expired refresh tokens", purged);
+            } catch (RuntimeException e){
+                logger.error("Refresh token purge failed: {}", e.getMessage());
+            }
+        }, PURGE_PERIOD_MS, PURGE_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        purgeScheduler.shutdownNow();
+    }
+
+    public long getRefreshTokenDurationMs(){
+        return refreshTokenDurationMs;
+    }
+
+    /**
+     * createRefreshToken: first refresh token of a new session (family), after a successful sign-in.
+     * @param userId
+     * @return the refresh token, to send in the refresh Cookie
+     */
+    @Transactional
+    public String createRefreshToken(Long userId){
+        String token = issue(userId, UUID.randomUUID().toString());
+        issued.increment();
+        return token;
+    }
+
+    /**
+     * rotateRefreshToken: use a refresh token, it is replaced by a new token of the same family.
+     * @param token the refresh token of the Cookie
+     * @return the new refresh token and the username of its user
+     * @throws TokenRefreshException if the token is unknown, expired or already used (the family is then deleted)
+     */
+    @Transactional(noRollbackFor = TokenRefreshException.class)
+    public Rotation rotateRefreshToken(String token){
+        RefreshToken refreshToken = refreshTokenRepository.findWithUserByTokenHash(TokenDigestCache.digest(token))
+                .orElseThrow(() -> new TokenRefreshException("Refresh token is not in database!"));
+        if(refreshToken.getExpiryDate().isBefore(Instant.now())){
+            refreshTokenRepository.delete(refreshToken);
+            expired.increment();
+            throw new TokenRefreshException("Refresh token was expired. Please make a new signin request");
+        }
+        if(refreshToken.isUsed() || refreshTokenRepository.markUsed(refreshToken.getId()) == 0){
+            refreshTokenRepository.deleteByFamilyId(refreshToken.getFamilyId());
+            reuseDetected.increment();
+            logger.warn("Refresh token reused for user {}: session revoked", refreshToken.getUser().getUsername());
+            throw new TokenRefreshException("Refresh token was already used. Please make a new signin request");
+        }
+        String newToken = issue(refreshToken.getUser().getId(), refreshToken.getFamilyId());
+        refreshed.increment();
+        return new Rotation(newToken, refreshToken.getUser().getUsername());
+    }
+
+    //revokeRefreshToken: sign-out, delete the session (family) of the token
+    @Transactional
+    public void revokeRefreshToken(String token){
+        refreshTokenRepository.findWithUserByTokenHash(TokenDigestCache.digest(token))
+                .ifPresent(refreshToken -> refreshTokenRepository.deleteByFamilyId(refreshToken.getFamilyId()));
+    }
+
+    public Map<String, Long> stats(){
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("issued", issued.sum());
+        stats.put("refreshed", refreshed.sum());
+        stats.put("expired", expired.sum());
+        stats.put("reuseDetected", reuseDetected.sum());
+        return stats;
+    }
+
+    private String issue(Long userId, String familyId){
+        byte[] bytes = new byte[32];
+        secureRandom.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        //getById: the user is only referenced, not loaded
+        refreshTokenRepository.save(new RefreshToken(userRepository.getById(userId), TokenDigestCache.digest(token),
+                familyId, Instant.now().plusMillis(refreshTokenDurationMs)));
+        return token;
+    }
+
+    /**
+     * Result of a rotation: the new refresh token and the username to issue the access token for.
+     */
+    public static final class Rotation {
+        private final String token;
+        private final String username;
+
+        private Rotation(String token, String username) {
+            this.token = token;
+            this.username = username;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.uyghurjava.spring.security.login.security.service;
+
+import com.uyghurjava.spring.security.login.models.ERole;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The roles of a user as a bitmask: bit i is ERole.values()[i].
+ *
+ * A mask is one int where a list of authorities is a list of objects, and the authorities of every possible mask
+ * are built once: turning a mask back into authorities allocates nothing.
+ *
+ * The role hierarchy (ADMIN > MODERATOR > USER) is precomputed too: reachable(mask) is one array read,
+ * so "has the user this role, directly or through the hierarchy" is a bit test.
+ */
+public final class RoleMask {
+
+    private static final ERole[] ROLES = ERole.values();
+    private static final List<List<GrantedAuthority>> AUTHORITIES;
+
+    //the role hierarchy: each pair is {role, role it includes}
+    private static final ERole[][] HIERARCHY = {
+            {ERole.ROLE_ADMIN, ERole.ROLE_MODERATOR},
+            {ERole.ROLE_MODERATOR, ERole.ROLE_USER}
+    };
+    private static final int[] REACHABLE;
+
+    //authority names ("ROLE_USER") and role names of hasRole() ("USER" or "ROLE_USER") -> bit
+    private static final Map<String, Integer> AUTHORITY_BITS;
+    private static final Map<String, Integer> ROLE_BITS;
+
+    static {
+        if(ROLES.length > 16){
+            throw new IllegalStateException("Too many roles for a precomputed RoleMask: " + ROLES.length);
+        }
+        List<List<GrantedAuthority>> authorities = new ArrayList<>(1 << ROLES.length);
+        for (int mask = 0; mask < 1 << ROLES.length; mask++){
+            List<GrantedAuthority> list = new ArrayList<>(Integer.bitCount(mask));
+            for (ERole role : ROLES){
+                if((mask & bit(role)) != 0){
+                    list.add(new SimpleGrantedAuthority(role.name()));
+                }
+            }
+            authorities.add(Collections.unmodifiableList(list));
+        }
+        AUTHORITIES = Collections.unmodifiableList(authorities);
+
+        REACHABLE = new int[1 << ROLES.length];
+        for (int mask = 0; mask < REACHABLE.length; mask++){
+            int reachable = mask;
+            int previous;
+            do {
+                previous = reachable;
+                for (ERole[] pair : HIERARCHY){
+                    if((reachable & bit(pair[0])) != 0){
+                        reachable |= bit(pair[1]);
+                    }
+                }
+            } while (reachable != previous);
+            REACHABLE[mask] = reachable;
+        }
+
+        Map<String, Integer> authorityBits = new HashMap<>();
+        Map<String, Integer> roleBits = new HashMap<>();
+        for (ERole role : ROLES){
+            authorityBits.put(role.name(), bit(role));
+            roleBits.put(role.name(), bit(role));
+            roleBits.put(role.name().substring("ROLE_".length()), bit(role));
+        }
+        AUTHORITY_BITS = Collections.unmodifiableMap(authorityBits);
+        ROLE_BITS = Collections.unmodifiableMap(roleBits);
+    }
+
+    private RoleMask() {
+    }
+
+    public static int bit(ERole role){
+        return 1 << role.ordinal();
+    }
+
+    /**
+     * of: the mask of granted authorities named after ERole values.
+     * @throws IllegalArgumentException for an authority that is not an ERole
+     */
+    public static int of(Collection<? extends GrantedAuthority> authorities){
+        int mask = 0;
+        for (GrantedAuthority authority : authorities){
+            mask |= bit(ERole.valueOf(authority.getAuthority()));
+        }
+        return mask;
+    }
+
+    /**
+     * ofNames: the mask of role names, as carried by a JWT.
+     * @throws IllegalArgumentException for a name that is not an ERole
+     */
+    public static int ofNames(Collection<?> names){
+        int mask = 0;
+        for (Object name : names){
+            mask |= bit(ERole.valueOf(name.toString()));
+        }
+        return mask;
+    }
+
+    //ofKnown: the mask of the ERole authorities, the other authorities are ignored
+    public static int ofKnown(Collection<? extends GrantedAuthority> authorities){
+        int mask = 0;
+        for (GrantedAuthority authority : authorities){
+            mask |= authorityBit(authority.getAuthority());
+        }
+        return mask;
+    }
+
+    //reachable: the roles of a mask and the roles they include in the hierarchy
+    public static int reachable(int mask){
+        return REACHABLE[mask];
+    }
+
+    //authorityBit: the bit of an authority name ("ROLE_ADMIN"), 0 if it is not an ERole
+    public static int authorityBit(String authority){
+        Integer bit = authority != null ? AUTHORITY_BITS.get(authority) : null;
+        return bit != null ? bit : 0;
+    }
+
+    //roleBit: the bit of a hasRole() argument ("ADMIN" or "ROLE_ADMIN"), 0 if it is not an ERole
+    public static int roleBit(String role){
+        Integer bit = role != null ? ROLE_BITS.get(role) : null;
+        return bit != null ? bit : 0;
+    }
+
+    //authorities: the shared, unmodifiable authorities of a mask
+    public static List<GrantedAuthority> authorities(int mask){
+        return AUTHORITIES.get(mask);
+    }
+}
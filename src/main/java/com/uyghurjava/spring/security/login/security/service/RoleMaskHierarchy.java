@@ -0,0 +1,42 @@
+package com.uyghurjava.spring.security.login.security.service;
+
+import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * RoleHierarchy (ADMIN > MODERATOR > USER) answered from the precomputed RoleMask table:
+ * the reachable authorities of ERole authorities are a shared list, nothing is built per call.
+ * Authorities that are not ERoles are kept as they are.
+ */
+public class RoleMaskHierarchy implements RoleHierarchy {
+
+    @Override
+    public Collection<? extends GrantedAuthority> getReachableGrantedAuthorities(Collection<? extends GrantedAuthority> authorities) {
+        if(authorities == null || authorities.isEmpty()){
+            return authorities;
+        }
+        int mask = 0;
+        List<GrantedAuthority> others = null;
+        for (GrantedAuthority authority : authorities){
+            int bit = RoleMask.authorityBit(authority.getAuthority());
+            if(bit != 0){
+                mask |= bit;
+            } else {
+                if(others == null){
+                    others = new ArrayList<>();
+                }
+                others.add(authority);
+            }
+        }
+        List<GrantedAuthority> reachable = RoleMask.authorities(RoleMask.reachable(mask));
+        if(others == null){
+            return reachable;
+        }
+        others.addAll(reachable);
+        return others;
+    }
+}
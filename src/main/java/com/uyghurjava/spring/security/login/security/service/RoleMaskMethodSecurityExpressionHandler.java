@@ -0,0 +1,35 @@
+package com.uyghurjava.spring.security.login.security.service;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionOperations;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Method security expression handler whose root object is a RoleMaskSecurityExpressionRoot:
+ * the role checks of @PreAuthorize are bit tests on the RoleMask of the principal, with the RoleMaskHierarchy.
+ */
+public class RoleMaskMethodSecurityExpressionHandler extends DefaultMethodSecurityExpressionHandler {
+
+    private AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+
+    public RoleMaskMethodSecurityExpressionHandler() {
+        setRoleHierarchy(new RoleMaskHierarchy());
+    }
+
+    @Override
+    protected MethodSecurityExpressionOperations createSecurityExpressionRoot(Authentication authentication, MethodInvocation invocation) {
+        RoleMaskSecurityExpressionRoot root = new RoleMaskSecurityExpressionRoot(authentication, trustResolver,
+                getRoleHierarchy(), getPermissionEvaluator());
+        root.setThis(invocation.getThis());
+        return root;
+    }
+
+    @Override
+    public void setTrustResolver(AuthenticationTrustResolver trustResolver) {
+        super.setTrustResolver(trustResolver);
+        this.trustResolver = trustResolver;
+    }
+}
@@ -0,0 +1,166 @@
+package com.uyghurjava.spring.security.login.security.service;
+
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.access.expression.SecurityExpressionRoot;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionOperations;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Root object of the @PreAuthorize expressions: hasRole(), hasAnyRole(), hasAuthority() and hasAnyAuthority()
+ * of an ERole are bit tests on the reachable RoleMask of the UserDetailsImpl principal.
+ *
+ * The standard SecurityExpressionRoot builds a Set of authority names (through the RoleHierarchy) for every evaluation
+ * and prefixes every role name; here nothing is allocated. Other principals, other authorities and the other
+ * expressions (isAuthenticated(), hasPermission()...) are answered by a standard SecurityExpressionRoot, created on first use.
+ */
+public class RoleMaskSecurityExpressionRoot implements MethodSecurityExpressionOperations {
+
+    private final Authentication authentication;
+    private final AuthenticationTrustResolver trustResolver;
+    private final RoleHierarchy roleHierarchy;
+    private final PermissionEvaluator permissionEvaluator;
+    //reachable RoleMask of the principal, -1 if the principal is not a UserDetailsImpl
+    private final int reachableMask;
+    private SecurityExpressionRoot standardRoot;
+
+    private Object filterObject;
+    private Object returnObject;
+    private Object target;
+
+    public RoleMaskSecurityExpressionRoot(Authentication authentication,
+                                          AuthenticationTrustResolver trustResolver,
+                                          RoleHierarchy roleHierarchy,
+                                          PermissionEvaluator permissionEvaluator) {
+        this.authentication = authentication;
+        this.trustResolver = trustResolver;
+        this.roleHierarchy = roleHierarchy;
+        this.permissionEvaluator = permissionEvaluator;
+        Object principal = authentication != null ? authentication.getPrincipal() : null;
+        this.reachableMask = principal instanceof UserDetailsImpl ? RoleMask.reachable(((UserDetailsImpl) principal).getRoleMask()) : -1;
+    }
+
+    @Override
+    public boolean hasRole(String role) {
+        int bit = RoleMask.roleBit(role);
+        if(bit == 0 || reachableMask < 0){
+            return standardRoot().hasRole(role);
+        }
+        return (reachableMask & bit) != 0;
+    }
+
+    @Override
+    public boolean hasAnyRole(String... roles) {
+        for (String role : roles){
+            if(hasRole(role)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasAuthority(String authority) {
+        int bit = RoleMask.authorityBit(authority);
+        if(bit == 0 || reachableMask < 0){
+            return standardRoot().hasAuthority(authority);
+        }
+        return (reachableMask & bit) != 0;
+    }
+
+    @Override
+    public boolean hasAnyAuthority(String... authorities) {
+        for (String authority : authorities){
+            if(hasAuthority(authority)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Authentication getAuthentication() {
+        return authentication;
+    }
+
+    @Override
+    public boolean permitAll() {
+        return true;
+    }
+
+    @Override
+    public boolean denyAll() {
+        return false;
+    }
+
+    @Override
+    public boolean isAnonymous() {
+        return standardRoot().isAnonymous();
+    }
+
+    @Override
+    public boolean isAuthenticated() {
+        return standardRoot().isAuthenticated();
+    }
+
+    @Override
+    public boolean isRememberMe() {
+        return standardRoot().isRememberMe();
+    }
+
+    @Override
+    public boolean isFullyAuthenticated() {
+        return standardRoot().isFullyAuthenticated();
+    }
+
+    @Override
+    public boolean hasPermission(Object target, Object permission) {
+        return standardRoot().hasPermission(target, permission);
+    }
+
+    @Override
+    public boolean hasPermission(Object targetId, String targetType, Object permission) {
+        return standardRoot().hasPermission(targetId, targetType, permission);
+    }
+
+    @Override
+    public void setFilterObject(Object filterObject) {
+        this.filterObject = filterObject;
+    }
+
+    @Override
+    public Object getFilterObject() {
+        return filterObject;
+    }
+
+    @Override
+    public void setReturnObject(Object returnObject) {
+        this.returnObject = returnObject;
+    }
+
+    @Override
+    public Object getReturnObject() {
+        return returnObject;
+    }
+
+    public void setThis(Object target) {
+        this.target = target;
+    }
+
+    @Override
+    public Object getThis() {
+        return target;
+    }
+
+    //standardRoot: the Spring Security root, for what is not a role check of a UserDetailsImpl
+    private SecurityExpressionRoot standardRoot(){
+        if(standardRoot == null){
+            standardRoot = new SecurityExpressionRoot(authentication) {};
+            standardRoot.setTrustResolver(trustResolver);
+            standardRoot.setRoleHierarchy(roleHierarchy);
+            standardRoot.setPermissionEvaluator(permissionEvaluator);
+        }
+        return standardRoot;
+    }
+}
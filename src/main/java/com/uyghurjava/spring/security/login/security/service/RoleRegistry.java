@@ -0,0 +1,117 @@
+package com.uyghurjava.spring.security.login.security.service;
+
+import com.uyghurjava.spring.security.login.models.ERole;
+import com.uyghurjava.spring.security.login.models.Role;
+import com.uyghurjava.spring.security.login.repository.EntityCache;
+import com.uyghurjava.spring.security.login.repository.RoleRepository;
+import com.uyghurjava.spring.security.login.security.service.invalidation.InvalidationBus;
+import com.uyghurjava.spring.security.login.security.service.invalidation.InvalidationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registry of the Role rows, loaded once at startup.
+ *
+ * Roles are reference data: the signup path resolves them here instead of calling RoleRepository.findByName
+ * for every requested role. Missing ERole rows are seeded on boot, so the roles table no longer has to be filled by hand.
+ * When an admin changes the roles table, refresh() reloads the registry, on this instance and (InvalidationBus) on the others.
+ *
+ * Requested role strings are mapped with a precomputed lookup:
+ * "admin" -> ROLE_ADMIN, "mod" -> ROLE_MODERATOR, anything else -> ROLE_USER.
+ */
+@Component
+public class RoleRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(RoleRegistry.class);
+
+    private static final Map<String, ERole> ROLE_NAMES;
+
+    static {
+        Map<String, ERole> roleNames = new HashMap<>();
+        roleNames.put("admin", ERole.ROLE_ADMIN);
+        roleNames.put("mod", ERole.ROLE_MODERATOR);
+        roleNames.put("user", ERole.ROLE_USER);
+        ROLE_NAMES = Collections.unmodifiableMap(roleNames);
+    }
+
+    @Autowired
+    RoleRepository roleRepository;
+
+    @Autowired
+    InvalidationBus invalidationBus;
+
+    @Autowired
+    EntityCache entityCache;
+
+    private volatile Map<ERole, Role> roles = Collections.emptyMap();
+
+    @PostConstruct
+    public void init(){
+        reload();
+        invalidationBus.subscribe(InvalidationEvent.Kind.ROLES, event -> reload());
+    }
+
+    //refresh: reload the roles table here and on the other instances
+    public void refresh(){
+        reload();
+        invalidationBus.publish(InvalidationEvent.Kind.ROLES, "*", 0);
+    }
+
+    //reload: reload the roles table (not from the second-level cache), seeding the missing ERole rows
+    private synchronized void reload(){
+        entityCache.evictRoles();
+        Map<ERole, Role> loaded = new EnumMap<>(ERole.class);
+        for (Role role : roleRepository.findAll()){
+            if(role.getName() != null){
+                loaded.put(role.getName(), role);
+            }
+        }
+        for (ERole name : ERole.values()){
+            if(!loaded.containsKey(name)){
+                logger.info("Seeding missing role {}", name);
+                loaded.put(name, roleRepository.save(new Role(name)));
+            }
+        }
+        roles = Collections.unmodifiableMap(loaded);
+    }
+
+    //getRole: the Role row of an ERole
+    public Role getRole(ERole name){
+        Role role = roles.get(name);
+        if(role == null){
+            throw new RuntimeException("Error: Role is not found");
+        }
+        return role;
+    }
+
+    //resolveRoles: the Roles of requested role strings (with ROLE_USER if not specifying role)
+    public Set<Role> resolveRoles(Set<String> strRoles){
+        Set<Role> resolved = new HashSet<>();
+        if(strRoles == null || strRoles.isEmpty()){
+            resolved.add(getRole(ERole.ROLE_USER));
+            return resolved;
+        }
+        for (String strRole : strRoles){
+            resolved.add(getRole(toERole(strRole)));
+        }
+        return resolved;
+    }
+
+    public static ERole toERole(String strRole){
+        ERole name = strRole != null ? ROLE_NAMES.get(strRole) : null;
+        return name != null ? name : ERole.ROLE_USER;
+    }
+
+    public Map<ERole, Role> getRoles(){
+        return roles;
+    }
+}
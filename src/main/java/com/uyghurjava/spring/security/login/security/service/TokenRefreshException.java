@@ -0,0 +1,12 @@
+package com.uyghurjava.spring.security.login.security.service;
+
+/**
+ * Thrown when a refresh token cannot be used (unknown, expired or already used): 403, the user must sign in again.
+ */
+public class TokenRefreshException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public TokenRefreshException(String message) {
+        super(message);
+    }
+}
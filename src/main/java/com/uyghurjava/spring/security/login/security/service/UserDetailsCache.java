@@ -0,0 +1,213 @@
+package com.uyghurjava.spring.security.login.security.service;
+
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * In-memory cache of UserDetails by username, with size and TTL eviction.
+ *
+ * Concurrent misses for the same username are merged into one load (single-flight):
+ * the first caller loads the user, the other callers wait for the same result instead of hitting the database.
+ * A failed load (for example UsernameNotFoundException) is not cached.
+ *
+ * Entries must be invalidated with evict() whenever the user is saved, so that the cache never serves stale authorities.
+ */
+public class UserDetailsCache {
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadTimeNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public UserDetailsCache(int maxSize, long ttlMs) {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    /**
+     * get: return the cached UserDetails, or load it with the loader (once for all concurrent callers).
+     * @param username
+     * @param loader loads the UserDetails from the database
+     * @return the UserDetails of the user
+     */
+    public UserDetails get(String username, Function<String, UserDetails> loader){
+        if(maxSize <= 0){
+            return load(username, loader);
+        }
+        Entry entry = entries.get(username);
+        if(entry != null){
+            if(!entry.future.isDone()){
+                //another thread is loading this user: wait for its result
+                coalesced.increment();
+                return join(entry.future);
+            }
+            if(!isExpired(entry)){
+                hits.increment();
+                return join(entry.future);
+            }
+            if(entries.remove(username, entry)){
+                evictions.increment();
+            }
+        }
+
+        Entry mine = new Entry();
+        Entry existing = entries.putIfAbsent(username, mine);
+        if(existing != null){
+            coalesced.increment();
+            return join(existing.future);
+        }
+        if(entries.size() > maxSize){
+            makeRoom();
+        }
+        try {
+            UserDetails userDetails = load(username, loader);
+            mine.loadedAt = System.nanoTime();
+            mine.future.complete(userDetails);
+            return userDetails;
+        } catch (RuntimeException e){
+            entries.remove(username, mine);
+            mine.future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    //evict: invalidate the entry of a user (call it whenever the user is saved)
+    public void evict(String username){
+        if(entries.remove(username) != null){
+            evictions.increment();
+        }
+    }
+
+    public void clear(){
+        entries.clear();
+    }
+
+    public int size(){
+        return entries.size();
+    }
+
+    public long getHits(){
+        return hits.sum();
+    }
+
+    public long getMisses(){
+        return misses.sum();
+    }
+
+    public long getCoalesced(){
+        return coalesced.sum();
+    }
+
+    public long getLoads(){
+        return loads.sum();
+    }
+
+    public long getLoadFailures(){
+        return loadFailures.sum();
+    }
+
+    public long getLoadTimeNanos(){
+        return loadTimeNanos.sum();
+    }
+
+    public long getEvictions(){
+        return evictions.sum();
+    }
+
+    public double getHitRatio(){
+        long hit = getHits() + getCoalesced();
+        long total = hit + getMisses();
+        return total == 0 ? 0.0 : (double) hit / total;
+    }
+
+    public Map<String, Object> stats(){
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long loadCount = getLoads();
+        stats.put("size", size());
+        stats.put("maxSize", maxSize);
+        stats.put("ttlMs", TimeUnit.NANOSECONDS.toMillis(ttlNanos));
+        stats.put("hits", getHits());
+        stats.put("misses", getMisses());
+        stats.put("coalesced", getCoalesced());
+        stats.put("hitRatio", getHitRatio());
+        stats.put("loads", loadCount);
+        stats.put("loadFailures", getLoadFailures());
+        stats.put("averageLoadMs", loadCount == 0 ? 0.0 : getLoadTimeNanos() / 1_000_000.0 / loadCount);
+        stats.put("evictions", getEvictions());
+        return stats;
+    }
+
+    private UserDetails load(String username, Function<String, UserDetails> loader){
+        misses.increment();
+        long start = System.nanoTime();
+        try {
+            return loader.apply(username);
+        } catch (RuntimeException e){
+            loadFailures.increment();
+            throw e;
+        } finally {
+            loads.increment();
+            loadTimeNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private boolean isExpired(Entry entry){
+        return System.nanoTime() - entry.loadedAt >= ttlNanos;
+    }
+
+    /**
+     * Purge expired entries; if that is not enough, evict an eighth of the cache.
+     * Entries still loading are kept, their callers are waiting for them.
+     */
+    private void makeRoom(){
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()){
+            Entry entry = iterator.next();
+            if(entry.future.isDone() && isExpired(entry)){
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+        int toEvict = entries.size() - maxSize + Math.max(1, maxSize / 8);
+        iterator = entries.values().iterator();
+        while (toEvict > 0 && iterator.hasNext()){
+            if(iterator.next().future.isDone()){
+                iterator.remove();
+                evictions.increment();
+                toEvict--;
+            }
+        }
+    }
+
+    private static UserDetails join(CompletableFuture<UserDetails> future){
+        try {
+            return future.join();
+        } catch (CompletionException e){
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<UserDetails> future = new CompletableFuture<>();
+        private volatile long loadedAt;
+    }
+}
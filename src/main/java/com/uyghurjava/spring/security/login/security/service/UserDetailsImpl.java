@@ -1,15 +1,13 @@
 package com.uyghurjava.spring.security.login.security.service;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.uyghurjava.spring.security.login.models.Role;
 import com.uyghurjava.spring.security.login.models.User;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import java.util.Collection;
-import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 /**
  * Implement UserDetails & UserDetailsService
@@ -33,6 +31,9 @@ import java.util.stream.Collectors;
  *   UserDetails loadUserByUsername(String username) throws UsernameNotFoundException;
  * }
  * So we implement it and override loadUserByUsername() method.
+ *
+ * The roles are also kept as a RoleMask: the authorities of a mask are shared by every principal with the same roles,
+ * and the @PreAuthorize role checks are bit tests on the mask (RoleMaskMethodSecurityExpressionHandler).
  */
 
 public class UserDetailsImpl implements UserDetails {
@@ -43,6 +44,7 @@ public class UserDetailsImpl implements UserDetails {
     @JsonIgnore
     private String password;
     private Collection<? extends GrantedAuthority> authorities;
+    private int roleMask;
 
     public UserDetailsImpl(Long id,
                            String username,
@@ -54,23 +56,39 @@ public class UserDetailsImpl implements UserDetails {
         this.email = email;
         this.password = password;
         this.authorities = authorities;
+        this.roleMask = RoleMask.ofKnown(authorities);
+    }
+
+    //principal with the shared authorities of a RoleMask
+    public UserDetailsImpl(Long id,
+                           String username,
+                           String email,
+                           String password,
+                           int roleMask) {
+        this.id = id;
+        this.username = username;
+        this.email = email;
+        this.password = password;
+        this.authorities = RoleMask.authorities(roleMask);
+        this.roleMask = roleMask;
     }
 
     public static UserDetailsImpl build(User user){
         /**
-         * convert Set<Role> into List<GrantedAuthority>.
+         * convert Set<Role> into a RoleMask, whose List<GrantedAuthority> is shared (nothing allocated per user).
          * It is important to work with Spring Security and Authentication object later.
          */
-        List<GrantedAuthority> authorities =
-                user.getRoles().stream().map(role -> new SimpleGrantedAuthority(role.getName().name()))
-                .collect(Collectors.toList());
+        int roleMask = 0;
+        for (Role role : user.getRoles()){
+            roleMask |= RoleMask.bit(role.getName());
+        }
 
         return new UserDetailsImpl(
                 user.getId(),
                 user.getUsername(),
                 user.getEmail(),
                 user.getPassword(),
-                authorities
+                roleMask
         );
     }
 
@@ -79,6 +97,11 @@ public class UserDetailsImpl implements UserDetails {
         return authorities;
     }
 
+    //getRoleMask: the ERole authorities as a RoleMask
+    public int getRoleMask() {
+        return roleMask;
+    }
+
     public Long getId() {
         return id;
     }
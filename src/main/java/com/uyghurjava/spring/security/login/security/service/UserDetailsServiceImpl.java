@@ -1,28 +1,106 @@
 package com.uyghurjava.spring.security.login.security.service;
 
 import com.uyghurjava.spring.security.login.models.User;
+import com.uyghurjava.spring.security.login.repository.EntityCache;
 import com.uyghurjava.spring.security.login.repository.UserRepository;
+import com.uyghurjava.spring.security.login.security.service.invalidation.InvalidationBus;
+import com.uyghurjava.spring.security.login.security.service.invalidation.InvalidationEvent;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
 
 @Service
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
     @Autowired
     UserRepository userRepository;
 
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    InvalidationBus invalidationBus;
+
+    @Autowired
+    EntityCache entityCache;
+
+    /**
+     * uyghurcoder.app.userCacheMaxSize and uyghurcoder.app.userCacheTtlMs configure the UserDetails cache
+     * (userCacheMaxSize=0 disables the cache).
+     */
+    @Value("${uyghurcoder.app.userCacheMaxSize:10000}")
+    private int userCacheMaxSize;
+
+    @Value("${uyghurcoder.app.userCacheTtlMs:300000}")
+    private long userCacheTtlMs;
+
+    private UserDetailsCache userDetailsCache;
+    private TransactionTemplate transactionTemplate;
+    private TransactionTemplate readOnlyTransactionTemplate;
+
+    @PostConstruct
+    public void init(){
+        userDetailsCache = new UserDetailsCache(userCacheMaxSize, userCacheTtlMs);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTransactionTemplate.setReadOnly(true);
+        //a user saved on another instance: this instance's UserDetails and second-level cache entries are stale
+        invalidationBus.subscribe(InvalidationEvent.Kind.USER, event -> {
+            entityCache.evictUser(event.getSubjectId());
+            userDetailsCache.evict(event.getKey());
+        });
+    }
+
     @Override
-    @Transactional
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findUserByUsername(username)
-                .orElseThrow( () -> new UsernameNotFoundException("User Not Found with username: " + username));
-        return UserDetailsImpl.build(user);
+        return userDetailsCache.get(username, this::loadUserFromDatabase);
     }
     /***
-     * In the code above, we get full custom User object using UserRepository,
+     * In the code above, we get the UserDetails from the cache, concurrent misses for the same username are loaded once.
+     * On a miss we get full custom User object with its roles using UserRepository (one read-only query),
      * then we build a UserDetails object using static build() method -> public static UserDetailsImpl build(User user)
+     * Both run in one read-only transaction: a result served by the query cache comes without the fetch join,
+     * its roles are read from the second-level cache in that session.
+     */
+    private UserDetails loadUserFromDatabase(String username){
+        return readOnlyTransactionTemplate.execute(status -> {
+            User user = userRepository.findWithRolesByUsername(username)
+                    .orElseThrow( () -> new UsernameNotFoundException("User Not Found with username: " + username));
+            return UserDetailsImpl.build(user);
+        });
+    }
+
+    /**
+     * updatePassword: called by BestEffortRehashAuthenticationProvider after a successful login
+     * when the stored hash does not have the calibrated BCrypt strength (PasswordEncoder.upgradeEncoding()).
+     * The new hash is saved, so the stored passwords move to the target strength without a bulk migration.
      */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        UserDetailsImpl updated = transactionTemplate.execute(status -> {
+            User entity = userRepository.findUserByUsername(user.getUsername())
+                    .orElseThrow( () -> new UsernameNotFoundException("User Not Found with username: " + user.getUsername()));
+            entity.setPassword(newPassword);
+            return UserDetailsImpl.build(entity);
+        });
+        evictUser(updated.getId(), updated.getUsername());
+        return updated;
+    }
+
+    //evictUser: must be called whenever a user is saved (signup, roles or password changes), the other instances evict it too
+    public void evictUser(long userId, String username){
+        userDetailsCache.evict(username);
+        invalidationBus.publish(InvalidationEvent.Kind.USER, username, userId, 0);
+    }
+
+    public UserDetailsCache getUserDetailsCache(){
+        return userDetailsCache;
+    }
 }
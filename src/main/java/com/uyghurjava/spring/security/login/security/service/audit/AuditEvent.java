@@ -0,0 +1,144 @@
+package com.uyghurjava.spring.security.login.security.service.audit;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * One audit record: a signin, signup or signout, its outcome, the user and the client IP.
+ *
+ * Records have a fixed layout of RECORD_SIZE bytes in the segment files of the AuditLog:
+ * – 0: timestamp (epoch ms), 8: user id (0 = unknown)
+ * – 16: type (Type ordinal + 1, 0 = no record yet: the end of the segment), 17: outcome (Outcome ordinal)
+ * – 18: username length, 19: client IP length (bytes)
+ * – 24: username (UTF-8, at most USERNAME_BYTES bytes), 80: client IP (at most CLIENT_IP_BYTES bytes)
+ * The type is written last, so a record is visible to the readers only once complete.
+ * New Type and Outcome values go at the end of their enum: the files store the ordinals.
+ */
+public final class AuditEvent {
+
+    public enum Type { SIGNIN, SIGNUP, SIGNOUT }
+
+    public enum Outcome { SUCCESS, BAD_CREDENTIALS, FAILED, REJECTED, THROTTLED, USERNAME_TAKEN, EMAIL_TAKEN, ERROR }
+
+    public static final int RECORD_SIZE = 128;
+
+    private static final int TIMESTAMP = 0;
+    private static final int USER_ID = 8;
+    private static final int TYPE = 16;
+    private static final int OUTCOME = 17;
+    private static final int USERNAME_LENGTH = 18;
+    private static final int CLIENT_IP_LENGTH = 19;
+    private static final int USERNAME = 24;
+    private static final int USERNAME_BYTES = 56;
+    private static final int CLIENT_IP = 80;
+    private static final int CLIENT_IP_BYTES = 48;
+
+    private static final Type[] TYPES = Type.values();
+    private static final Outcome[] OUTCOMES = Outcome.values();
+
+    private final long timestamp;
+    private final Type type;
+    private final Outcome outcome;
+    private final long userId;
+    private final String username;
+    private final String clientIp;
+
+    public AuditEvent(long timestamp, Type type, Outcome outcome, long userId, String username, String clientIp) {
+        this.timestamp = timestamp;
+        this.type = type;
+        this.outcome = outcome;
+        this.userId = userId;
+        this.username = username;
+        this.clientIp = clientIp;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getClientIp() {
+        return clientIp;
+    }
+
+    @Override
+    public String toString() {
+        return Instant.ofEpochMilli(timestamp) + " " + type + " " + outcome + " userId=" + userId
+                + " username=" + username + " ip=" + clientIp;
+    }
+
+    //write: the record at offset (absolute positions, the position of the buffer is not used)
+    static void write(ByteBuffer buffer, int offset, long timestamp, Type type, Outcome outcome,
+                      long userId, String username, String clientIp){
+        buffer.putLong(offset + TIMESTAMP, timestamp);
+        buffer.putLong(offset + USER_ID, userId);
+        buffer.put(offset + OUTCOME, (byte) outcome.ordinal());
+        buffer.put(offset + USERNAME_LENGTH, (byte) putString(buffer, offset + USERNAME, USERNAME_BYTES, username));
+        buffer.put(offset + CLIENT_IP_LENGTH, (byte) putString(buffer, offset + CLIENT_IP, CLIENT_IP_BYTES, clientIp));
+        buffer.put(offset + TYPE, (byte) (type.ordinal() + 1));
+    }
+
+    //isPresent: is there a complete record at offset?
+    static boolean isPresent(ByteBuffer buffer, int offset){
+        return buffer.get(offset + TYPE) != 0;
+    }
+
+    static long timestamp(ByteBuffer buffer, int offset){
+        return buffer.getLong(offset + TIMESTAMP);
+    }
+
+    //read: the record at offset, null if there is none
+    static AuditEvent read(ByteBuffer buffer, int offset){
+        int type = buffer.get(offset + TYPE);
+        if(type <= 0 || type > TYPES.length){
+            return null;
+        }
+        int outcome = buffer.get(offset + OUTCOME);
+        return new AuditEvent(buffer.getLong(offset + TIMESTAMP),
+                TYPES[type - 1],
+                outcome >= 0 && outcome < OUTCOMES.length ? OUTCOMES[outcome] : Outcome.ERROR,
+                buffer.getLong(offset + USER_ID),
+                getString(buffer, offset + USERNAME, buffer.get(offset + USERNAME_LENGTH)),
+                getString(buffer, offset + CLIENT_IP, buffer.get(offset + CLIENT_IP_LENGTH)));
+    }
+
+    //putString: UTF-8 bytes of value, cut to maxBytes on a character boundary; the number of bytes written
+    private static int putString(ByteBuffer buffer, int offset, int maxBytes, String value){
+        if(value == null){
+            return 0;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, maxBytes);
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80){
+            length--;
+        }
+        for (int i = 0; i < length; i++){
+            buffer.put(offset + i, bytes[i]);
+        }
+        return length;
+    }
+
+    private static String getString(ByteBuffer buffer, int offset, int length){
+        byte[] bytes = new byte[length & 0xFF];
+        for (int i = 0; i < bytes.length; i++){
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
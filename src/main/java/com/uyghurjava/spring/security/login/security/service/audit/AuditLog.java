@@ -0,0 +1,318 @@
+package com.uyghurjava.spring.security.login.security.service.audit;
+
+import com.uyghurjava.spring.security.login.security.service.metrics.AuthMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Audit trail of the signins, signups and signouts (AuditEvent), off the request threads.
+ *
+ * – request threads publish into a bounded lock-free ring buffer (one CAS, a few array stores, no allocation, no lock,
+ *   no I/O); when the ring is full the event is dropped and counted, a request never waits for the disk
+ * – a single writer thread ("auth-audit-writer") drains the ring in batches into a memory-mapped segment file,
+ *   forced to disk every uyghurcoder.app.auditForceMs, when the segment is full and on shutdown
+ * – segments are audit-(number).seg files of uyghurcoder.app.auditSegmentBytes in uyghurcoder.app.auditDirectory;
+ *   a full segment is followed by the next one, the oldest are deleted beyond uyghurcoder.app.auditMaxSegments
+ * – a restart appends after the last record of the last segment
+ * – AuditLogReader scans the segments by user and time range (also from the command line)
+ *
+ * An empty uyghurcoder.app.auditDirectory disables the audit log: publishing is then a no-op.
+ * A crash of the process loses nothing written to the mapped segment; a crash of the host loses at most auditForceMs.
+ */
+@Component
+public class AuditLog {
+    private static final Logger logger = LoggerFactory.getLogger(AuditLog.class);
+
+    static final String SEGMENT_PREFIX = "audit-";
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final AuditEvent.Outcome[] SIGNIN_OUTCOMES = outcomes(AuthMetrics.SigninOutcome.values());
+    private static final AuditEvent.Outcome[] SIGNUP_OUTCOMES = outcomes(AuthMetrics.SignupOutcome.values());
+
+    @Value("${uyghurcoder.app.auditDirectory:}")
+    private String directory;
+
+    @Value("${uyghurcoder.app.auditBufferSize:65536}")
+    private int bufferSize;
+
+    @Value("${uyghurcoder.app.auditSegmentBytes:67108864}")
+    private long segmentBytes;
+
+    @Value("${uyghurcoder.app.auditMaxSegments:32}")
+    private int maxSegments;
+
+    @Value("${uyghurcoder.app.auditForceMs:1000}")
+    private long forceMs;
+
+    //ring buffer: slot i holds the event of position p when sequences[i] == p + 1 (bounded MPSC queue)
+    private int mask;
+    private AtomicLongArray sequences;
+    private long[] timestamps;
+    private long[] userIds;
+    private AuditEvent.Type[] types;
+    private AuditEvent.Outcome[] eventOutcomes;
+    private String[] usernames;
+    private String[] clientIps;
+    private final AtomicLong tail = new AtomicLong();
+    //written by the writer thread only, read by stats()
+    private volatile long head;
+
+    private Path segmentDirectory;
+    private int segmentRecords;
+    private long segmentNumber;
+    private MappedByteBuffer segment;
+    private int segmentRecord;
+    private boolean dirty;
+    private Thread writer;
+    private volatile boolean running;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder segments = new LongAdder();
+    private final LongAdder writeFailures = new LongAdder();
+
+    @PostConstruct
+    public void init() throws IOException {
+        if(directory == null || directory.isEmpty()){
+            return;
+        }
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize - 1)) << 1;
+        mask = capacity - 1;
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++){
+            sequences.set(i, i);
+        }
+        timestamps = new long[capacity];
+        userIds = new long[capacity];
+        types = new AuditEvent.Type[capacity];
+        eventOutcomes = new AuditEvent.Outcome[capacity];
+        usernames = new String[capacity];
+        clientIps = new String[capacity];
+
+        segmentDirectory = Paths.get(directory);
+        segmentRecords = (int) Math.max(1, Math.min(Integer.MAX_VALUE / AuditEvent.RECORD_SIZE, segmentBytes / AuditEvent.RECORD_SIZE));
+        Files.createDirectories(segmentDirectory);
+        openLastSegment();
+
+        running = true;
+        writer = new Thread(this::writeLoop, "auth-audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("Audit log in {}, segment {} at record {}", segmentDirectory.toAbsolutePath(), segmentNumber, segmentRecord);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if(writer == null){
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    public boolean isEnabled(){
+        return sequences != null;
+    }
+
+    //getReader: the reader of the segments, null if the audit log is disabled
+    public AuditLogReader getReader(){
+        return isEnabled() ? new AuditLogReader(segmentDirectory) : null;
+    }
+
+    public void signin(AuthMetrics.SigninOutcome outcome, long userId, String username, String clientIp){
+        publish(AuditEvent.Type.SIGNIN, SIGNIN_OUTCOMES[outcome.ordinal()], userId, username, clientIp);
+    }
+
+    public void signup(AuthMetrics.SignupOutcome outcome, long userId, String username, String clientIp){
+        publish(AuditEvent.Type.SIGNUP, SIGNUP_OUTCOMES[outcome.ordinal()], userId, username, clientIp);
+    }
+
+    public void signout(long userId, String username, String clientIp){
+        publish(AuditEvent.Type.SIGNOUT, AuditEvent.Outcome.SUCCESS, userId, username, clientIp);
+    }
+
+    /**
+     * publish: claim the next slot of the ring and fill it; the strings are encoded by the writer thread.
+     * Lock-free: a thread that loses the CAS retries with the new tail; a full ring drops the event.
+     */
+    public void publish(AuditEvent.Type type, AuditEvent.Outcome outcome, long userId, String username, String clientIp){
+        AtomicLongArray sequences = this.sequences;
+        if(sequences == null){
+            return;
+        }
+        long position = tail.get();
+        int index;
+        while (true){
+            index = (int) position & mask;
+            long gap = sequences.get(index) - position;
+            if(gap == 0){
+                if(tail.compareAndSet(position, position + 1)){
+                    break;
+                }
+                position = tail.get();
+            } else if(gap < 0){
+                //the slot still holds the event of the previous lap: full
+                dropped.increment();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+        timestamps[index] = System.currentTimeMillis();
+        userIds[index] = userId;
+        types[index] = type;
+        eventOutcomes[index] = outcome;
+        usernames[index] = username;
+        clientIps[index] = clientIp;
+        sequences.lazySet(index, position + 1);
+        published.increment();
+    }
+
+    public Map<String, Long> stats(){
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("published", published.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("written", written.sum());
+        stats.put("batches", batches.sum());
+        stats.put("segmentsOpened", segments.sum());
+        stats.put("writeFailures", writeFailures.sum());
+        stats.put("pending", isEnabled() ? Math.max(0, tail.get() - head) : 0);
+        return stats;
+    }
+
+    private void writeLoop(){
+        long forcedAt = System.currentTimeMillis();
+        while (running){
+            if(drain() == 0){
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            long now = System.currentTimeMillis();
+            if(dirty && now - forcedAt >= forceMs){
+                force();
+                forcedAt = now;
+            }
+        }
+        drain();
+        force();
+    }
+
+    //drain: write the published events, in order, up to the first slot not filled yet
+    private int drain(){
+        int count = 0;
+        while (true){
+            int index = (int) head & mask;
+            if(sequences.get(index) != head + 1){
+                break;
+            }
+            try {
+                append(index);
+            } catch (IOException | RuntimeException e){
+                writeFailures.increment();
+                logger.error("Cannot append audit event to segment {}: {}", segmentNumber, e.getMessage());
+            }
+            usernames[index] = null;
+            clientIps[index] = null;
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+            count++;
+        }
+        if(count > 0){
+            written.add(count);
+            batches.increment();
+        }
+        return count;
+    }
+
+    private void append(int index) throws IOException {
+        if(segmentRecord == segmentRecords){
+            force();
+            openSegment(segmentNumber + 1);
+        }
+        AuditEvent.write(segment, segmentRecord * AuditEvent.RECORD_SIZE, timestamps[index], types[index], eventOutcomes[index],
+                userIds[index], usernames[index], clientIps[index]);
+        segmentRecord++;
+        dirty = true;
+    }
+
+    private void force(){
+        if(dirty){
+            segment.force();
+            dirty = false;
+        }
+    }
+
+    //openLastSegment: continue after the last record of the newest segment
+    private void openLastSegment() throws IOException {
+        List<Path> existing = AuditLogReader.segments(segmentDirectory);
+        if(existing.isEmpty()){
+            openSegment(1);
+            return;
+        }
+        Path last = existing.get(existing.size() - 1);
+        openSegment(AuditLogReader.segmentNumber(last));
+        //the records are written in order: binary search of the first empty one
+        int low = 0;
+        int high = segmentRecords;
+        while (low < high){
+            int middle = (low + high) >>> 1;
+            if(AuditEvent.isPresent(segment, middle * AuditEvent.RECORD_SIZE)){
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        segmentRecord = low;
+    }
+
+    private void openSegment(long number) throws IOException {
+        Path path = segmentDirectory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            //the mapping stays valid once the channel is closed
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * AuditEvent.RECORD_SIZE);
+        }
+        segmentNumber = number;
+        segmentRecord = 0;
+        segments.increment();
+        deleteOldSegments();
+    }
+
+    private void deleteOldSegments() throws IOException {
+        List<Path> existing = AuditLogReader.segments(segmentDirectory);
+        for (int i = 0; i < existing.size() - Math.max(1, maxSegments); i++){
+            Files.deleteIfExists(existing.get(i));
+        }
+    }
+
+    //outcomes: the audit outcome of each AuthMetrics outcome (same name)
+    private static AuditEvent.Outcome[] outcomes(Enum<?>[] values){
+        AuditEvent.Outcome[] outcomes = new AuditEvent.Outcome[values.length];
+        for (Enum<?> value : values){
+            outcomes[value.ordinal()] = AuditEvent.Outcome.valueOf(value.name());
+        }
+        return outcomes;
+    }
+}
@@ -0,0 +1,145 @@
+package com.uyghurjava.spring.security.login.security.service.audit;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads the segments of an AuditLog directory, oldest first; safe while the AuditLog appends to them.
+ *
+ * Segments starting after the end of the time range, and segments followed by one starting before its beginning,
+ * are not read (the timestamps of concurrent requests may be out of order by up to CLOCK_SKEW_MS).
+ *
+ * Command line, for example with the packaged jar:
+ * java -cp app.jar -Dloader.main=com.uyghurjava.spring.security.login.security.service.audit.AuditLogReader
+ *      org.springframework.boot.loader.PropertiesLauncher (directory) [--user name] [--from instant] [--to instant] [--limit n]
+ * (instants in ISO-8601, 2026-01-31T08:00:00Z), one event per line.
+ */
+public class AuditLogReader {
+
+    private static final long CLOCK_SKEW_MS = 1000;
+
+    private final Path directory;
+
+    public AuditLogReader(Path directory) {
+        this.directory = directory;
+    }
+
+    //find: the events of username (any user if null) in [fromMs, toMs], oldest first, at most limit
+    public List<AuditEvent> find(String username, long fromMs, long toMs, int limit) throws IOException {
+        List<AuditEvent> events = new ArrayList<>();
+        scan(fromMs, toMs, event -> {
+            if(username == null || username.equals(event.getUsername())){
+                events.add(event);
+            }
+            return events.size() < limit;
+        });
+        return events;
+    }
+
+    //scan: the events in [fromMs, toMs], oldest first, until the visitor returns false
+    public void scan(long fromMs, long toMs, Predicate<AuditEvent> visitor) throws IOException {
+        List<Path> paths = segments(directory);
+        for (int i = 0; i < paths.size(); i++){
+            MappedByteBuffer segment = map(paths.get(i));
+            if(segment == null || !AuditEvent.isPresent(segment, 0)){
+                continue;
+            }
+            if(AuditEvent.timestamp(segment, 0) - CLOCK_SKEW_MS > toMs){
+                return;
+            }
+            //every event of this segment is older than the first one of the next segment
+            if(i + 1 < paths.size() && firstTimestamp(paths.get(i + 1)) < fromMs - CLOCK_SKEW_MS){
+                continue;
+            }
+            for (int offset = 0; offset + AuditEvent.RECORD_SIZE <= segment.capacity(); offset += AuditEvent.RECORD_SIZE){
+                AuditEvent event = AuditEvent.read(segment, offset);
+                if(event == null){
+                    break;
+                }
+                if(event.getTimestamp() >= fromMs && event.getTimestamp() <= toMs && !visitor.test(event)){
+                    return;
+                }
+            }
+        }
+    }
+
+    //segments: the segment files of a directory, by number
+    static List<Path> segments(Path directory) throws IOException {
+        if(!Files.isDirectory(directory)){
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.list(directory)){
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(AuditLog.SEGMENT_PREFIX) && name.endsWith(AuditLog.SEGMENT_SUFFIX);
+                    })
+                    .sorted((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static long segmentNumber(Path segment){
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(AuditLog.SEGMENT_PREFIX.length(), name.length() - AuditLog.SEGMENT_SUFFIX.length()));
+    }
+
+    private static long firstTimestamp(Path path) throws IOException {
+        MappedByteBuffer segment = map(path);
+        return segment != null && AuditEvent.isPresent(segment, 0) ? AuditEvent.timestamp(segment, 0) : Long.MAX_VALUE;
+    }
+
+    //map: the segment, read-only; null if it has been deleted meanwhile
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e){
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length == 0){
+            System.err.println("Usage: AuditLogReader <directory> [--user name] [--from instant] [--to instant] [--limit n]");
+            System.exit(2);
+        }
+        String username = null;
+        long fromMs = 0;
+        long toMs = Long.MAX_VALUE;
+        int limit = Integer.MAX_VALUE;
+        for (int i = 1; i + 1 < args.length; i += 2){
+            switch (args[i]){
+                case "--user":
+                    username = args[i + 1];
+                    break;
+                case "--from":
+                    fromMs = Instant.parse(args[i + 1]).toEpochMilli();
+                    break;
+                case "--to":
+                    toMs = Instant.parse(args[i + 1]).toEpochMilli();
+                    break;
+                case "--limit":
+                    limit = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+        for (AuditEvent event : new AuditLogReader(Paths.get(args[0])).find(username, fromMs, toMs, limit)){
+            System.out.println(event);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.uyghurjava.spring.security.login.security.service.invalidation;
+
+import com.uyghurjava.spring.security.login.security.service.metrics.AuthMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Batching and coalescing of the invalidation events, the transport is left to the subclasses.
+ *
+ * – publish() only puts the event in a map keyed by kind and key: publishing the same key again before the flush
+ *   replaces the pending event (a user saved twice is invalidated once), the request thread never waits for the transport
+ * – every uyghurcoder.app.invalidationBatchMs a daemon thread sends the pending events in one batch
+ * – events are received once the context is refreshed: every bean has subscribed its listeners by then,
+ *   so an event replayed at startup cannot miss its listener
+ * – received events of this instance are skipped, the others go to the listeners of their kind,
+ *   and the propagation lag (now - publishedAt) is recorded in auth.invalidation.lag{kind}
+ *   (it includes the clock difference between the instances)
+ */
+public abstract class AbstractInvalidationBus implements InvalidationBus {
+    private static final Logger logger = LoggerFactory.getLogger(AbstractInvalidationBus.class);
+
+    @Value("${uyghurcoder.app.invalidationBatchMs:50}")
+    private long batchMs;
+
+    @Autowired
+    AuthMetrics authMetrics;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ConcurrentHashMap<String, InvalidationEvent> pending = new ConcurrentHashMap<>();
+    private final Map<InvalidationEvent.Kind, List<Consumer<InvalidationEvent>>> listeners = new EnumMap<>(InvalidationEvent.Kind.class);
+    private long startedAt;
+    private final AtomicBoolean receiving = new AtomicBoolean();
+    protected ScheduledExecutorService scheduler;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder received = new LongAdder();
+
+    protected AbstractInvalidationBus() {
+        for (InvalidationEvent.Kind kind : InvalidationEvent.Kind.values()){
+            listeners.put(kind, new CopyOnWriteArrayList<>());
+        }
+    }
+
+    @PostConstruct
+    public void init(){
+        startedAt = System.currentTimeMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "invalidation-bus");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, batchMs, batchMs, TimeUnit.MILLISECONDS);
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void startReceiving(){
+        if(receiving.compareAndSet(false, true)){
+            onStart();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        flush();
+        scheduler.shutdownNow();
+        if(receiving.compareAndSet(true, false)){
+            onStop();
+        }
+    }
+
+    @Override
+    public void publish(InvalidationEvent.Kind kind, String key, long subjectId, long expiresAt){
+        InvalidationEvent event = new InvalidationEvent(nodeId, kind, key, subjectId, expiresAt, System.currentTimeMillis());
+        if(pending.put(kind.name() + ':' + key, event) != null){
+            coalesced.increment();
+        }
+        published.increment();
+    }
+
+    @Override
+    public void subscribe(InvalidationEvent.Kind kind, Consumer<InvalidationEvent> listener){
+        listeners.get(kind).add(listener);
+    }
+
+    @Override
+    public Map<String, Long> stats(){
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("published", published.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("batches", batches.sum());
+        stats.put("sendFailures", sendFailures.sum());
+        stats.put("received", received.sum());
+        stats.put("pending", (long) pending.size());
+        return stats;
+    }
+
+    public String getNodeId(){
+        return nodeId;
+    }
+
+    //onStart: start receiving the events of the other instances
+    protected void onStart(){
+    }
+
+    protected void onStop(){
+    }
+
+    //send: hand a batch of events of this instance to the transport
+    protected abstract void send(List<InvalidationEvent> batch) throws Exception;
+
+    //deliver: events read from the transport, the events of this instance are skipped
+    protected void deliver(List<InvalidationEvent> events){
+        long now = System.currentTimeMillis();
+        for (InvalidationEvent event : events){
+            if(nodeId.equals(event.getNodeId())){
+                continue;
+            }
+            for (Consumer<InvalidationEvent> listener : listeners.get(event.getKind())){
+                try {
+                    listener.accept(event);
+                } catch (RuntimeException e){
+                    logger.error("Invalidation {} {} failed: {}", event.getKind(), event.getKey(), e.getMessage());
+                }
+            }
+            received.increment();
+            //events published before this instance started are a replay, not a propagation
+            if(event.getPublishedAt() >= startedAt){
+                authMetrics.recordInvalidationLag(event.getKind(), Math.max(0, now - event.getPublishedAt()));
+            }
+        }
+    }
+
+    //flush: send the pending events in one batch, they are put back if the transport fails
+    private void flush(){
+        if(pending.isEmpty()){
+            return;
+        }
+        List<InvalidationEvent> batch = new ArrayList<>(pending.size());
+        Iterator<Map.Entry<String, InvalidationEvent>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()){
+            batch.add(iterator.next().getValue());
+            iterator.remove();
+        }
+        try {
+            send(batch);
+            batches.increment();
+        } catch (Exception e){
+            sendFailures.increment();
+            logger.error("Invalidation batch of {} events not sent: {}", batch.size(), e.getMessage());
+            for (InvalidationEvent event : batch){
+                //a newer event of the same key, published meanwhile, wins
+                pending.putIfAbsent(event.getKind().name() + ':' + event.getKey(), event);
+            }
+        }
+    }
+}
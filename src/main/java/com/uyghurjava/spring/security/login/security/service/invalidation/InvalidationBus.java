@@ -0,0 +1,29 @@
+package com.uyghurjava.spring.security.login.security.service.invalidation;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Propagates cache invalidations between the instances of the application.
+ *
+ * The publisher applies a change to its own caches itself, the bus only tells the other instances.
+ * Listeners must be idempotent: an event can be delivered more than once.
+ */
+public interface InvalidationBus {
+
+    /**
+     * publish: tell the other instances, asynchronously (events are batched, the same kind and key are coalesced).
+     * @param expiresAt epoch millis after which the event no longer matters, 0 if it only matters now
+     */
+    default void publish(InvalidationEvent.Kind kind, String key, long expiresAt){
+        publish(kind, key, 0, expiresAt);
+    }
+
+    //publish: also carry the database id of what the key names (InvalidationEvent.getSubjectId()), so listeners need no lookup
+    void publish(InvalidationEvent.Kind kind, String key, long subjectId, long expiresAt);
+
+    //subscribe: apply the events of another instance, called on the thread of the bus
+    void subscribe(InvalidationEvent.Kind kind, Consumer<InvalidationEvent> listener);
+
+    Map<String, Long> stats();
+}
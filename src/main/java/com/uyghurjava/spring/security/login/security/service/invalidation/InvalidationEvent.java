@@ -0,0 +1,56 @@
+package com.uyghurjava.spring.security.login.security.service.invalidation;
+
+/**
+ * A change made on one instance that the per-instance caches of the other instances must apply.
+ *
+ * – USER: the cached UserDetails of the username (key) and the cached entity of the user id (subjectId) are stale
+ * – ROLES: the RoleRegistry must be reloaded (key "*")
+ * – TOKEN_REVOKED: the token id (key) is revoked until expiresAt
+ */
+public final class InvalidationEvent {
+
+    public enum Kind { USER, ROLES, TOKEN_REVOKED }
+
+    private final String nodeId;
+    private final Kind kind;
+    private final String key;
+    private final long subjectId;
+    private final long expiresAt;
+    private final long publishedAt;
+
+    public InvalidationEvent(String nodeId, Kind kind, String key, long subjectId, long expiresAt, long publishedAt) {
+        this.nodeId = nodeId;
+        this.kind = kind;
+        this.key = key;
+        this.subjectId = subjectId;
+        this.expiresAt = expiresAt;
+        this.publishedAt = publishedAt;
+    }
+
+    //getNodeId: the instance that published the event
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    //getSubjectId: the database id of what the key names (the user id of USER events), 0 if none
+    public long getSubjectId() {
+        return subjectId;
+    }
+
+    //getExpiresAt: epoch millis after which the event no longer matters (0: only for a short retention)
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public long getPublishedAt() {
+        return publishedAt;
+    }
+}
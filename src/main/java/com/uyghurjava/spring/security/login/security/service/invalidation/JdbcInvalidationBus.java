@@ -0,0 +1,166 @@
+package com.uyghurjava.spring.security.login.security.service.invalidation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bus over a table of the shared database (uyghurcoder.app.invalidationBus=jdbc): a batch is one JDBC batch insert,
+ * every instance polls the rows after the last one it has read every uyghurcoder.app.invalidationPollMs.
+ *
+ * – ids of concurrent inserts may become visible out of order: the rows read ahead of a missing id are delivered
+ *   (once) and the cursor only moves over contiguous ids, or over a missing id still missing after GAP_TIMEOUT_MS
+ *   (a rolled back insert, or a purged row when replaying the history)
+ * – each poll reads the new rows after the last row read, whatever the cursor, and looks for late rows in the
+ *   missing ranges only (at most MAX_GAP_RANGES of them): the rows read ahead are never read again, so a sparse history
+ *   longer than POLL_LIMIT neither stalls the replay nor holds back the live invalidations
+ * – rows are deleted after uyghurcoder.app.invalidationRetentionMs, revocations only once their token has expired:
+ *   a new instance starts from the oldest row and replays the revocations still in force
+ * – the invalidation_events table comes from the Flyway migration V4; only when Flyway is disabled (spring.flyway.enabled=false)
+ *   is it created here, at startup
+ */
+@Component
+@ConditionalOnProperty(name = "uyghurcoder.app.invalidationBus", havingValue = "jdbc")
+public class JdbcInvalidationBus extends AbstractInvalidationBus {
+    private static final Logger logger = LoggerFactory.getLogger(JdbcInvalidationBus.class);
+
+    private static final int POLL_LIMIT = 500;
+    private static final long GAP_TIMEOUT_MS = 5000;
+    private static final int MAX_GAP_RANGES = 32;
+    private static final String SELECT_EVENTS =
+            "SELECT id, node_id, kind, event_key, subject_id, expires_at, published_at FROM invalidation_events WHERE ";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Value("${uyghurcoder.app.invalidationPollMs:200}")
+    private long pollMs;
+
+    @Value("${uyghurcoder.app.invalidationRetentionMs:60000}")
+    private long retentionMs;
+
+    @Value("${spring.flyway.enabled:true}")
+    private boolean flywayEnabled;
+
+    //cursor: every row up to this id has been read; readAhead: rows read after a missing id (id -> time read)
+    private long cursor;
+    private final TreeMap<Long, Long> readAhead = new TreeMap<>();
+
+    //createTable: without Flyway only, same table as V4__create_invalidation_events.sql
+    @PostConstruct
+    public void createTable(){
+        if(flywayEnabled){
+            return;
+        }
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS invalidation_events (" +
+                "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "node_id VARCHAR(36) NOT NULL, " +
+                "kind VARCHAR(16) NOT NULL, " +
+                "event_key VARCHAR(255) NOT NULL, " +
+                "subject_id BIGINT DEFAULT 0 NOT NULL, " +
+                "expires_at BIGINT NOT NULL, " +
+                "published_at BIGINT NOT NULL)");
+        //tables created before subject_id
+        jdbcTemplate.execute("ALTER TABLE invalidation_events ADD COLUMN IF NOT EXISTS subject_id BIGINT DEFAULT 0 NOT NULL");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_invalidation_events_published ON invalidation_events (published_at)");
+    }
+
+    @Override
+    protected void onStart(){
+        Long oldest = jdbcTemplate.queryForObject("SELECT MIN(id) FROM invalidation_events", Long.class);
+        cursor = oldest == null ? 0 : oldest - 1;
+        scheduler.scheduleWithFixedDelay(this::poll, 0, pollMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::purge, retentionMs, retentionMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void send(List<InvalidationEvent> batch){
+        jdbcTemplate.batchUpdate("INSERT INTO invalidation_events (node_id, kind, event_key, subject_id, expires_at, published_at) VALUES (?, ?, ?, ?, ?, ?)",
+                batch, batch.size(), (ps, event) -> {
+                    ps.setString(1, event.getNodeId());
+                    ps.setString(2, event.getKind().name());
+                    ps.setString(3, event.getKey());
+                    ps.setLong(4, event.getSubjectId());
+                    ps.setLong(5, event.getExpiresAt());
+                    ps.setLong(6, event.getPublishedAt());
+                });
+    }
+
+    //poll: deliver the rows not read yet (late rows in the gaps, then new rows), then move the cursor
+    private void poll(){
+        try {
+            long now = System.currentTimeMillis();
+            List<InvalidationEvent> events = new ArrayList<>();
+            StringBuilder gaps = new StringBuilder();
+            List<Object> gapBounds = new ArrayList<>();
+            long expected = cursor + 1;
+            for (Long id : readAhead.keySet()){
+                if(id > expected){
+                    gaps.append(gaps.length() == 0 ? "(" : " OR ").append("id BETWEEN ? AND ?");
+                    gapBounds.add(expected);
+                    gapBounds.add(id - 1);
+                    if(gapBounds.size() == 2 * MAX_GAP_RANGES){
+                        break;
+                    }
+                }
+                expected = id + 1;
+            }
+            if(gaps.length() > 0){
+                read(SELECT_EVENTS + gaps + ") ORDER BY id", gapBounds.toArray(), now, events);
+            }
+            long lastRead = readAhead.isEmpty() ? cursor : Math.max(cursor, readAhead.lastKey());
+            read(SELECT_EVENTS + "id > ? ORDER BY id LIMIT " + POLL_LIMIT, new Object[]{lastRead}, now, events);
+            if(!events.isEmpty()){
+                deliver(events);
+            }
+            while (!readAhead.isEmpty()){
+                Map.Entry<Long, Long> first = readAhead.firstEntry();
+                if(first.getKey() != cursor + 1 && first.getValue() > now - GAP_TIMEOUT_MS){
+                    break;
+                }
+                cursor = first.getKey();
+                readAhead.pollFirstEntry();
+            }
+        } catch (RuntimeException e){
+            logger.error("Invalidation poll failed: {}", e.getMessage());
+        }
+    }
+
+    //read: the events of the rows not read yet, which are added to readAhead
+    private void read(String sql, Object[] args, long now, List<InvalidationEvent> events){
+        for (Map<String, Object> row : jdbcTemplate.queryForList(sql, args)){
+            long id = ((Number) row.get("id")).longValue();
+            if(readAhead.putIfAbsent(id, now) == null){
+                events.add(new InvalidationEvent((String) row.get("node_id"),
+                        InvalidationEvent.Kind.valueOf((String) row.get("kind")),
+                        (String) row.get("event_key"),
+                        ((Number) row.get("subject_id")).longValue(),
+                        ((Number) row.get("expires_at")).longValue(),
+                        ((Number) row.get("published_at")).longValue()));
+            }
+        }
+    }
+
+    //purge: the rows every instance has had time to read, except the revocations still in force
+    private void purge(){
+        try {
+            long now = System.currentTimeMillis();
+            int deleted = jdbcTemplate.update("DELETE FROM invalidation_events WHERE published_at < ? AND expires_at < ?",
+                    now - retentionMs, now);
+            logger.debug("Purged {} invalidation events", deleted);
+        } catch (RuntimeException e){
+            logger.error("Invalidation purge failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.uyghurjava.spring.security.login.security.service.invalidation;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * In-process bus (uyghurcoder.app.invalidationBus=local, the default): the batches go to the other buses
+ * of the same uyghurcoder.app.invalidationChannel in this JVM.
+ * Without uyghurcoder.app.invalidationChannel, each bus gets a channel of its own: a single instance has no other member
+ * and keeps its caches coherent by itself, and several application contexts in one JVM (tests) stay independent.
+ * Contexts that set the same channel see each other's invalidations.
+ */
+@Component
+@ConditionalOnProperty(name = "uyghurcoder.app.invalidationBus", havingValue = "local", matchIfMissing = true)
+public class LocalInvalidationBus extends AbstractInvalidationBus {
+
+    private static final ConcurrentHashMap<String, Set<LocalInvalidationBus>> CHANNELS = new ConcurrentHashMap<>();
+
+    @Value("${uyghurcoder.app.invalidationChannel:}")
+    private String channel;
+
+    @Override
+    protected void onStart(){
+        if(channel == null || channel.isEmpty()){
+            channel = UUID.randomUUID().toString();
+        }
+        CHANNELS.computeIfAbsent(channel, name -> new CopyOnWriteArraySet<>()).add(this);
+    }
+
+    @Override
+    protected void onStop(){
+        CHANNELS.computeIfPresent(channel, (name, members) -> {
+            members.remove(this);
+            return members.isEmpty() ? null : members;
+        });
+    }
+
+    @Override
+    protected void send(List<InvalidationEvent> batch){
+        for (LocalInvalidationBus member : CHANNELS.getOrDefault(channel, Collections.emptySet())){
+            if(member != this){
+                member.deliver(batch);
+            }
+        }
+    }
+}
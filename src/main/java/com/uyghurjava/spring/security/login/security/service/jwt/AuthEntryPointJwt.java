@@ -1,18 +1,21 @@
 package com.uyghurjava.spring.security.login.security.service.jwt;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -20,22 +23,34 @@ import java.util.Map;
  * Then we override the commence() method.
  * This method will be triggered anytime unauthenticated User requests a secured HTTP resource
  * and an AuthenticationException is thrown.
+ * The 401 body is written by one ObjectWriter, built once from the ObjectMapper of the application.
  */
 
 @Component
 public class AuthEntryPointJwt implements AuthenticationEntryPoint {
     private static final Logger logger = LoggerFactory.getLogger(AuthEntryPointJwt.class);
 
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private ObjectWriter bodyWriter;
+
+    @PostConstruct
+    public void init(){
+        bodyWriter = objectMapper.writerFor(Map.class);
+    }
+
     @Override
     public void commence(HttpServletRequest request,
                          HttpServletResponse response,
                          AuthenticationException authException) throws IOException, ServletException {
-        logger.error("Unauthorized error: {}", authException.getMessage());
+        //debug only: every anonymous request to a secured resource gets here
+        logger.debug("Unauthorized error: {}", authException.getMessage());
 
         response.setContentType(MediaType.APPLICATION_JSON_VALUE);
         response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
 
-        final Map<String, Object> body = new HashMap<>();
+        final Map<String, Object> body = new LinkedHashMap<>();
         //HttpServletResponse.SC_UNAUTHORIZED is the 401 Status code.
         // It indicates that the request requires HTTP authentication.
         body.put("status", HttpServletResponse.SC_UNAUTHORIZED);
@@ -43,8 +58,7 @@ public class AuthEntryPointJwt implements AuthenticationEntryPoint {
         body.put("message", authException.getMessage());
         body.put("path", request.getServletPath());
 
-        final ObjectMapper mapper = new ObjectMapper();
-        mapper.writeValue(response.getOutputStream(), body);
+        bodyWriter.writeValue(response.getOutputStream(), body);
 
     }
 }
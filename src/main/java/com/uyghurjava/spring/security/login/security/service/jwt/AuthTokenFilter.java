@@ -1,6 +1,8 @@
 package com.uyghurjava.spring.security.login.security.service.jwt;
 
 import com.uyghurjava.spring.security.login.security.service.UserDetailsServiceImpl;
+import com.uyghurjava.spring.security.login.security.service.metrics.AuthMetrics;
+import io.jsonwebtoken.Claims;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,14 +30,18 @@ public class AuthTokenFilter extends OncePerRequestFilter {
     private JwtUtils jwtUtils;
     @Autowired
     private UserDetailsServiceImpl userDetailsService;
+    @Autowired
+    private AuthMetrics authMetrics;
 
     private static final Logger logger = LoggerFactory.getLogger(AuthTokenFilter.class);
 
     /**
      * – What we do inside doFilterInternal():
      * – get JWT from the HTTP Cookies
-     * – if the request has JWT, validate it, parse username from it
+     * – if the request has JWT, validate it and parse username from it (jwtUtils.verifyJwtToken() does both in one parse)
+     *   (in opaque session mode, the token is looked up in the SessionStore instead and the principal comes from its Session)
      * – from username, get UserDetails to create an Authentication object
+     *   (in stateless principal mode, UserDetails is rebuilt from the claims of the token instead)
      * – set the current UserDetails in SecurityContext using setAuthentication(authentication) method.
      *
      * After this, everytime you want to get UserDetails, just use SecurityContext like this:
@@ -66,16 +72,26 @@ public class AuthTokenFilter extends OncePerRequestFilter {
     protected void doFilterInternal(HttpServletRequest request,
                                     HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
+        long startedAt = System.nanoTime();
+        AuthMetrics.FilterOutcome outcome = AuthMetrics.FilterOutcome.ANONYMOUS;
         try {
             //get JWT from the HTTP Cookies
             String jwt = parseJwt(request);
-            //if the request has JWT, validate it, parse username from it
-            if(jwt != null && jwtUtils.validateJwtToken(jwt)){
-               //parse username from it
-                String username = jwtUtils.getUserNameFromJwtToken(jwt);
-                //from username, get UserDetails to create an Authentication object
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-
+            UserDetails userDetails = null;
+            if(jwt != null && jwtUtils.isOpaqueSessions()){
+                //opaque session mode: one lookup in the SessionStore gives the principal
+                userDetails = jwtUtils.verifySessionToken(jwt);
+            } else if(jwt != null){
+                //if the request has JWT, validate it and parse its claims in one step (cached per token)
+                Claims claims = jwtUtils.verifyJwtToken(jwt);
+                if(claims != null){
+                    userDetails = loadUserDetails(claims);
+                }
+            }
+            if(jwt != null && userDetails == null){
+                outcome = AuthMetrics.FilterOutcome.INVALID_TOKEN;
+            }
+            if(userDetails != null){
                 UsernamePasswordAuthenticationToken authentication =
                         new UsernamePasswordAuthenticationToken(userDetails,
                                 null,
@@ -84,6 +100,7 @@ public class AuthTokenFilter extends OncePerRequestFilter {
 
                 //set the current UserDetails in SecurityContext using setAuthentication(authentication) method.
                 SecurityContextHolder.getContext().setAuthentication(authentication);
+                outcome = AuthMetrics.FilterOutcome.AUTHENTICATED;
                 /*
                 After this, everytime you want to get UserDetails, just use SecurityContext like this:
                 UserDetails userDetails =
@@ -94,12 +111,33 @@ public class AuthTokenFilter extends OncePerRequestFilter {
                  */
             }
         } catch (Exception e){
-            logger.error("Cannot set user authentication: {}", e);
+            //the message only: invalid tokens never get here (verifyJwtToken returns null), the stack trace is at debug level
+            logger.error("Cannot set user authentication: {}", e.getMessage());
+            logger.debug("Cannot set user authentication", e);
+            outcome = AuthMetrics.FilterOutcome.ERROR;
         }
+        authMetrics.recordFilter(outcome, startedAt);
 
         filterChain.doFilter(request, response);
     }
 
+    //loadUserDetails: the principal of verified claims
+    private UserDetails loadUserDetails(Claims claims){
+        //parse username from it
+        String username = claims.getSubject();
+        long loadStartedAt = System.nanoTime();
+        //stateless principal mode: the token carries id, email and roles, no database access
+        UserDetails userDetails = jwtUtils.isStatelessPrincipal() ? jwtUtils.getUserDetailsFromClaims(claims) : null;
+        //from username, get UserDetails to create an Authentication object
+        if(userDetails == null){
+            userDetails = userDetailsService.loadUserByUsername(username);
+            authMetrics.recordUserLoad(AuthMetrics.Source.SERVICE, loadStartedAt);
+        } else {
+            authMetrics.recordUserLoad(AuthMetrics.Source.CLAIMS, loadStartedAt);
+        }
+        return userDetails;
+    }
+
     //get JWT from the HTTP Cookies
     private String parseJwt(HttpServletRequest request){
         String jwt = jwtUtils.getJwtFromCookies(request);
@@ -0,0 +1,373 @@
+package com.uyghurjava.spring.security.login.security.service.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SignatureException;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Signing keys of the JWTs, built once (not decoded again for every token) and selected by the "kid" header.
+ *
+ * – uyghurcoder.app.jwtAlgorithm: HS512 (default, the key is uyghrucoder.app.jwtSecret), RS256 or ES256
+ * – RS256/ES256: the key pair is read from uyghurcoder.app.jwtPrivateKeyFile/jwtPublicKeyFile (PEM, PKCS#8 and X.509),
+ *   or generated at startup when no file is set; the public keys are published by /.well-known/jwks.json
+ *   so other services can validate the tokens themselves
+ * – uyghurcoder.app.jwtKeyRotationMs: a new key signs the new tokens every jwtKeyRotationMs (0 = no rotation),
+ *   the previous key still verifies the tokens it signed during uyghurcoder.app.jwtKeyOverlapMs
+ *   (0 = uyghurcoder.app.jwtExpirationMs, the lifetime of a token)
+ *
+ * Rotated keys are generated in memory: with HS512 and several instances, use a fixed secret (no rotation),
+ * with RS256/ES256 every instance publishes its own keys.
+ * Tokens without "kid" (issued before the key ring) are verified with the key of uyghrucoder.app.jwtSecret while it is in the ring.
+ */
+@Component
+public class JwtKeyRing extends SigningKeyResolverAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(JwtKeyRing.class);
+
+    @Value("${uyghrucoder.app.jwtSecret}")
+    private String jwtSecret;
+
+    @Value("${uyghurcoder.app.jwtExpirationMs}")
+    private long jwtExpirationMs;
+
+    @Value("${uyghurcoder.app.jwtAlgorithm:HS512}")
+    private String algorithmName;
+
+    @Value("${uyghurcoder.app.jwtPrivateKeyFile:}")
+    private String privateKeyFile;
+
+    @Value("${uyghurcoder.app.jwtPublicKeyFile:}")
+    private String publicKeyFile;
+
+    @Value("${uyghurcoder.app.jwtKeyRotationMs:0}")
+    private long rotationMs;
+
+    @Value("${uyghurcoder.app.jwtKeyOverlapMs:0}")
+    private long overlapMs;
+
+    private SignatureAlgorithm algorithm;
+    private String legacyKid;
+
+    //copy-on-write: read without lock on every request, replaced on rotation
+    private volatile Map<String, JwtSigningKey> keys = Collections.emptyMap();
+    private volatile JwtSigningKey activeKey;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final LongAdder rotations = new LongAdder();
+    private ScheduledExecutorService rotationScheduler;
+
+    @PostConstruct
+    public void init() throws IOException, GeneralSecurityException {
+        algorithm = SignatureAlgorithm.forName(algorithmName.trim().toUpperCase());
+        if(algorithm != SignatureAlgorithm.HS512 && algorithm != SignatureAlgorithm.RS256 && algorithm != SignatureAlgorithm.ES256){
+            throw new IllegalStateException("Unsupported uyghurcoder.app.jwtAlgorithm: " + algorithmName + " (HS512, RS256 or ES256)");
+        }
+        if(overlapMs <= 0){
+            overlapMs = jwtExpirationMs;
+        }
+        //same key bytes as Jwts.parser().setSigningKey(jwtSecret): the tokens already issued stay valid
+        JwtSigningKey secretKey = hmacKey(Base64.getMimeDecoder().decode(jwtSecret));
+        legacyKid = secretKey.getKid();
+
+        JwtSigningKey initialKey;
+        if(algorithm == SignatureAlgorithm.HS512){
+            initialKey = secretKey;
+        } else if(!privateKeyFile.isEmpty()){
+            initialKey = asymmetricKey(new KeyPair(readPublicKey(publicKeyFile), readPrivateKey(privateKeyFile)));
+        } else {
+            initialKey = generateKey();
+            logger.warn("No uyghurcoder.app.jwtPrivateKeyFile: {} key pair generated, tokens do not survive a restart", algorithm);
+        }
+        activate(initialKey);
+
+        if(rotationMs > 0){
+            rotationScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "jwt-key-rotation");
+                thread.setDaemon(true);
+                return thread;
+            });
+            rotationScheduler.scheduleAtFixedRate(() -> {
+                try {
+                    rotate();
+                } catch (GeneralSecurityException | RuntimeException e){
+                    logger.error("JWT key rotation failed: {}", e.getMessage());
+                }
+            }, rotationMs, rotationMs, TimeUnit.MILLISECONDS);
+        }
+        logger.info("JWT key ring: {} key {} (rotation every {} ms, overlap {} ms)",
+                algorithm, initialKey.getKid(), rotationMs, overlapMs);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        if(rotationScheduler != null){
+            rotationScheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * rotate: a new key signs the tokens from now on, the previous keys verify their tokens until the end of the overlap.
+     * @return kid of the new key
+     */
+    public synchronized String rotate() throws GeneralSecurityException {
+        JwtSigningKey newKey = generateKey();
+        activate(newKey);
+        rotations.increment();
+        logger.info("JWT signing key rotated: {}", newKey.getKid());
+        return newKey.getKid();
+    }
+
+    //getActiveKey: the key signing the new tokens
+    public JwtSigningKey getActiveKey(){
+        return activeKey;
+    }
+
+    /**
+     * accepts: whether a token with these "kid" and "alg" headers could be verified by the ring (checked before the signature).
+     * @param kid the "kid" header, null for tokens issued without kid
+     */
+    public boolean accepts(String kid, String alg){
+        JwtSigningKey key = keys.get(kid != null ? kid : legacyKid);
+        return key != null && !key.isRetired(System.currentTimeMillis()) && key.getAlgorithm().getValue().equals(alg);
+    }
+
+    /**
+     * resolveSigningKey: called by the JWT parser, the key of the "kid" header (the secret key for tokens without kid).
+     * The algorithm of the token must be the algorithm of the key: a token cannot choose how it is verified.
+     */
+    @Override
+    public Key resolveSigningKey(JwsHeader header, Claims claims){
+        String kid = header.getKeyId() != null ? header.getKeyId() : legacyKid;
+        JwtSigningKey key = keys.get(kid);
+        if(key == null || key.isRetired(System.currentTimeMillis())){
+            throw new SignatureException("Unknown or retired JWT key: " + kid);
+        }
+        if(!key.getAlgorithm().getValue().equals(header.getAlgorithm())){
+            throw new SignatureException("JWT algorithm " + header.getAlgorithm() + " does not match key " + kid);
+        }
+        return key.getVerificationKey();
+    }
+
+    /**
+     * jwks: public keys as a JSON Web Key Set (RFC 7517), secret keys are never published.
+     */
+    public Map<String, Object> jwks(){
+        List<Map<String, Object>> jwkList = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (JwtSigningKey key : keys.values()){
+            if(key.getVerificationKey() instanceof PublicKey && !key.isRetired(now)){
+                jwkList.add(toJwk(key));
+            }
+        }
+        Map<String, Object> jwks = new LinkedHashMap<>();
+        jwks.put("keys", jwkList);
+        return jwks;
+    }
+
+    public Map<String, Object> stats(){
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("algorithm", algorithm.getValue());
+        stats.put("activeKid", activeKey.getKid());
+        stats.put("keys", keys.size());
+        stats.put("rotations", rotations.sum());
+        stats.put("rotationMs", rotationMs);
+        stats.put("overlapMs", overlapMs);
+        return stats;
+    }
+
+    //activate: new key map with the new active key, the previous active key retires at the end of the overlap
+    private synchronized void activate(JwtSigningKey newKey){
+        long now = System.currentTimeMillis();
+        Map<String, JwtSigningKey> newKeys = new LinkedHashMap<>();
+        for (JwtSigningKey key : keys.values()){
+            if(key.isRetired(now)){
+                continue;
+            }
+            newKeys.put(key.getKid(), key == activeKey ? key.retireAt(now + overlapMs) : key);
+        }
+        newKeys.put(newKey.getKid(), newKey);
+        keys = Collections.unmodifiableMap(newKeys);
+        activeKey = newKey;
+    }
+
+    private JwtSigningKey generateKey() throws GeneralSecurityException {
+        if(algorithm == SignatureAlgorithm.HS512){
+            byte[] secret = new byte[64];
+            secureRandom.nextBytes(secret);
+            return hmacKey(secret);
+        }
+        KeyPairGenerator generator;
+        if(algorithm == SignatureAlgorithm.RS256){
+            generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048, secureRandom);
+        } else {
+            generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"), secureRandom);
+        }
+        return asymmetricKey(generator.generateKeyPair());
+    }
+
+    private JwtSigningKey hmacKey(byte[] secret){
+        SecretKeySpec key = new SecretKeySpec(secret, SignatureAlgorithm.HS512.getJcaName());
+        return new JwtSigningKey(kid(secret), SignatureAlgorithm.HS512, key, key, Long.MAX_VALUE);
+    }
+
+    private JwtSigningKey asymmetricKey(KeyPair keyPair){
+        return new JwtSigningKey(kid(keyPair.getPublic().getEncoded()), algorithm,
+                keyPair.getPrivate(), keyPair.getPublic(), Long.MAX_VALUE);
+    }
+
+    //kid: derived from the key, so that every instance using the same key gives it the same kid
+    private static String kid(byte[] keyBytes){
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(keyBytes);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 9));
+        } catch (GeneralSecurityException e){
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private PrivateKey readPrivateKey(String file) throws IOException, GeneralSecurityException {
+        return KeyFactory.getInstance(keyFactoryAlgorithm()).generatePrivate(new PKCS8EncodedKeySpec(readPem(file)));
+    }
+
+    private PublicKey readPublicKey(String file) throws IOException, GeneralSecurityException {
+        if(file.isEmpty()){
+            throw new IllegalStateException("uyghurcoder.app.jwtPublicKeyFile is required with uyghurcoder.app.jwtPrivateKeyFile");
+        }
+        return KeyFactory.getInstance(keyFactoryAlgorithm()).generatePublic(new X509EncodedKeySpec(readPem(file)));
+    }
+
+    private String keyFactoryAlgorithm(){
+        return algorithm == SignatureAlgorithm.RS256 ? "RSA" : "EC";
+    }
+
+    //readPem: DER bytes of a PEM file ("-----BEGIN ...-----" lines are skipped)
+    private static byte[] readPem(String file) throws IOException {
+        StringBuilder base64 = new StringBuilder();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.US_ASCII)){
+            if(!line.startsWith("-----")){
+                base64.append(line.trim());
+            }
+        }
+        return Base64.getDecoder().decode(base64.toString());
+    }
+
+    private static Map<String, Object> toJwk(JwtSigningKey key){
+        Map<String, Object> jwk = new LinkedHashMap<>();
+        PublicKey publicKey = (PublicKey) key.getVerificationKey();
+        if(publicKey instanceof RSAPublicKey){
+            RSAPublicKey rsaKey = (RSAPublicKey) publicKey;
+            jwk.put("kty", "RSA");
+            jwk.put("n", base64Url(rsaKey.getModulus(), 0));
+            jwk.put("e", base64Url(rsaKey.getPublicExponent(), 0));
+        } else {
+            ECPublicKey ecKey = (ECPublicKey) publicKey;
+            jwk.put("kty", "EC");
+            jwk.put("crv", "P-256");
+            jwk.put("x", base64Url(ecKey.getW().getAffineX(), 32));
+            jwk.put("y", base64Url(ecKey.getW().getAffineY(), 32));
+        }
+        jwk.put("use", "sig");
+        jwk.put("alg", key.getAlgorithm().getValue());
+        jwk.put("kid", key.getKid());
+        return jwk;
+    }
+
+    //base64Url: unsigned big-endian bytes of the value, left-padded to length bytes (0 = minimal length)
+    private static String base64Url(BigInteger value, int length){
+        byte[] bytes = value.toByteArray();
+        if(bytes.length > 1 && bytes[0] == 0){
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        if(bytes.length < length){
+            byte[] padded = new byte[length];
+            System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+            bytes = padded;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * A key of the ring: the signing key (secret or private key) and the verification key (secret or public key).
+     */
+    public static final class JwtSigningKey {
+        private final String kid;
+        private final SignatureAlgorithm algorithm;
+        private final Key signingKey;
+        private final Key verificationKey;
+        private final long retiresAt;
+
+        private JwtSigningKey(String kid, SignatureAlgorithm algorithm, Key signingKey, Key verificationKey, long retiresAt) {
+            this.kid = kid;
+            this.algorithm = algorithm;
+            this.signingKey = signingKey;
+            this.verificationKey = verificationKey;
+            this.retiresAt = retiresAt;
+        }
+
+        public String getKid() {
+            return kid;
+        }
+
+        public SignatureAlgorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        public Key getSigningKey() {
+            return signingKey;
+        }
+
+        public Key getVerificationKey() {
+            return verificationKey;
+        }
+
+        public boolean isRetired(long now){
+            return retiresAt <= now;
+        }
+
+        private JwtSigningKey retireAt(long time){
+            return new JwtSigningKey(kid, algorithm, signingKey, verificationKey, Math.min(retiresAt, time));
+        }
+    }
+}
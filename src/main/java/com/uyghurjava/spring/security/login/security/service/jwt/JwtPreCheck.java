@@ -0,0 +1,87 @@
+package com.uyghurjava.spring.security.login.security.service.jwt;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.uyghurjava.spring.security.login.security.service.metrics.AuthMetrics.InvalidReason;
+
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * Structural checks of a JWT before its signature is verified, to reject garbage tokens cheaply:
+ *
+ * – three non-empty base64url segments (header.payload.signature)
+ * – a JSON header whose "alg" and "kid" name a key of the JwtKeyRing (the signature could not be verified otherwise)
+ * – an "exp" claim in the future, when the payload has one
+ *
+ * The header and the payload are only scanned with a streaming parser, nothing is trusted here:
+ * a token passing these checks is still parsed and verified by jjwt.
+ */
+final class JwtPreCheck {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final Base64.Decoder BASE64_URL = Base64.getUrlDecoder();
+
+    private JwtPreCheck() {
+    }
+
+    /**
+     * check: reason to reject the token without verifying its signature, or null if it must be verified.
+     * @param token a non-empty token of at most the maximum length
+     * @param keyRing the keys the signature can be verified with
+     * @param now epoch millis
+     */
+    static InvalidReason check(String token, JwtKeyRing keyRing, long now){
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = headerEnd < 0 ? -1 : token.indexOf('.', headerEnd + 1);
+        if(headerEnd <= 0 || payloadEnd <= headerEnd + 1 || token.indexOf('.', payloadEnd + 1) >= 0){
+            return InvalidReason.MALFORMED;
+        }
+        if(payloadEnd == token.length() - 1){
+            //unsigned token (alg "none"): never accepted
+            return InvalidReason.UNSUPPORTED;
+        }
+        try {
+            String alg = null;
+            String kid = null;
+            try (JsonParser parser = JSON.createParser(BASE64_URL.decode(token.substring(0, headerEnd)))) {
+                if(parser.nextToken() != JsonToken.START_OBJECT){
+                    return InvalidReason.MALFORMED;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME){
+                    String name = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if("alg".equals(name) && value == JsonToken.VALUE_STRING){
+                        alg = parser.getText();
+                    } else if("kid".equals(name) && value == JsonToken.VALUE_STRING){
+                        kid = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            if(alg == null || !keyRing.accepts(kid, alg)){
+                return InvalidReason.SIGNATURE;
+            }
+            try (JsonParser parser = JSON.createParser(BASE64_URL.decode(token.substring(headerEnd + 1, payloadEnd)))) {
+                if(parser.nextToken() != JsonToken.START_OBJECT){
+                    return InvalidReason.MALFORMED;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME){
+                    String name = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if("exp".equals(name) && value.isNumeric()){
+                        //same rule as jjwt (no clock skew): expired once now is after exp
+                        return parser.getLongValue() * 1000 < now ? InvalidReason.EXPIRED : null;
+                    }
+                    parser.skipChildren();
+                }
+            }
+            return null;
+        } catch (IOException | IllegalArgumentException e){
+            //not base64url or not JSON
+            return InvalidReason.MALFORMED;
+        }
+    }
+}
@@ -1,27 +1,42 @@
 package com.uyghurjava.spring.security.login.security.service.jwt;
 
+import com.uyghurjava.spring.security.login.security.service.RoleMask;
 import com.uyghurjava.spring.security.login.security.service.UserDetailsImpl;
+import com.uyghurjava.spring.security.login.security.service.metrics.AuthMetrics;
+import com.uyghurjava.spring.security.login.security.service.session.SessionStore;
 import io.jsonwebtoken.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseCookie;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Component;
 import org.springframework.web.util.WebUtils;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 /**
  * Create JWT Utility class
  * This class has 3 main functions:
  *
  * getJwtFromCookies: get JWT from Cookies by Cookie name
- * generateJwtCookie: generate a Cookie containing JWT from username, date, expiration, secret
+ * generateJwtCookie: generate a Cookie containing JWT from username, date, expiration, signing key
  * getCleanJwtCookie: return Cookie with null value (used for clean Cookie)
+ * generateRefreshJwtCookie, getJwtRefreshFromCookies, getCleanJwtRefreshCookie: the same for the refresh token Cookie
  * getUserNameFromJwtToken: get username from JWT
- * validateJwtToken: validate a JWT with a secret
+ * validateJwtToken: validate a JWT with the key of its "kid"
+ * verifyJwtToken: validate a JWT and return its claims, parsing and checking the signature only once per token
+ * getUserDetailsFromClaims: rebuild the principal (id, username, email, roles) from the claims, without database access
+ * revokeJwtToken: reject a token until it expires (used by /api/auth/signout)
+ * verifySessionToken: the principal of an opaque session token (uyghurcoder.app.tokenMode=session)
  */
 
 @Component
@@ -30,16 +45,93 @@ public class JwtUtils {
     /**
      * Remember that we’ve added uyghurcoder.app.jwtSecret,
      * uyghurcoder.app.jwtExpirationMs and uyghurcoder.app.jwtCookieName properties in application.properties file.
+     * The signing keys (built from uyghurcoder.app.jwtSecret, or RS256/ES256 key pairs) are held by the JwtKeyRing.
      */
-    @Value("${uyghrucoder.app.jwtSecret}")
-    private String jwtSecret;
-
     @Value("${uyghurcoder.app.jwtExpirationMs}")
     private int jwtExpirationMs;
 
     @Value("${uyghurcoder.app.jwtCookieName}")
     private String jwtCookie;
 
+    /**
+     * uyghurcoder.app.jwtRefreshCookieName: Cookie of the refresh token, only sent to /api/auth (refreshtoken and signout).
+     */
+    @Value("${uyghurcoder.app.jwtRefreshCookieName:uyghurCoder-jwt-refresh}")
+    private String jwtRefreshCookie;
+
+    @Value("${uyghurcoder.app.jwtRefreshExpirationMs:86400000}")
+    private long jwtRefreshExpirationMs;
+
+    /**
+     * uyghurcoder.app.jwtCacheMaxSize bounds the number of verified tokens kept in memory (0 disables the cache).
+     * A client replaying the same cookie pays for the parse and the signature check only once.
+     */
+    @Value("${uyghurcoder.app.jwtCacheMaxSize:10000}")
+    private int jwtCacheMaxSize;
+
+    /**
+     * uyghurcoder.app.jwtStatelessPrincipal=true writes the user id, email and role names into the JWT,
+     * so AuthTokenFilter builds the Authentication from the claims and does not load the User from the database.
+     * With false (default) the User is loaded by UserDetailsService on every request.
+     * Note: roles carried by a token are the roles at sign-in time, until the token expires.
+     */
+    @Value("${uyghurcoder.app.jwtStatelessPrincipal:false}")
+    private boolean statelessPrincipal;
+
+    /**
+     * uyghurcoder.app.tokenMode: jwt (default) puts a signed JWT in the Cookie,
+     * session puts a 22-character opaque token mapped to a Session of the SessionStore (one lookup per request, instant signout).
+     */
+    @Value("${uyghurcoder.app.tokenMode:jwt}")
+    private String tokenMode;
+
+    /**
+     * uyghurcoder.app.jwtMaxLength: longer tokens are rejected before being hashed or parsed.
+     * uyghurcoder.app.jwtRejectedCacheMaxSize / jwtRejectedCacheTtlMs: digests of the recently rejected tokens,
+     * a client replaying a bad cookie is answered from this cache (0 disables it).
+     */
+    @Value("${uyghurcoder.app.jwtMaxLength:4096}")
+    private int jwtMaxLength;
+
+    @Value("${uyghurcoder.app.jwtRejectedCacheMaxSize:10000}")
+    private int jwtRejectedCacheMaxSize;
+
+    @Value("${uyghurcoder.app.jwtRejectedCacheTtlMs:60000}")
+    private long jwtRejectedCacheTtlMs;
+
+    private static final String CLAIM_ID = "id";
+    private static final String CLAIM_EMAIL = "email";
+    private static final String CLAIM_ROLES = "roles";
+
+    @Autowired
+    TokenRevocationStore revocationStore;
+
+    @Autowired
+    JwtKeyRing jwtKeyRing;
+
+    @Autowired
+    AuthMetrics authMetrics;
+
+    @Autowired
+    SessionStore sessionStore;
+
+    private TokenDigestCache<Claims> verifiedTokens;
+    private TokenDigestCache<AuthMetrics.InvalidReason> rejectedTokens;
+    //built once: the verification key is selected by the "kid" header of each token
+    private JwtParser jwtParser;
+    private boolean opaqueSessions;
+
+    @PostConstruct
+    public void init(){
+        if(!"jwt".equals(tokenMode) && !"session".equals(tokenMode)){
+            throw new IllegalStateException("Unsupported uyghurcoder.app.tokenMode: " + tokenMode + " (jwt or session)");
+        }
+        opaqueSessions = "session".equals(tokenMode);
+        verifiedTokens = new TokenDigestCache<>(jwtCacheMaxSize);
+        rejectedTokens = new TokenDigestCache<>(jwtRejectedCacheMaxSize);
+        jwtParser = Jwts.parser().setSigningKeyResolver(jwtKeyRing);
+    }
+
     //getJwtFromCookies: get JWT from Cookies by Cookie name
     public String getJwtFromCookies(HttpServletRequest request){
         Cookie cookie = WebUtils.getCookie(request, jwtCookie);
@@ -49,9 +141,15 @@ public class JwtUtils {
             return null;
         }
     }
-    //generateJwtCookie: generate a Cookie containing JWT from username, date, expiration, secret
+    //generateJwtCookie: generate a Cookie containing JWT from username, date, expiration, signing key (or an opaque session token)
     public ResponseCookie generateJwtCookie(UserDetailsImpl userPrincipal){
-        String jwt = generateTokenFromUsername(userPrincipal.getUsername());
+        String jwt;
+        if(opaqueSessions){
+            jwt = sessionStore.create(userPrincipal);
+        } else {
+            jwt = statelessPrincipal ? generateTokenFromUserDetails(userPrincipal)
+                    : generateTokenFromUsername(userPrincipal.getUsername());
+        }
         ResponseCookie cookie = ResponseCookie.from(jwtCookie, jwt)
                 .path("/api").maxAge( 24 * 60 * 60 ).httpOnly(true).build();
 
@@ -62,36 +160,222 @@ public class JwtUtils {
         ResponseCookie cookie = ResponseCookie.from(jwtCookie, null).path("/api").build();
         return cookie;
     }
+    //generateRefreshJwtCookie: generate the Cookie of a refresh token
+    public ResponseCookie generateRefreshJwtCookie(String refreshToken){
+        return ResponseCookie.from(jwtRefreshCookie, refreshToken)
+                .path("/api/auth").maxAge(jwtRefreshExpirationMs / 1000).httpOnly(true).build();
+    }
+    //getJwtRefreshFromCookies: get the refresh token from Cookies
+    public String getJwtRefreshFromCookies(HttpServletRequest request){
+        Cookie cookie = WebUtils.getCookie(request, jwtRefreshCookie);
+        return cookie != null ? cookie.getValue() : null;
+    }
+    //getCleanJwtRefreshCookie: return the refresh Cookie with null value (used for clean Cookie)
+    public ResponseCookie getCleanJwtRefreshCookie(){
+        return ResponseCookie.from(jwtRefreshCookie, null).path("/api/auth").build();
+    }
     //getUserNameFromJwtToken: get username from JWT
     public String getUserNameFromJwtToken(String token){
-        return Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(token).getBody().getSubject();
+        Claims claims = verifyJwtToken(token);
+        return claims != null ? claims.getSubject() : null;
     }
-    //validateJwtToken: validate a JWT with a secret
+    //validateJwtToken: validate a JWT with the key of its "kid"
     public boolean validateJwtToken(String authToken){
+        return verifyJwtToken(authToken) != null;
+    }
+
+    /**
+     * verifyJwtToken: validate a JWT with the key of its "kid" and return its claims, or null if the token is not valid.
+     * The claims of a valid token are cached by token digest until the token expires,
+     * so the same token is parsed and its signature checked only once.
+     * A revoked token is invalid, whether its claims come from the cache or not.
+     * An unknown token goes through cheap checks first (JwtPreCheck: size, segments, header, expiration),
+     * and a rejected token is remembered for a while: a flood of bad cookies costs neither a parse nor a signature check.
+     * @param authToken
+     * @return the claims of the token, null if the token is invalid or revoked
+     */
+    public Claims verifyJwtToken(String authToken){
+        if(authToken == null || authToken.isEmpty()){
+            logger.debug("JWT claims string is empty");
+            authMetrics.recordInvalidToken(AuthMetrics.InvalidReason.EMPTY);
+            return null;
+        }
+        if(authToken.length() > jwtMaxLength){
+            logger.debug("Invalide JWT token: {} characters", authToken.length());
+            authMetrics.recordInvalidToken(AuthMetrics.InvalidReason.MALFORMED);
+            return null;
+        }
+        long startedAt = System.nanoTime();
+        String digest = TokenDigestCache.digest(authToken);
+        Claims claims = verifiedTokens.get(digest);
+        if(claims != null){
+            authMetrics.recordTokenVerify(AuthMetrics.Source.CACHE, startedAt);
+            return isRevoked(claims, digest) ? null : claims;
+        }
+        AuthMetrics.InvalidReason rejected = rejectedTokens.get(digest);
+        if(rejected != null){
+            authMetrics.recordInvalidToken(rejected);
+            return null;
+        }
+        rejected = JwtPreCheck.check(authToken, jwtKeyRing, System.currentTimeMillis());
+        if(rejected != null){
+            reject(digest, rejected, "pre-check");
+            return null;
+        }
         try{
-            Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(authToken);
+            claims = jwtParser.parseClaimsJws(authToken).getBody();
+            authMetrics.recordTokenVerify(AuthMetrics.Source.PARSE, startedAt);
+            if(isRevoked(claims, digest)){
+                //a revocation lasts until the token expires: its replays are rejected without parsing too
+                rejectedTokens.put(digest, AuthMetrics.InvalidReason.REVOKED, System.currentTimeMillis() + jwtRejectedCacheTtlMs);
+                return null;
+            }
+            if(claims.getExpiration() != null){
+                verifiedTokens.put(digest, claims, claims.getExpiration().getTime());
+            }
+            return claims;
+        } catch (JwtException | IllegalArgumentException e){
+            reject(digest, invalidReason(e), e.getMessage());
+        }
+        return null;
+    }
+
+    //reject: count a rejected token and remember its digest, a replay of the token is rejected without parsing
+    private void reject(String digest, AuthMetrics.InvalidReason reason, String detail){
+        //debug only: rejected tokens are counted by auth.jwt.invalid, a flood of bad cookies must not flood the log
+        logger.debug("Invalide JWT {}: {}", reason, detail);
+        authMetrics.recordInvalidToken(reason);
+        rejectedTokens.put(digest, reason, System.currentTimeMillis() + jwtRejectedCacheTtlMs);
+    }
+
+    private static AuthMetrics.InvalidReason invalidReason(RuntimeException e){
+        if(e instanceof SignatureException){
+            return AuthMetrics.InvalidReason.SIGNATURE;
+        } else if(e instanceof ExpiredJwtException){
+            return AuthMetrics.InvalidReason.EXPIRED;
+        } else if(e instanceof UnsupportedJwtException){
+            return AuthMetrics.InvalidReason.UNSUPPORTED;
+        } else if(e instanceof IllegalArgumentException){
+            return AuthMetrics.InvalidReason.ILLEGAL_ARGUMENT;
+        }
+        return AuthMetrics.InvalidReason.MALFORMED;
+    }
+
+    /**
+     * revokeJwtToken: the token is rejected by verifyJwtToken until its expiration, even if a copy of it is replayed.
+     * @param authToken
+     * @return false if the token is already invalid (nothing to revoke)
+     */
+    public boolean revokeJwtToken(String authToken){
+        if(opaqueSessions){
+            return sessionStore.revoke(authToken);
+        }
+        Claims claims = verifyJwtToken(authToken);
+        if(claims == null || claims.getExpiration() == null){
+            return false;
+        }
+        String digest = TokenDigestCache.digest(authToken);
+        revocationStore.revoke(revocationId(claims, digest), claims.getExpiration().getTime());
+        verifiedTokens.invalidate(digest);
+        return true;
+    }
+
+    //revocationId: the "jti" of the token, the token digest for tokens issued without jti
+    private static String revocationId(Claims claims, String digest){
+        return claims.getId() != null ? claims.getId() : digest;
+    }
+
+    private boolean isRevoked(Claims claims, String digest){
+        if(revocationStore.isRevoked(revocationId(claims, digest))){
+            logger.debug("Invalide JWT revoked: {}", claims.getSubject());
+            authMetrics.recordInvalidToken(AuthMetrics.InvalidReason.REVOKED);
             return true;
-        } catch (SignatureException e){
-            logger.error("Invalide JWT signature: {}", e.getMessage());
-        } catch (MalformedJwtException e){
-            logger.error("Invalide JWT token: {}", e.getMessage());
-        }catch (ExpiredJwtException e){
-            logger.error("Invalide JWT expired: {}", e.getMessage());
-        }catch (UnsupportedJwtException e){
-            logger.error("Invalide JWT unsupported: {}", e.getMessage());
-        } catch (IllegalArgumentException e){
-            logger.error("JWT claims string is empty: {}", e.getMessage());
         }
         return false;
     }
 
-    // generate a JWT from username, date, expiration, secret
+    public boolean isStatelessPrincipal(){
+        return statelessPrincipal;
+    }
+
+    public boolean isOpaqueSessions(){
+        return opaqueSessions;
+    }
+
+    /**
+     * verifySessionToken: the principal of an opaque session token, built from its Session without database access.
+     * @param token the Cookie value
+     * @return the principal (without email and password), null if the token is unknown, expired or revoked
+     */
+    public UserDetailsImpl verifySessionToken(String token){
+        long startedAt = System.nanoTime();
+        SessionStore.Session session = sessionStore.get(token);
+        if(session == null){
+            logger.debug("Invalide session token");
+            authMetrics.recordInvalidToken(AuthMetrics.InvalidReason.UNKNOWN_SESSION);
+            return null;
+        }
+        authMetrics.recordTokenVerify(AuthMetrics.Source.SESSION, startedAt);
+        return new UserDetailsImpl(session.getUserId(), session.getUsername(), null, null, session.getRoleMask());
+    }
+
+    /**
+     * getUserDetailsFromClaims: rebuild the principal from a token generated by generateTokenFromUserDetails().
+     * @param claims verified claims
+     * @return the principal (without password), or null if the token does not carry the user id and roles
+     */
+    public UserDetailsImpl getUserDetailsFromClaims(Claims claims){
+        Number id = claims.get(CLAIM_ID, Number.class);
+        Collection<?> roles = claims.get(CLAIM_ROLES, Collection.class);
+        if(id == null || roles == null){
+            return null;
+        }
+        return new UserDetailsImpl(id.longValue(),
+                claims.getSubject(),
+                claims.get(CLAIM_EMAIL, String.class),
+                null,
+                RoleMask.ofNames(roles));
+    }
+
+    //getVerifiedTokenCache: hit/miss/eviction counters of the verified-token cache
+    public TokenDigestCache<Claims> getVerifiedTokenCache(){
+        return verifiedTokens;
+    }
+
+    //getRejectedTokenCache: hit/miss/eviction counters of the rejected-token cache
+    public TokenDigestCache<AuthMetrics.InvalidReason> getRejectedTokenCache(){
+        return rejectedTokens;
+    }
+
+    // generate a JWT from id (jti), username, date, expiration, signing key
     public String generateTokenFromUsername(String username){
-        return Jwts.builder()
+        return sign(Jwts.builder()
+                .setId(UUID.randomUUID().toString())
                 .setSubject(username)
                 .setIssuedAt(new Date())
-                .setExpiration(new Date((new Date()).getTime()+jwtExpirationMs))
-                .signWith(SignatureAlgorithm.HS512, jwtSecret)
+                .setExpiration(new Date((new Date()).getTime()+jwtExpirationMs)));
+    }
+
+    // generate a JWT from username, date, expiration, signing key, carrying also the user id, email and role names
+    public String generateTokenFromUserDetails(UserDetailsImpl userPrincipal){
+        List<String> roles = userPrincipal.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.toList());
+        return sign(Jwts.builder()
+                .setId(UUID.randomUUID().toString())
+                .setSubject(userPrincipal.getUsername())
+                .claim(CLAIM_ID, userPrincipal.getId())
+                .claim(CLAIM_EMAIL, userPrincipal.getEmail())
+                .claim(CLAIM_ROLES, roles)
+                .setIssuedAt(new Date())
+                .setExpiration(new Date((new Date()).getTime()+jwtExpirationMs)));
+    }
+
+    //sign: sign with the active key of the ring, its "kid" tells the verifier which key to use
+    private String sign(JwtBuilder builder){
+        JwtKeyRing.JwtSigningKey key = jwtKeyRing.getActiveKey();
+        return builder.setHeaderParam(JwsHeader.KEY_ID, key.getKid())
+                .signWith(key.getAlgorithm(), key.getSigningKey())
                 .compact();
     }
 
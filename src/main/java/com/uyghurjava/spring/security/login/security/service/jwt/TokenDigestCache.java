@@ -0,0 +1,152 @@
+package com.uyghurjava.spring.security.login.security.service.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded cache keyed by the SHA-256 digest of a token.
+ *
+ * Every entry carries its own expiry (for a verified JWT this is the "exp" claim),
+ * so an entry is dropped as soon as the token it describes is no longer valid.
+ * When the cache is full, expired entries are purged first and then arbitrary entries are evicted
+ * until there is room again: the cache only saves work, it never decides whether a token is valid.
+ *
+ * Hits, misses and evictions are counted so the cache can be checked under real load.
+ * @param <V> the value cached for a token (for example the parsed Claims)
+ */
+public class TokenDigestCache<V> {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private final ConcurrentHashMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public TokenDigestCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    //digest: SHA-256 of the token, so the cache never keeps the token itself
+    public static String digest(String token){
+        MessageDigest messageDigest = SHA_256.get();
+        messageDigest.reset();
+        byte[] hash = messageDigest.digest(token.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getEncoder().withoutPadding().encodeToString(hash);
+    }
+
+    //get: return the cached value, or null if there is none or it has expired
+    public V get(String digest){
+        if(maxSize <= 0){
+            misses.increment();
+            return null;
+        }
+        Entry<V> entry = entries.get(digest);
+        if(entry == null){
+            misses.increment();
+            return null;
+        }
+        if(entry.expiresAt <= System.currentTimeMillis()){
+            if(entries.remove(digest, entry)){
+                evictions.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    //put: cache a value until expiresAt (epoch millis)
+    public void put(String digest, V value, long expiresAt){
+        if(maxSize <= 0 || expiresAt <= System.currentTimeMillis()){
+            return;
+        }
+        if(entries.size() >= maxSize){
+            makeRoom();
+        }
+        entries.put(digest, new Entry<>(value, expiresAt));
+    }
+
+    public void invalidate(String digest){
+        entries.remove(digest);
+    }
+
+    public void clear(){
+        entries.clear();
+    }
+
+    public int size(){
+        return entries.size();
+    }
+
+    public long getHits(){
+        return hits.sum();
+    }
+
+    public long getMisses(){
+        return misses.sum();
+    }
+
+    public long getEvictions(){
+        return evictions.sum();
+    }
+
+    public Map<String, Long> stats(){
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("size", (long) size());
+        stats.put("maxSize", (long) maxSize);
+        stats.put("hits", getHits());
+        stats.put("misses", getMisses());
+        stats.put("evictions", getEvictions());
+        return stats;
+    }
+
+    /**
+     * Purge expired entries; if that is not enough, evict an eighth of the cache
+     * so that a full cache does not pay for a sweep on every put.
+     */
+    private void makeRoom(){
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()){
+            if(iterator.next().getValue().expiresAt <= now){
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+        int toEvict = entries.size() - maxSize + Math.max(1, maxSize / 8);
+        iterator = entries.entrySet().iterator();
+        while (toEvict > 0 && iterator.hasNext()){
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+            toEvict--;
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
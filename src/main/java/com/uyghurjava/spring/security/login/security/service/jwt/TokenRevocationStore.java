@@ -0,0 +1,282 @@
+package com.uyghurjava.spring.security.login.security.service.jwt;
+
+import com.uyghurjava.spring.security.login.security.service.invalidation.InvalidationBus;
+import com.uyghurjava.spring.security.login.security.service.invalidation.InvalidationEvent;
+import com.uyghurjava.spring.security.login.util.BloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Revoked tokens (by "jti"), so that /api/auth/signout really invalidates a JWT before its expiration.
+ *
+ * – a Bloom filter in front answers "not revoked" for almost every token without touching the exact set
+ * – the exact set (jti -> expiration) confirms the Bloom filter hits
+ * – a hashed timing wheel (one slot per second) removes each revocation when its token expires,
+ *   so memory only holds the revocations of tokens that are still valid
+ * – the Bloom filter cannot forget: it is rebuilt from the exact set once enough revocations have expired
+ *
+ * isRevoked() takes no lock. revoke() is rare (signout) and is serialized with the rebuild of the Bloom filter.
+ *
+ * uyghurcoder.app.revocationFile: optional append-only file, so revocations survive a restart
+ * (the live revocations are reloaded and the file compacted at startup).
+ * Revocations are published on the InvalidationBus: a token signed out on one instance is rejected by the others.
+ */
+@Component
+public class TokenRevocationStore {
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationStore.class);
+
+    private static final long TICK_MS = 1000;
+    private static final int WHEEL_SIZE = 512;
+    private static final double BLOOM_FPP = 0.01;
+
+    @Value("${uyghurcoder.app.revocationExpectedSize:10000}")
+    private int expectedSize;
+
+    @Value("${uyghurcoder.app.revocationFile:}")
+    private String revocationFile;
+
+    @Autowired
+    InvalidationBus invalidationBus;
+
+    private final ConcurrentHashMap<String, Long> revoked = new ConcurrentHashMap<>();
+    private volatile BloomFilter bloomFilter;
+    private int expiredSinceRebuild;
+
+    private final AtomicReferenceArray<ConcurrentLinkedQueue<Revocation>> wheel = new AtomicReferenceArray<>(WHEEL_SIZE);
+    private long tick;
+    private ScheduledExecutorService ticker;
+    private BufferedWriter fileWriter;
+
+    private final LongAdder revocations = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder bloomRebuilds = new LongAdder();
+    private final LongAdder bloomFalsePositives = new LongAdder();
+
+    @PostConstruct
+    public void init() throws IOException {
+        for (int i = 0; i < WHEEL_SIZE; i++){
+            wheel.set(i, new ConcurrentLinkedQueue<>());
+        }
+        bloomFilter = BloomFilter.create(expectedSize, BLOOM_FPP);
+        tick = System.currentTimeMillis() / TICK_MS;
+        if(revocationFile != null && !revocationFile.isEmpty()){
+            loadFile(Paths.get(revocationFile));
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-revocation-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::advance, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        invalidationBus.subscribe(InvalidationEvent.Kind.TOKEN_REVOKED, event -> revokeLocally(event.getKey(), event.getExpiresAt()));
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() throws IOException {
+        ticker.shutdownNow();
+        if(fileWriter != null){
+            fileWriter.close();
+            fileWriter = null;
+        }
+    }
+
+    /**
+     * isRevoked: O(1), lock-free check of a token id.
+     */
+    public boolean isRevoked(String jti){
+        if(jti == null || !bloomFilter.mightContain(jti)){
+            return false;
+        }
+        if(revoked.containsKey(jti)){
+            return true;
+        }
+        bloomFalsePositives.increment();
+        return false;
+    }
+
+    /**
+     * revoke: the token id is rejected until expiresAt (epoch millis), the expiration of the token.
+     */
+    public void revoke(String jti, long expiresAt){
+        if(revokeLocally(jti, expiresAt)){
+            invalidationBus.publish(InvalidationEvent.Kind.TOKEN_REVOKED, jti, expiresAt);
+        }
+    }
+
+    //revokeLocally: revocation on this instance only (signout here, or received from another instance)
+    private synchronized boolean revokeLocally(String jti, long expiresAt){
+        if(jti == null || expiresAt <= System.currentTimeMillis()){
+            return false;
+        }
+        if(revoked.put(jti, expiresAt) != null){
+            return false;
+        }
+        bloomFilter.put(jti);
+        schedule(new Revocation(jti, expiresAt));
+        revocations.increment();
+        append(jti, expiresAt);
+        return true;
+    }
+
+    public int size(){
+        return revoked.size();
+    }
+
+    public long getRevocations(){
+        return revocations.sum();
+    }
+
+    public long getBloomFalsePositives(){
+        return bloomFalsePositives.sum();
+    }
+
+    public Map<String, Long> stats(){
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("live", (long) size());
+        stats.put("revocations", getRevocations());
+        stats.put("expirations", expirations.sum());
+        stats.put("bloomRebuilds", bloomRebuilds.sum());
+        stats.put("bloomFalsePositives", getBloomFalsePositives());
+        stats.put("bloomBits", bloomFilter.getBitCount());
+        return stats;
+    }
+
+    private void schedule(Revocation revocation){
+        long slot = Math.max(revocation.expiresAt / TICK_MS, tick + 1);
+        wheel.get((int) (slot % WHEEL_SIZE)).add(revocation);
+    }
+
+    //advance: one tick of the timing wheel, drop the revocations of the tokens that have expired
+    private void advance(){
+        try {
+            long now = System.currentTimeMillis();
+            long target = now / TICK_MS;
+            int expired = 0;
+            while (tick < target){
+                tick++;
+                ConcurrentLinkedQueue<Revocation> slot = wheel.get((int) (tick % WHEEL_SIZE));
+                int pending = slot.size();
+                for (int i = 0; i < pending; i++){
+                    Revocation revocation = slot.poll();
+                    if(revocation == null){
+                        break;
+                    }
+                    if(revocation.expiresAt <= now){
+                        if(revoked.remove(revocation.jti, revocation.expiresAt)){
+                            expired++;
+                        }
+                    } else {
+                        //expires in a later round of the wheel
+                        slot.add(revocation);
+                    }
+                }
+            }
+            if(expired > 0){
+                expirations.add(expired);
+                onExpired(expired);
+            }
+        } catch (RuntimeException e){
+            logger.error("Token revocation wheel failed: {}", e.getMessage());
+        }
+    }
+
+    //onExpired: rebuild the Bloom filter once the expired revocations outnumber the live ones
+    private synchronized void onExpired(int expired){
+        expiredSinceRebuild += expired;
+        if(expiredSinceRebuild < Math.max(64, revoked.size())){
+            return;
+        }
+        BloomFilter rebuilt = BloomFilter.create(Math.max(expectedSize, revoked.size() * 2L), BLOOM_FPP);
+        for (String jti : revoked.keySet()){
+            rebuilt.put(jti);
+        }
+        bloomFilter = rebuilt;
+        expiredSinceRebuild = 0;
+        bloomRebuilds.increment();
+    }
+
+    private void append(String jti, long expiresAt){
+        if(fileWriter == null){
+            return;
+        }
+        try {
+            fileWriter.write(jti + ' ' + expiresAt);
+            fileWriter.newLine();
+            fileWriter.flush();
+        } catch (IOException e){
+            logger.error("Cannot append revocation to {}: {}", revocationFile, e.getMessage());
+        }
+    }
+
+    //loadFile: reload the live revocations, then compact the file to these revocations only
+    private void loadFile(Path path) throws IOException {
+        long now = System.currentTimeMillis();
+        if(Files.exists(path)){
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)){
+                String line;
+                while ((line = reader.readLine()) != null){
+                    int separator = line.indexOf(' ');
+                    if(separator <= 0){
+                        continue;
+                    }
+                    try {
+                        long expiresAt = Long.parseLong(line.substring(separator + 1).trim());
+                        String jti = line.substring(0, separator);
+                        if(expiresAt > now && revoked.put(jti, expiresAt) == null){
+                            bloomFilter.put(jti);
+                            schedule(new Revocation(jti, expiresAt));
+                        }
+                    } catch (NumberFormatException e){
+                        logger.warn("Skipping corrupted revocation line in {}", path);
+                    }
+                }
+            }
+        } else if(path.getParent() != null){
+            Files.createDirectories(path.getParent());
+        }
+        Path compacted = Paths.get(path + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)){
+            for (Map.Entry<String, Long> entry : revoked.entrySet()){
+                writer.write(entry.getKey() + ' ' + entry.getValue());
+                writer.newLine();
+            }
+        }
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        fileWriter = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        logger.info("Loaded {} live token revocations from {}", revoked.size(), path);
+    }
+
+    private static final class Revocation {
+        private final String jti;
+        private final long expiresAt;
+
+        private Revocation(String jti, long expiresAt) {
+            this.jti = jti;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.uyghurjava.spring.security.login.security.service.metrics;
+
+import com.uyghurjava.spring.security.login.security.service.TokenRefreshException;
+import com.uyghurjava.spring.security.login.security.service.invalidation.InvalidationEvent;
+import com.uyghurjava.spring.security.login.security.service.password.PasswordHashingRejectedException;
+import com.uyghurjava.spring.security.login.security.service.throttle.LoginThrottledException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers and counters of the authentication pipeline (Micrometer, exposed by Actuator on /actuator/metrics and /actuator/prometheus).
+ *
+ * Every tag value comes from one of the enums below, so the number of time series is fixed (no username, path or token in a tag):
+ * – auth.filter{outcome}: AuthTokenFilter, whole filter
+ * – auth.filter.stage{stage, source}: token_verify (source cache|parse|session: signature checked, verified-token cache hit
+ *   or opaque session lookup),
+ *   user_load (source claims|service)
+ * – auth.jwt.invalid{reason}: rejected tokens by cause
+ * – auth.signin{outcome}, auth.signup{outcome}, auth.refresh{outcome}: AuthController calls
+ * – auth.password.hash{operation}, auth.password.wait{operation}: BCrypt time and queue time on the PasswordHashingExecutor
+ * – auth.throttle{key, decision}: sign-in throttling decisions, by username and by client IP
+ * – auth.invalidation.lag{kind}: from the publication of an invalidation on one instance to its delivery on another
+ *
+ * The meters are registered once at startup: recording on the request path is one lookup in an EnumMap.
+ * Percentile histograms are switched on by management.metrics.distribution.percentiles-histogram.auth in application.properties.
+ */
+@Component
+public class AuthMetrics {
+
+    public enum FilterOutcome { AUTHENTICATED, ANONYMOUS, INVALID_TOKEN, ERROR }
+
+    public enum Stage { TOKEN_VERIFY, USER_LOAD }
+
+    public enum Source { CACHE, PARSE, SESSION, CLAIMS, SERVICE }
+
+    public enum InvalidReason { EMPTY, SIGNATURE, MALFORMED, EXPIRED, UNSUPPORTED, ILLEGAL_ARGUMENT, REVOKED, UNKNOWN_SESSION }
+
+    public enum SigninOutcome { SUCCESS, BAD_CREDENTIALS, FAILED, REJECTED, THROTTLED, ERROR }
+
+    public enum SignupOutcome { SUCCESS, USERNAME_TAKEN, EMAIL_TAKEN, REJECTED, ERROR }
+
+    public enum RefreshOutcome { SUCCESS, EMPTY, REFUSED, ERROR }
+
+    public enum PasswordOperation { ENCODE, MATCHES }
+
+    public enum ThrottleKey { USERNAME, IP }
+
+    public enum ThrottleDecision { ALLOWED, RATE_LIMITED, BACKOFF }
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private Map<FilterOutcome, Timer> filterTimers;
+    private Map<Source, Timer> tokenVerifyTimers;
+    private Map<Source, Timer> userLoadTimers;
+    private Map<InvalidReason, Counter> invalidTokenCounters;
+    private Map<SigninOutcome, Timer> signinTimers;
+    private Map<SignupOutcome, Timer> signupTimers;
+    private Map<RefreshOutcome, Timer> refreshTimers;
+    private Map<PasswordOperation, Timer> passwordHashTimers;
+    private Map<PasswordOperation, Timer> passwordWaitTimers;
+    private Map<ThrottleKey, Map<ThrottleDecision, Counter>> throttleCounters;
+    private Map<InvalidationEvent.Kind, Timer> invalidationLagTimers;
+
+    @PostConstruct
+    public void init(){
+        filterTimers = timers(FilterOutcome.class, "auth.filter", "outcome", "AuthTokenFilter, from the Cookie to the SecurityContext");
+        tokenVerifyTimers = new EnumMap<>(Source.class);
+        userLoadTimers = new EnumMap<>(Source.class);
+        for (Source source : new Source[]{Source.CACHE, Source.PARSE, Source.SESSION}){
+            tokenVerifyTimers.put(source, stageTimer(Stage.TOKEN_VERIFY, source));
+        }
+        for (Source source : new Source[]{Source.CLAIMS, Source.SERVICE}){
+            userLoadTimers.put(source, stageTimer(Stage.USER_LOAD, source));
+        }
+        invalidTokenCounters = new EnumMap<>(InvalidReason.class);
+        for (InvalidReason reason : InvalidReason.values()){
+            invalidTokenCounters.put(reason, Counter.builder("auth.jwt.invalid")
+                    .description("Rejected JWTs")
+                    .tag("reason", tagValue(reason))
+                    .register(meterRegistry));
+        }
+        signinTimers = timers(SigninOutcome.class, "auth.signin", "outcome", "/api/auth/signin");
+        signupTimers = timers(SignupOutcome.class, "auth.signup", "outcome", "/api/auth/signup");
+        refreshTimers = timers(RefreshOutcome.class, "auth.refresh", "outcome", "/api/auth/refreshtoken");
+        passwordHashTimers = timers(PasswordOperation.class, "auth.password.hash", "operation", "BCrypt hashing time");
+        passwordWaitTimers = timers(PasswordOperation.class, "auth.password.wait", "operation", "Time in the password hashing queue");
+        throttleCounters = new EnumMap<>(ThrottleKey.class);
+        for (ThrottleKey key : ThrottleKey.values()){
+            Map<ThrottleDecision, Counter> counters = new EnumMap<>(ThrottleDecision.class);
+            for (ThrottleDecision decision : ThrottleDecision.values()){
+                counters.put(decision, Counter.builder("auth.throttle")
+                        .description("Sign-in throttling decisions")
+                        .tag("key", tagValue(key))
+                        .tag("decision", tagValue(decision))
+                        .register(meterRegistry));
+            }
+            throttleCounters.put(key, counters);
+        }
+        invalidationLagTimers = timers(InvalidationEvent.Kind.class, "auth.invalidation.lag", "kind", "Propagation of cache and revocation invalidations between instances");
+    }
+
+    public void recordFilter(FilterOutcome outcome, long startedAt){
+        filterTimers.get(outcome).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordTokenVerify(Source source, long startedAt){
+        tokenVerifyTimers.get(source).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordUserLoad(Source source, long startedAt){
+        userLoadTimers.get(source).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordInvalidToken(InvalidReason reason){
+        invalidTokenCounters.get(reason).increment();
+    }
+
+    public void recordSignin(SigninOutcome outcome, long startedAt){
+        signinTimers.get(outcome).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+
+    //signinOutcome: outcome from the exception thrown by the authentication, if any
+    public static SigninOutcome signinOutcome(Throwable failure){
+        if(failure == null){
+            return SigninOutcome.SUCCESS;
+        } else if(failure instanceof BadCredentialsException){
+            return SigninOutcome.BAD_CREDENTIALS;
+        } else if(failure instanceof PasswordHashingRejectedException){
+            return SigninOutcome.REJECTED;
+        } else if(failure instanceof LoginThrottledException){
+            return SigninOutcome.THROTTLED;
+        } else if(failure instanceof AuthenticationException){
+            return SigninOutcome.FAILED;
+        }
+        return SigninOutcome.ERROR;
+    }
+
+    public void recordSignup(SignupOutcome outcome, long startedAt){
+        signupTimers.get(outcome).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+
+    //signupOutcome: outcome of a signup that threw
+    public static SignupOutcome signupOutcome(Throwable failure){
+        return failure instanceof PasswordHashingRejectedException ? SignupOutcome.REJECTED : SignupOutcome.ERROR;
+    }
+
+    public void recordRefresh(RefreshOutcome outcome, long startedAt){
+        refreshTimers.get(outcome).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+
+    //refreshOutcome: outcome of a refresh that threw
+    public static RefreshOutcome refreshOutcome(Throwable failure){
+        return failure instanceof TokenRefreshException ? RefreshOutcome.REFUSED : RefreshOutcome.ERROR;
+    }
+
+    public void recordPasswordHash(PasswordOperation operation, long waitNanos, long hashNanos){
+        passwordWaitTimers.get(operation).record(waitNanos, TimeUnit.NANOSECONDS);
+        passwordHashTimers.get(operation).record(hashNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordThrottle(ThrottleKey key, ThrottleDecision decision){
+        throttleCounters.get(key).get(decision).increment();
+    }
+
+    public void recordInvalidationLag(InvalidationEvent.Kind kind, long lagMs){
+        invalidationLagTimers.get(kind).record(lagMs, TimeUnit.MILLISECONDS);
+    }
+
+    private Timer stageTimer(Stage stage, Source source){
+        return Timer.builder("auth.filter.stage")
+                .description("Stages of AuthTokenFilter")
+                .tag("stage", tagValue(stage))
+                .tag("source", tagValue(source))
+                .register(meterRegistry);
+    }
+
+    private <E extends Enum<E>> Map<E, Timer> timers(Class<E> tagValues, String name, String tagKey, String description){
+        Map<E, Timer> timers = new EnumMap<>(tagValues);
+        for (E value : tagValues.getEnumConstants()){
+            timers.put(value, Timer.builder(name)
+                    .description(description)
+                    .tag(tagKey, tagValue(value))
+                    .register(meterRegistry));
+        }
+        return timers;
+    }
+
+    private static String tagValue(Enum<?> value){
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
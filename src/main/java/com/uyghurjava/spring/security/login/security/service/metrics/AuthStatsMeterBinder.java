@@ -0,0 +1,97 @@
+package com.uyghurjava.spring.security.login.security.service.metrics;
+
+import com.uyghurjava.spring.security.login.security.service.UserDetailsCache;
+import com.uyghurjava.spring.security.login.security.service.UserDetailsServiceImpl;
+import com.uyghurjava.spring.security.login.security.service.jwt.JwtUtils;
+import com.uyghurjava.spring.security.login.security.service.jwt.TokenDigestCache;
+import com.uyghurjava.spring.security.login.security.service.jwt.TokenRevocationStore;
+import com.uyghurjava.spring.security.login.security.service.password.PasswordHashingExecutor;
+import com.uyghurjava.spring.security.login.security.service.session.SessionStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the counters already kept by the caches and pools of the authentication path (the same numbers as /api/admin/stats)
+ * as Micrometer gauges and function counters: they are read when the metrics are scraped, not on every request.
+ *
+ * Bound once the application has started (not as a MeterBinder bean): these components are themselves built with the MeterRegistry.
+ */
+@Component
+public class AuthStatsMeterBinder {
+
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    JwtUtils jwtUtils;
+    @Autowired
+    UserDetailsServiceImpl userDetailsService;
+    @Autowired
+    PasswordHashingExecutor passwordHashingExecutor;
+    @Autowired
+    TokenRevocationStore tokenRevocationStore;
+    @Autowired
+    SessionStore sessionStore;
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void bind(){
+        bindTo(meterRegistry);
+    }
+
+    public void bindTo(MeterRegistry registry) {
+        bindTokenCache(registry, jwtUtils.getVerifiedTokenCache(), "verified_token");
+        bindTokenCache(registry, jwtUtils.getRejectedTokenCache(), "rejected_token");
+
+        UserDetailsCache userDetails = userDetailsService.getUserDetailsCache();
+        Gauge.builder("auth.cache.size", userDetails, UserDetailsCache::size)
+                .tag("cache", "user_details").register(registry);
+        FunctionCounter.builder("auth.cache.requests", userDetails, UserDetailsCache::getHits)
+                .tag("cache", "user_details").tag("result", "hit").register(registry);
+        FunctionCounter.builder("auth.cache.requests", userDetails, UserDetailsCache::getMisses)
+                .tag("cache", "user_details").tag("result", "miss").register(registry);
+        FunctionCounter.builder("auth.cache.requests", userDetails, UserDetailsCache::getCoalesced)
+                .tag("cache", "user_details").tag("result", "coalesced").register(registry);
+        FunctionCounter.builder("auth.cache.evictions", userDetails, UserDetailsCache::getEvictions)
+                .tag("cache", "user_details").register(registry);
+
+        Gauge.builder("auth.password.queue.depth", passwordHashingExecutor, PasswordHashingExecutor::getQueueDepth)
+                .register(registry);
+        Gauge.builder("auth.password.active", passwordHashingExecutor, PasswordHashingExecutor::getActiveCount)
+                .register(registry);
+        FunctionCounter.builder("auth.password.rejected", passwordHashingExecutor, PasswordHashingExecutor::getRejected)
+                .register(registry);
+
+        Gauge.builder("auth.revocations.live", tokenRevocationStore, TokenRevocationStore::size)
+                .register(registry);
+        FunctionCounter.builder("auth.revocations", tokenRevocationStore, TokenRevocationStore::getRevocations)
+                .register(registry);
+        FunctionCounter.builder("auth.revocations.bloom.false_positives", tokenRevocationStore, TokenRevocationStore::getBloomFalsePositives)
+                .register(registry);
+
+        Gauge.builder("auth.sessions.live", sessionStore, SessionStore::size)
+                .register(registry);
+        FunctionCounter.builder("auth.sessions.created", sessionStore, SessionStore::getCreated)
+                .register(registry);
+        FunctionCounter.builder("auth.sessions.removed", sessionStore, SessionStore::getRevoked)
+                .tag("cause", "revoked").register(registry);
+        FunctionCounter.builder("auth.sessions.removed", sessionStore, SessionStore::getExpired)
+                .tag("cause", "expired").register(registry);
+        FunctionCounter.builder("auth.sessions.removed", sessionStore, SessionStore::getEvicted)
+                .tag("cause", "evicted").register(registry);
+    }
+
+    private static void bindTokenCache(MeterRegistry registry, TokenDigestCache<?> cache, String name){
+        Gauge.builder("auth.cache.size", cache, TokenDigestCache::size)
+                .tag("cache", name).register(registry);
+        FunctionCounter.builder("auth.cache.requests", cache, TokenDigestCache::getHits)
+                .tag("cache", name).tag("result", "hit").register(registry);
+        FunctionCounter.builder("auth.cache.requests", cache, TokenDigestCache::getMisses)
+                .tag("cache", name).tag("result", "miss").register(registry);
+        FunctionCounter.builder("auth.cache.evictions", cache, TokenDigestCache::getEvictions)
+                .tag("cache", name).register(registry);
+    }
+}
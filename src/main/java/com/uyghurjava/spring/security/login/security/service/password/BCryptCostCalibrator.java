@@ -0,0 +1,108 @@
+package com.uyghurjava.spring.security.login.security.service.password;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the BCrypt cost (strength) at startup.
+ *
+ * new BCryptPasswordEncoder() always uses strength 10, whatever the hardware.
+ * The calibration hashes a sample password with increasing strengths and keeps the highest one
+ * that fits uyghurcoder.app.bcryptLatencyBudgetMs per hash (never below uyghurcoder.app.bcryptMinStrength).
+ * Each extra strength doubles the time, so the next strength is not tried once it would exceed the budget.
+ *
+ * uyghurcoder.app.bcryptStrength > 0 skips the calibration and uses this strength:
+ * set it when several instances share the users, so that they all hash with the same strength.
+ */
+@Component
+public class BCryptCostCalibrator {
+    private static final Logger logger = LoggerFactory.getLogger(BCryptCostCalibrator.class);
+
+    private static final int MAX_STRENGTH = 31;
+
+    @Value("${uyghurcoder.app.bcryptStrength:0}")
+    private int configuredStrength;
+
+    @Value("${uyghurcoder.app.bcryptLatencyBudgetMs:250}")
+    private long latencyBudgetMs;
+
+    @Value("${uyghurcoder.app.bcryptMinStrength:10}")
+    private int minStrength;
+
+    private int strength;
+    private Map<Integer, Double> measuredMs = Collections.emptyMap();
+
+    @PostConstruct
+    public void calibrate(){
+        if(configuredStrength > 0){
+            strength = configuredStrength;
+            logger.info("BCrypt strength {} (configured)", strength);
+            return;
+        }
+        Map<Integer, Double> measured = new LinkedHashMap<>();
+        //warm up the BCrypt code before measuring
+        BCrypt.hashpw("calibration", BCrypt.gensalt(4));
+
+        int chosen = minStrength;
+        for (int candidate = minStrength; candidate <= MAX_STRENGTH; candidate++){
+            double elapsedMs = measure(candidate);
+            measured.put(candidate, elapsedMs);
+            if(elapsedMs > latencyBudgetMs){
+                break;
+            }
+            chosen = candidate;
+            //the next strength takes twice as long
+            if(elapsedMs * 2 > latencyBudgetMs){
+                break;
+            }
+        }
+        strength = chosen;
+        measuredMs = Collections.unmodifiableMap(measured);
+        logger.info("BCrypt strength {} calibrated for a budget of {} ms per hash (measured: {})",
+                strength, latencyBudgetMs, measuredMs);
+    }
+
+    //strengthOf: the cost of a BCrypt hash ($2a$10$...), -1 if it is not a BCrypt hash
+    public static int strengthOf(String encodedPassword){
+        if(encodedPassword == null || encodedPassword.length() < 7 || encodedPassword.charAt(0) != '$'
+                || encodedPassword.charAt(3) != '$' || encodedPassword.charAt(6) != '$'){
+            return -1;
+        }
+        char tens = encodedPassword.charAt(4);
+        char units = encodedPassword.charAt(5);
+        if(!Character.isDigit(tens) || !Character.isDigit(units)){
+            return -1;
+        }
+        return (tens - '0') * 10 + (units - '0');
+    }
+
+    public int getStrength(){
+        return strength;
+    }
+
+    public Map<String, Object> stats(){
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("strength", strength);
+        stats.put("calibrated", configuredStrength <= 0);
+        stats.put("latencyBudgetMs", latencyBudgetMs);
+        stats.put("minStrength", minStrength);
+        stats.put("measuredMs", measuredMs);
+        return stats;
+    }
+
+    private static double measure(int candidate){
+        String salt = BCrypt.gensalt(candidate);
+        long start = System.nanoTime();
+        BCrypt.hashpw("calibration", salt);
+        return (System.nanoTime() - start) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,39 @@
+package com.uyghurjava.spring.security.login.security.service.password;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+
+/**
+ * DaoAuthenticationProvider whose re-encoding of the stored hash on login (PasswordEncoder.upgradeEncoding()) is best-effort.
+ *
+ * The password has already matched when the new hash is computed: if the PasswordHashingExecutor queue filled up in between,
+ * the rehash is skipped (the hash is upgraded at a later login) instead of failing a correct signin with a 503.
+ * The UserDetailsPasswordService is kept here, not in DaoAuthenticationProvider, so the rehash only runs through this class.
+ */
+public class BestEffortRehashAuthenticationProvider extends DaoAuthenticationProvider {
+    private static final Logger logger = LoggerFactory.getLogger(BestEffortRehashAuthenticationProvider.class);
+
+    private UserDetailsPasswordService userDetailsPasswordService;
+
+    @Override
+    public void setUserDetailsPasswordService(UserDetailsPasswordService userDetailsPasswordService) {
+        this.userDetailsPasswordService = userDetailsPasswordService;
+    }
+
+    @Override
+    protected Authentication createSuccessAuthentication(Object principal, Authentication authentication, UserDetails user) {
+        if(userDetailsPasswordService != null && getPasswordEncoder().upgradeEncoding(user.getPassword())){
+            try {
+                String newPassword = getPasswordEncoder().encode(authentication.getCredentials().toString());
+                user = userDetailsPasswordService.updatePassword(user, newPassword);
+            } catch (PasswordHashingRejectedException e){
+                logger.debug("Password rehash of {} skipped, the hashing queue is full", user.getUsername());
+            }
+        }
+        return super.createSuccessAuthentication(user, authentication, user);
+    }
+}
@@ -0,0 +1,34 @@
+package com.uyghurjava.spring.security.login.security.service.password;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * BCryptPasswordEncoder with the calibrated strength.
+ *
+ * A stored hash is re-encoded on the next successful login (BestEffortRehashAuthenticationProvider)
+ * – when its strength is below the target
+ * – or at least DOWNGRADE_MARGIN above it (the hardware got slower, or the budget was lowered)
+ * One strength above the target is kept: instances calibrating one apart do not rehash the same users back and forth
+ * (multi-instance deployments should still pin uyghurcoder.app.bcryptStrength).
+ */
+public class CalibratedBCryptPasswordEncoder extends BCryptPasswordEncoder {
+
+    static final int DOWNGRADE_MARGIN = 2;
+
+    private final int strength;
+
+    public CalibratedBCryptPasswordEncoder(int strength) {
+        super(strength);
+        this.strength = strength;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        int current = BCryptCostCalibrator.strengthOf(encodedPassword);
+        return current > 0 && (current < strength || current >= strength + DOWNGRADE_MARGIN);
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+}
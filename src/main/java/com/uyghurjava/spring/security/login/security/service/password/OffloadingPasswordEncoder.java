@@ -0,0 +1,38 @@
+package com.uyghurjava.spring.security.login.security.service.password;
+
+import com.uyghurjava.spring.security.login.security.service.metrics.AuthMetrics;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * PasswordEncoder that runs encode() and matches() of its delegate (BCrypt) on the PasswordHashingExecutor,
+ * so DaoAuthenticationProvider (signin) and AuthController.registerUser (signup) never hash on a Tomcat thread.
+ */
+public class OffloadingPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final PasswordHashingExecutor executor;
+
+    public OffloadingPasswordEncoder(PasswordEncoder delegate, PasswordHashingExecutor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return executor.execute(AuthMetrics.PasswordOperation.ENCODE, () -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return executor.execute(AuthMetrics.PasswordOperation.MATCHES, () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Re-encoding on login costs one more hash: it is deferred while hashing requests are queued.
+     * The queue can still fill up before the re-encode: BestEffortRehashAuthenticationProvider then skips it.
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return executor.getQueueDepth() == 0 && delegate.upgradeEncoding(encodedPassword);
+    }
+}
@@ -0,0 +1,174 @@
+package com.uyghurjava.spring.security.login.security.service.password;
+
+import com.uyghurjava.spring.security.login.security.service.metrics.AuthMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dedicated worker pool for BCrypt hashing and matching.
+ *
+ * BCrypt is deliberately slow, so a burst of /api/auth/signin or /api/auth/signup calls could take every Tomcat thread.
+ * The hashing runs here instead, on a fixed number of threads with a bounded queue:
+ * when the queue is full the call fails at once with PasswordHashingRejectedException (503 with Retry-After).
+ * The request thread still waits for its hash, so at most threads + queue Tomcat threads are held by credential traffic:
+ * the queue is kept to a small multiple of the pool, and startup fails if threads + queue exceeds half of
+ * server.tomcat.threads.max, so the other API calls always keep the rest of the Tomcat threads.
+ *
+ * uyghurcoder.app.passwordHashingThreads (0 = number of processors)
+ * uyghurcoder.app.passwordHashingQueueCapacity (0 = QUEUE_PER_THREAD per thread)
+ * uyghurcoder.app.passwordHashingRetryAfterSeconds
+ */
+@Component
+public class PasswordHashingExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHashingExecutor.class);
+
+    static final int QUEUE_PER_THREAD = 2;
+
+    @Value("${uyghurcoder.app.passwordHashingThreads:0}")
+    private int threads;
+
+    @Value("${uyghurcoder.app.passwordHashingQueueCapacity:0}")
+    private int queueCapacity;
+
+    @Value("${server.tomcat.threads.max:200}")
+    private int tomcatMaxThreads;
+
+    @Value("${uyghurcoder.app.passwordHashingRetryAfterSeconds:1}")
+    private int retryAfterSeconds;
+
+    @Autowired
+    AuthMetrics authMetrics;
+
+    private ThreadPoolExecutor executor;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder hashTimeNanos = new LongAdder();
+    private final LongAdder waitTimeNanos = new LongAdder();
+
+    @PostConstruct
+    public void init(){
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        if(queueCapacity <= 0){
+            queueCapacity = QUEUE_PER_THREAD * poolSize;
+        }
+        if(poolSize + queueCapacity > tomcatMaxThreads / 2){
+            throw new IllegalStateException("Password hashing could hold " + (poolSize + queueCapacity) + " of the "
+                    + tomcatMaxThreads + " Tomcat threads (passwordHashingThreads " + poolSize + " + passwordHashingQueueCapacity "
+                    + queueCapacity + "): at most half of server.tomcat.threads.max");
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        logger.info("Password hashing executor started with {} threads and a queue of {}", poolSize, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        executor.shutdown();
+    }
+
+    /**
+     * execute: run a hashing task on the worker pool and wait for its result.
+     * @param operation what the task does, for the auth.password.* metrics
+     * @throws PasswordHashingRejectedException if the queue is full
+     */
+    public <T> T execute(AuthMetrics.PasswordOperation operation, Callable<T> task){
+        long submittedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long startedAt = System.nanoTime();
+                waitTimeNanos.add(startedAt - submittedAt);
+                try {
+                    return task.call();
+                } finally {
+                    long hashNanos = System.nanoTime() - startedAt;
+                    hashTimeNanos.add(hashNanos);
+                    completed.increment();
+                    authMetrics.recordPasswordHash(operation, startedAt - submittedAt, hashNanos);
+                }
+            });
+        } catch (RejectedExecutionException e){
+            rejected.increment();
+            throw new PasswordHashingRejectedException("Error: Too many credential requests, try again later", retryAfterSeconds);
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e){
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e){
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    public int getQueueDepth(){
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount(){
+        return executor.getActiveCount();
+    }
+
+    public int getPoolSize(){
+        return executor.getMaximumPoolSize();
+    }
+
+    public long getCompleted(){
+        return completed.sum();
+    }
+
+    public long getRejected(){
+        return rejected.sum();
+    }
+
+    public long getHashTimeNanos(){
+        return hashTimeNanos.sum();
+    }
+
+    public long getWaitTimeNanos(){
+        return waitTimeNanos.sum();
+    }
+
+    public Map<String, Object> stats(){
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long count = getCompleted();
+        stats.put("poolSize", getPoolSize());
+        stats.put("activeCount", getActiveCount());
+        stats.put("queueDepth", getQueueDepth());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("completed", count);
+        stats.put("rejected", getRejected());
+        stats.put("averageHashMs", count == 0 ? 0.0 : getHashTimeNanos() / 1_000_000.0 / count);
+        stats.put("averageWaitMs", count == 0 ? 0.0 : getWaitTimeNanos() / 1_000_000.0 / count);
+        return stats;
+    }
+}
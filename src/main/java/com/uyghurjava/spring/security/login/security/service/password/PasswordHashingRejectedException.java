@@ -0,0 +1,20 @@
+package com.uyghurjava.spring.security.login.security.service.password;
+
+/**
+ * Thrown when the password hashing queue is full: the request is rejected at once (503 with Retry-After)
+ * instead of waiting for a BCrypt worker.
+ */
+public class PasswordHashingRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int retryAfterSeconds;
+
+    public PasswordHashingRejectedException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,124 @@
+package com.uyghurjava.spring.security.login.security.service.throttle;
+
+import com.uyghurjava.spring.security.login.security.service.metrics.AuthMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sign-in throttling, by username and by client IP, checked before the AuthenticationManager:
+ * a rejected attempt costs two map lookups, no BCrypt.
+ *
+ * – each key has a token bucket (uyghurcoder.app.loginUserCapacity attempts, loginUserRefillPerMinute back per minute;
+ *   loginIpCapacity / loginIpRefillPerMinute for the IP)
+ * – after loginUserFreeFailures (loginIpFreeFailures) consecutive bad credentials the key backs off:
+ *   loginBackoffBaseMs, doubled on each further failure, at most loginBackoffMaxMs
+ * – at most loginThrottleMaxKeys keys per table, the keys idle for loginThrottleIdleMs are dropped first
+ */
+@Component
+public class LoginThrottle {
+
+    //usernames are at most 20 characters: longer keys cannot be accounts, truncating them bounds the memory of a key
+    private static final int MAX_KEY_LENGTH = 64;
+
+    @Value("${uyghurcoder.app.loginUserCapacity:5}")
+    private int userCapacity;
+    @Value("${uyghurcoder.app.loginUserRefillPerMinute:5}")
+    private int userRefillPerMinute;
+    @Value("${uyghurcoder.app.loginUserFreeFailures:3}")
+    private int userFreeFailures;
+    @Value("${uyghurcoder.app.loginIpCapacity:20}")
+    private int ipCapacity;
+    @Value("${uyghurcoder.app.loginIpRefillPerMinute:60}")
+    private int ipRefillPerMinute;
+    @Value("${uyghurcoder.app.loginIpFreeFailures:10}")
+    private int ipFreeFailures;
+    @Value("${uyghurcoder.app.loginBackoffBaseMs:1000}")
+    private long backoffBaseMs;
+    @Value("${uyghurcoder.app.loginBackoffMaxMs:300000}")
+    private long backoffMaxMs;
+    @Value("${uyghurcoder.app.loginThrottleMaxKeys:100000}")
+    private int maxKeys;
+    @Value("${uyghurcoder.app.loginThrottleIdleMs:900000}")
+    private long idleMs;
+
+    @Autowired
+    AuthMetrics authMetrics;
+
+    private ThrottleTable users;
+    private ThrottleTable ips;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder backedOff = new LongAdder();
+
+    @PostConstruct
+    public void init(){
+        users = new ThrottleTable(userCapacity, userRefillPerMinute, userFreeFailures, backoffBaseMs, backoffMaxMs, maxKeys, idleMs);
+        ips = new ThrottleTable(ipCapacity, ipRefillPerMinute, ipFreeFailures, backoffBaseMs, backoffMaxMs, maxKeys, idleMs);
+    }
+
+    /**
+     * check: take one sign-in attempt for the username and for the client IP.
+     * @throws LoginThrottledException if either has no attempt left or is backing off
+     */
+    public void check(String username, String clientIp){
+        long now = System.currentTimeMillis();
+        //the IP first: an attacker spraying usernames from one address does not create username buckets
+        acquire(ips, AuthMetrics.ThrottleKey.IP, clientIp, now);
+        acquire(users, AuthMetrics.ThrottleKey.USERNAME, userKey(username), now);
+        allowed.increment();
+    }
+
+    //onFailure: bad credentials, counts towards the backoff of both keys
+    public void onFailure(String username, String clientIp){
+        long now = System.currentTimeMillis();
+        ips.onFailure(clientIp, now);
+        users.onFailure(userKey(username), now);
+    }
+
+    //onSuccess: the consecutive failures of both keys are cleared
+    public void onSuccess(String username, String clientIp){
+        ips.onSuccess(clientIp);
+        users.onSuccess(userKey(username));
+    }
+
+    public Map<String, Long> stats(){
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("allowed", allowed.sum());
+        stats.put("rateLimited", rateLimited.sum());
+        stats.put("backedOff", backedOff.sum());
+        stats.put("usernames", (long) users.size());
+        stats.put("ips", (long) ips.size());
+        stats.put("evictions", users.getEvictions() + ips.getEvictions());
+        return stats;
+    }
+
+    private void acquire(ThrottleTable table, AuthMetrics.ThrottleKey key, String value, long now){
+        long waitMs = table.tryAcquire(value, now);
+        if(waitMs == 0){
+            authMetrics.recordThrottle(key, AuthMetrics.ThrottleDecision.ALLOWED);
+            return;
+        }
+        if(waitMs > 0){
+            rateLimited.increment();
+            authMetrics.recordThrottle(key, AuthMetrics.ThrottleDecision.RATE_LIMITED);
+        } else {
+            backedOff.increment();
+            authMetrics.recordThrottle(key, AuthMetrics.ThrottleDecision.BACKOFF);
+        }
+        int retryAfterSeconds = (int) Math.max(1, (Math.abs(waitMs) + 999) / 1000);
+        throw new LoginThrottledException("Error: Too many sign-in attempts, retry in " + retryAfterSeconds + " seconds", retryAfterSeconds);
+    }
+
+    private static String userKey(String username){
+        String key = username.length() > MAX_KEY_LENGTH ? username.substring(0, MAX_KEY_LENGTH) : username;
+        return key.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,20 @@
+package com.uyghurjava.spring.security.login.security.service.throttle;
+
+/**
+ * Thrown by the LoginThrottle before any password hashing, when a username or a client IP
+ * has no sign-in attempt left or is backing off after failed sign-ins (429 with Retry-After).
+ */
+public class LoginThrottledException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int retryAfterSeconds;
+
+    public LoginThrottledException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,176 @@
+package com.uyghurjava.spring.security.login.security.service.throttle;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets with progressive backoff, one per key (a username or a client IP).
+ *
+ * – a bucket holds up to capacity attempts and gets refillPerMinute attempts back per minute;
+ *   its state (milli-tokens and time of the last refill) is packed in one AtomicLong and updated with compare-and-set
+ * – after freeFailures consecutive failed logins the key is blocked for backoffBaseMs, doubled on each further failure
+ *   up to backoffMaxMs; a successful login clears the failures
+ * – the keys are spread over STRIPES maps, each bounded to maxKeys / STRIPES keys: when a stripe is full,
+ *   the keys idle for idleMs are dropped first, then arbitrary keys, so an attacker cycling keys cannot exhaust memory
+ *   (a dropped key starts again with a full bucket)
+ */
+class ThrottleTable {
+
+    private static final int STRIPES = 16;
+    private static final long MILLI_TOKENS = 1000;
+    private static final int TOKEN_BITS = 20;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+
+    private final ConcurrentHashMap<String, Bucket>[] stripes;
+    private final int maxKeysPerStripe;
+    private final long capacityMilliTokens;
+    private final double refillMilliTokensPerMs;
+    private final int freeFailures;
+    private final long backoffBaseMs;
+    private final long backoffMaxMs;
+    private final long idleMs;
+    //bucket times are relative to this instant, so that they fit next to the tokens in one long
+    private final long epochMs = System.currentTimeMillis();
+
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    ThrottleTable(int capacity, int refillPerMinute, int freeFailures, long backoffBaseMs, long backoffMaxMs,
+                  int maxKeys, long idleMs) {
+        if(capacity < 1 || capacity * MILLI_TOKENS > TOKEN_MASK){
+            throw new IllegalArgumentException("Throttle capacity must be between 1 and " + TOKEN_MASK / MILLI_TOKENS);
+        }
+        this.stripes = new ConcurrentHashMap[STRIPES];
+        for (int i = 0; i < STRIPES; i++){
+            stripes[i] = new ConcurrentHashMap<>();
+        }
+        this.maxKeysPerStripe = Math.max(1, maxKeys / STRIPES);
+        this.capacityMilliTokens = capacity * MILLI_TOKENS;
+        this.refillMilliTokensPerMs = refillPerMinute * MILLI_TOKENS / 60_000.0;
+        this.freeFailures = freeFailures;
+        this.backoffBaseMs = backoffBaseMs;
+        this.backoffMaxMs = backoffMaxMs;
+        this.idleMs = idleMs;
+    }
+
+    /**
+     * tryAcquire: take one attempt for the key.
+     * @return 0 if the attempt is allowed, otherwise the number of milliseconds to wait (negative when the key is in backoff)
+     */
+    long tryAcquire(String key, long now){
+        Bucket bucket = bucket(key, now);
+        bucket.lastSeen = now;
+        long blockedFor = bucket.blockedUntil.get() - now;
+        if(blockedFor > 0){
+            return -blockedFor;
+        }
+        long relativeNow = now - epochMs;
+        while (true){
+            long state = bucket.state.get();
+            long tokens = Math.min(capacityMilliTokens,
+                    (state & TOKEN_MASK) + (long) ((relativeNow - (state >>> TOKEN_BITS)) * refillMilliTokensPerMs));
+            if(tokens < MILLI_TOKENS){
+                return Math.max(1, (long) Math.ceil((MILLI_TOKENS - tokens) / refillMilliTokensPerMs));
+            }
+            long next = (relativeNow << TOKEN_BITS) | (tokens - MILLI_TOKENS);
+            if(bucket.state.compareAndSet(state, next)){
+                return 0;
+            }
+        }
+    }
+
+    //onFailure: one more consecutive failure, blocks the key once the free failures are used up
+    void onFailure(String key, long now){
+        Bucket bucket = bucket(key, now);
+        int failures = bucket.failures.incrementAndGet();
+        if(failures > freeFailures){
+            int doublings = Math.min(failures - freeFailures - 1, 30);
+            long backoff = Math.min(backoffMaxMs, backoffBaseMs << doublings);
+            bucket.blockedUntil.accumulateAndGet(now + backoff, Math::max);
+        }
+    }
+
+    void onSuccess(String key){
+        Bucket bucket = stripes[stripe(key)].get(key);
+        if(bucket != null){
+            bucket.failures.set(0);
+            bucket.blockedUntil.set(0);
+        }
+    }
+
+    int size(){
+        int size = 0;
+        for (ConcurrentHashMap<String, Bucket> stripe : stripes){
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    long getEvictions(){
+        return evictions.sum();
+    }
+
+    private Bucket bucket(String key, long now){
+        ConcurrentHashMap<String, Bucket> stripe = stripes[stripe(key)];
+        Bucket bucket = stripe.get(key);
+        if(bucket != null){
+            return bucket;
+        }
+        if(stripe.size() >= maxKeysPerStripe){
+            makeRoom(stripe, now);
+        }
+        Bucket created = new Bucket((now - epochMs) << TOKEN_BITS | capacityMilliTokens, now);
+        bucket = stripe.putIfAbsent(key, created);
+        return bucket != null ? bucket : created;
+    }
+
+    /**
+     * Drop the idle keys of a full stripe; if that is not enough, drop an eighth of the stripe
+     * (keys still in backoff are kept while possible).
+     */
+    private void makeRoom(ConcurrentHashMap<String, Bucket> stripe, long now){
+        Iterator<Bucket> iterator = stripe.values().iterator();
+        while (iterator.hasNext()){
+            Bucket bucket = iterator.next();
+            if(now - bucket.lastSeen >= idleMs && bucket.blockedUntil.get() <= now){
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+        int toEvict = stripe.size() - maxKeysPerStripe + Math.max(1, maxKeysPerStripe / 8);
+        for (boolean keepBlocked = true; toEvict > 0; keepBlocked = false){
+            iterator = stripe.values().iterator();
+            while (toEvict > 0 && iterator.hasNext()){
+                Bucket bucket = iterator.next();
+                if(!keepBlocked || bucket.blockedUntil.get() <= now){
+                    iterator.remove();
+                    evictions.increment();
+                    toEvict--;
+                }
+            }
+            if(!keepBlocked){
+                break;
+            }
+        }
+    }
+
+    private static int stripe(String key){
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private static final class Bucket {
+        private final AtomicLong state;
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicLong blockedUntil = new AtomicLong();
+        private volatile long lastSeen;
+
+        private Bucket(long state, long now) {
+            this.state = new AtomicLong(state);
+            this.lastSeen = now;
+        }
+    }
+}
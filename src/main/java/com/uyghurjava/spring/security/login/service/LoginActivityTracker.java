@@ -0,0 +1,158 @@
+package com.uyghurjava.spring.security.login.service;
+
+import com.uyghurjava.spring.security.login.repository.UserBatchRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Last login and login count of the users (UserLoginActivity), without a row update per signin.
+ *
+ * – recordLogin() (successful signin) only merges the login into an in-memory map of user id -> (last login, count):
+ *   repeated logins of a user between two flushes become one row update
+ * – a background thread ("login-activity-flusher") flushes the map every uyghurcoder.app.loginActivityFlushMs,
+ *   in JDBC batches of uyghurcoder.app.loginActivityBatchSize updates, one transaction each
+ *   (the second-level cached User does not map these columns: nothing to evict)
+ * – a batch that fails is merged back into the map and retried at the next flush
+ * – the map is flushed once more on shutdown: a crash loses at most the logins of one flush interval
+ */
+@Component
+public class LoginActivityTracker {
+    private static final Logger logger = LoggerFactory.getLogger(LoginActivityTracker.class);
+
+    @Autowired
+    UserBatchRepository userBatchRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Value("${uyghurcoder.app.loginActivityFlushMs:5000}")
+    private long flushMs;
+
+    @Value("${uyghurcoder.app.loginActivityBatchSize:500}")
+    private int batchSize;
+
+    private final ConcurrentHashMap<Long, Logins> pending = new ConcurrentHashMap<>();
+    private TransactionTemplate transactionTemplate;
+    private ScheduledExecutorService flusher;
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder rowsUpdated = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+
+    @PostConstruct
+    public void init(){
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "login-activity-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushMs, flushMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+    }
+
+    //recordLogin: a successful signin of the user, written at the next flush
+    public void recordLogin(long userId){
+        pending.merge(userId, new Logins(System.currentTimeMillis(), 1), Logins::plus);
+        recorded.increment();
+    }
+
+    /**
+     * flush: write the pending logins now; the number of users updated.
+     * A user's entry is removed atomically before it is written: a login recorded meanwhile starts a new entry.
+     */
+    public synchronized int flush(){
+        List<UserBatchRepository.LoginUpdate> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        int updated = 0;
+        for (Long id : pending.keySet()){
+            Logins logins = pending.remove(id);
+            if(logins == null){
+                continue;
+            }
+            batch.add(new UserBatchRepository.LoginUpdate(id, Instant.ofEpochMilli(logins.lastLogin), logins.count));
+            if(batch.size() == batchSize){
+                updated += write(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if(!batch.isEmpty()){
+            updated += write(batch);
+        }
+        return updated;
+    }
+
+    public Map<String, Long> stats(){
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("recorded", recorded.sum());
+        stats.put("pendingUsers", (long) pending.size());
+        stats.put("rowsUpdated", rowsUpdated.sum());
+        stats.put("batches", batches.sum());
+        stats.put("flushFailures", flushFailures.sum());
+        return stats;
+    }
+
+    //write: one batch in one transaction; merged back into pending if it fails
+    private int write(List<UserBatchRepository.LoginUpdate> batch){
+        try {
+            transactionTemplate.executeWithoutResult(status -> userBatchRepository.updateLogins(batch));
+        } catch (RuntimeException e){
+            flushFailures.increment();
+            logger.error("Cannot write the logins of {} users, retried at the next flush: {}", batch.size(), e.getMessage());
+            for (UserBatchRepository.LoginUpdate login : batch){
+                pending.merge(login.getUserId(), new Logins(login.getLastLogin().toEpochMilli(), login.getCount()), Logins::plus);
+            }
+            return 0;
+        }
+        rowsUpdated.add(batch.size());
+        batches.increment();
+        return batch.size();
+    }
+
+    private void flushQuietly(){
+        try {
+            flush();
+        } catch (RuntimeException e){
+            logger.error("Login activity flush failed: {}", e.getMessage());
+        }
+    }
+
+    //Logins: immutable, so merge() and remove() of the map are enough to never lose nor count twice a login
+    private static final class Logins {
+        final long lastLogin;
+        final long count;
+
+        Logins(long lastLogin, long count) {
+            this.lastLogin = lastLogin;
+            this.count = count;
+        }
+
+        static Logins plus(Logins a, Logins b){
+            return new Logins(Math.max(a.lastLogin, b.lastLogin), a.count + b.count);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.uyghurjava.spring.security.login.service;
+
+import com.uyghurjava.spring.security.login.repository.UserBatchRepository;
+import com.uyghurjava.spring.security.login.repository.UserRepository;
+import com.uyghurjava.spring.security.login.repository.projection.UserIdentity;
+import com.uyghurjava.spring.security.login.util.BloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Uniqueness pre-check of the signup: Bloom filters of the existing usernames and emails.
+ *
+ * – filled from the users table at startup and on every insert (signup, bulk import)
+ * – a username and an email that are both "certainly new" for the filters skip the database:
+ *   no query before the insert
+ * – otherwise one query looks for both (findIdentitiesByUsernameOrEmail) instead of one per column
+ * – the unique constraints of the users table stay authoritative: a signup that loses a race with another one
+ *   (or with another instance, whose inserts this filter does not see) gets the same 400 from conflictAfterViolation()
+ * – the filters are sized for uyghurcoder.app.signupIndexExpectedSize users (at least twice the users at startup), and rebuilt
+ *   in the background twice as large once they hold that many (0 disables the filters: every signup runs the query)
+ */
+@Component
+public class UserIdentityIndex {
+    private static final Logger logger = LoggerFactory.getLogger(UserIdentityIndex.class);
+
+    private static final double BLOOM_FPP = 0.01;
+
+    public enum Conflict { NONE, USERNAME, EMAIL }
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    UserBatchRepository userBatchRepository;
+
+    @Value("${uyghurcoder.app.signupIndexExpectedSize:100000}")
+    private long expectedSize;
+
+    private volatile Filters filters;
+    //filters being rebuilt, the inserts of the rebuild go to both
+    private volatile Filters rebuilding;
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private ExecutorService rebuilder;
+
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder queried = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final LongAdder constraintViolations = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    @PostConstruct
+    public void init(){
+        if(expectedSize <= 0){
+            return;
+        }
+        rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-identity-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        filters = load(expectedSize);
+        logger.info("User identity index warmed with {} users", filters.count.get());
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        if(rebuilder != null){
+            rebuilder.shutdownNow();
+        }
+    }
+
+    /**
+     * check: is the username or the email of a signup already taken?
+     * No query when the filters know that both are new.
+     */
+    public Conflict check(String username, String email){
+        Filters current = filters;
+        if(current != null && !current.usernames.mightContain(username) && !current.emails.mightContain(email)){
+            skipped.increment();
+            return Conflict.NONE;
+        }
+        queried.increment();
+        Conflict conflict = find(username, email);
+        if(conflict == Conflict.NONE && current != null){
+            falsePositives.increment();
+        }
+        return conflict;
+    }
+
+    //conflictAfterViolation: which column made the insert of a signup fail (NONE if neither is taken)
+    public Conflict conflictAfterViolation(String username, String email){
+        constraintViolations.increment();
+        add(username, email);
+        return find(username, email);
+    }
+
+    //add: a user has been inserted
+    public void add(String username, String email){
+        Filters current = filters;
+        if(current == null){
+            return;
+        }
+        current.put(username, email);
+        Filters next = rebuilding;
+        if(next != null){
+            next.put(username, email);
+        }
+        if(current.count.get() > current.capacity && rebuildScheduled.compareAndSet(false, true)){
+            rebuilder.execute(() -> rebuild(current.capacity * 2));
+        }
+    }
+
+    public Map<String, Long> stats(){
+        Filters current = filters;
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("users", current != null ? current.count.get() : 0);
+        stats.put("capacity", current != null ? current.capacity : 0);
+        stats.put("skipped", skipped.sum());
+        stats.put("queried", queried.sum());
+        stats.put("falsePositives", falsePositives.sum());
+        stats.put("constraintViolations", constraintViolations.sum());
+        stats.put("rebuilds", rebuilds.sum());
+        return stats;
+    }
+
+    private Conflict find(String username, String email){
+        Conflict conflict = Conflict.NONE;
+        for (UserIdentity identity : userRepository.findIdentitiesByUsernameOrEmail(username, email)){
+            if(username.equals(identity.getUsername())){
+                return Conflict.USERNAME;
+            }
+            conflict = Conflict.EMAIL;
+        }
+        return conflict;
+    }
+
+    private void rebuild(long capacity){
+        try {
+            rebuilding = new Filters(capacity);
+            filters = load(rebuilding);
+            rebuilds.increment();
+            logger.info("User identity index rebuilt for {} users", capacity);
+        } catch (RuntimeException e){
+            logger.error("User identity index rebuild failed: {}", e.getMessage());
+        } finally {
+            rebuilding = null;
+            rebuildScheduled.set(false);
+        }
+    }
+
+    private Filters load(long minCapacity){
+        long users = userRepository.count();
+        return load(new Filters(Math.max(minCapacity, users * 2)));
+    }
+
+    private Filters load(Filters target){
+        userBatchRepository.forEachIdentity(target::put);
+        return target;
+    }
+
+    private static final class Filters {
+        private final long capacity;
+        private final BloomFilter usernames;
+        private final BloomFilter emails;
+        private final AtomicLong count = new AtomicLong();
+
+        private Filters(long capacity) {
+            this.capacity = capacity;
+            this.usernames = BloomFilter.create(capacity, BLOOM_FPP);
+            this.emails = BloomFilter.create(capacity, BLOOM_FPP);
+        }
+
+        private void put(String username, String email){
+            usernames.put(username);
+            emails.put(email);
+            count.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.uyghurjava.spring.security.login.service;
+
+import com.uyghurjava.spring.security.login.payload.response.ImportRowError;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress and per-row errors of one bulk user import, readable while the import is running.
+ * Only the first MAX_REPORTED_ERRORS errors are kept, the others are only counted.
+ */
+public class UserImportJob {
+
+    public enum Status { RUNNING, COMPLETED, FAILED }
+
+    static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final String id;
+    private final String format;
+    private final long startedAt = System.currentTimeMillis();
+    private volatile long finishedAt;
+    private volatile Status status = Status.RUNNING;
+    private volatile String failure;
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final List<ImportRowError> errors = Collections.synchronizedList(new ArrayList<>());
+
+    UserImportJob(String id, String format) {
+        this.id = id;
+        this.format = format;
+    }
+
+    void rowImported(){
+        processed.incrementAndGet();
+        imported.incrementAndGet();
+    }
+
+    void rowFailed(long line, String username, String message){
+        processed.incrementAndGet();
+        if(failed.incrementAndGet() <= MAX_REPORTED_ERRORS){
+            errors.add(new ImportRowError(line, username, message));
+        }
+    }
+
+    void complete(){
+        finishedAt = System.currentTimeMillis();
+        status = Status.COMPLETED;
+    }
+
+    //fail: the import stopped (for example the upload was interrupted), the rows already imported stay imported
+    void fail(String message){
+        finishedAt = System.currentTimeMillis();
+        failure = message;
+        status = Status.FAILED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    public long getImported() {
+        return imported.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getDurationMs() {
+        return (status == Status.RUNNING ? System.currentTimeMillis() : finishedAt) - startedAt;
+    }
+
+    public List<ImportRowError> getErrors() {
+        synchronized (errors){
+            return new ArrayList<>(errors);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.uyghurjava.spring.security.login.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.uyghurjava.spring.security.login.models.User;
+import com.uyghurjava.spring.security.login.payload.request.SignupRequest;
+import com.uyghurjava.spring.security.login.repository.UserBatchRepository;
+import com.uyghurjava.spring.security.login.security.service.RoleRegistry;
+import com.uyghurjava.spring.security.login.security.service.password.BCryptCostCalibrator;
+import com.uyghurjava.spring.security.login.security.service.password.CalibratedBCryptPasswordEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulk user import, for onboarding thousands of users without thousands of /api/auth/signup calls.
+ *
+ * The upload is read line by line (CSV or NDJSON) and processed in chunks:
+ * – every row is validated with the constraints of SignupRequest
+ * – duplicates are checked with one query for the usernames and one for the emails of the chunk
+ * – passwords are hashed in parallel on all cores
+ * – users and user_roles rows are inserted in JDBC batches, in one transaction per chunk
+ * A row that fails is reported with its line number and the import goes on with the next rows.
+ *
+ * CSV: username,email,password,roles (roles separated by '|', for example "admin|user"), optional header line,
+ * fields may be quoted with double quotes.
+ * NDJSON: one SignupRequest per line: {"username": "...", "email": "...", "password": "...", "role": ["mod", "user"]}
+ */
+@Service
+public class UserImportService {
+    private static final Logger logger = LoggerFactory.getLogger(UserImportService.class);
+
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_NDJSON = "ndjson";
+
+    private static final int MAX_KEPT_JOBS = 20;
+
+    @Autowired
+    UserBatchRepository userBatchRepository;
+    @Autowired
+    RoleRegistry roleRegistry;
+    @Autowired
+    BCryptCostCalibrator bCryptCostCalibrator;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    Validator validator;
+    @Autowired
+    ObjectMapper objectMapper;
+    @Autowired
+    UserIdentityIndex userIdentityIndex;
+
+    @Value("${uyghurcoder.app.importChunkSize:500}")
+    private int chunkSize;
+
+    @Value("${uyghurcoder.app.importHashingThreads:0}")
+    private int hashingThreads;
+
+    private ExecutorService hashingPool;
+    private PasswordEncoder passwordEncoder;
+    private TransactionTemplate transactionTemplate;
+
+    //last imports, the oldest finished ones are dropped
+    private final Map<String, UserImportJob> jobs = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    @PostConstruct
+    public void init(){
+        int threads = hashingThreads > 0 ? hashingThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        hashingPool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "user-import-hashing-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        //not the request path encoder: an import must not take the workers of /api/auth/signin
+        passwordEncoder = new CalibratedBCryptPasswordEncoder(bCryptCostCalibrator.getStrength());
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        hashingPool.shutdownNow();
+    }
+
+    /**
+     * importUsers: import the users of the upload, the returned job holds the counts and the per-row errors.
+     * @param inputStream CSV or NDJSON upload
+     * @param format FORMAT_CSV or FORMAT_NDJSON
+     */
+    public UserImportJob importUsers(InputStream inputStream, String format){
+        UserImportJob job = new UserImportJob(UUID.randomUUID().toString(), format);
+        registerJob(job);
+        logger.info("User import {} started ({})", job.getId(), format);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))){
+            List<ImportRow> chunk = new ArrayList<>(chunkSize);
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null){
+                lineNumber++;
+                if(line.trim().isEmpty()){
+                    continue;
+                }
+                ImportRow row = parseRow(line, lineNumber, format, job);
+                if(row != null){
+                    chunk.add(row);
+                }
+                if(chunk.size() >= chunkSize){
+                    processChunk(chunk, job);
+                    chunk.clear();
+                }
+            }
+            if(!chunk.isEmpty()){
+                processChunk(chunk, job);
+            }
+            job.complete();
+        } catch (IOException | RuntimeException e){
+            logger.error("User import {} failed: {}", job.getId(), e.getMessage());
+            job.fail(e.getMessage());
+        }
+        logger.info("User import {} {}: {} imported, {} failed in {} ms", job.getId(), job.getStatus(),
+                job.getImported(), job.getFailed(), job.getDurationMs());
+        return job;
+    }
+
+    public List<UserImportJob> getJobs(){
+        synchronized (jobs){
+            return new ArrayList<>(jobs.values());
+        }
+    }
+
+    private void registerJob(UserImportJob job){
+        synchronized (jobs){
+            jobs.put(job.getId(), job);
+            Iterator<UserImportJob> iterator = jobs.values().iterator();
+            while (jobs.size() > MAX_KEPT_JOBS && iterator.hasNext()){
+                if(iterator.next().getStatus() != UserImportJob.Status.RUNNING){
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private ImportRow parseRow(String line, long lineNumber, String format, UserImportJob job){
+        try {
+            if(FORMAT_CSV.equals(format)){
+                List<String> fields = parseCsvLine(line);
+                if(lineNumber == 1 && "username".equalsIgnoreCase(fields.get(0).trim())){
+                    return null;
+                }
+                SignupRequest request = new SignupRequest();
+                request.setUsername(field(fields, 0));
+                request.setEmail(field(fields, 1));
+                request.setPassword(field(fields, 2));
+                String roles = field(fields, 3);
+                if(roles != null && !roles.trim().isEmpty()){
+                    request.setRole(new HashSet<>(Arrays.asList(roles.trim().split("\\s*\\|\\s*"))));
+                }
+                return new ImportRow(lineNumber, request);
+            }
+            return new ImportRow(lineNumber, objectMapper.readValue(line, SignupRequest.class));
+        } catch (IOException | RuntimeException e){
+            job.rowFailed(lineNumber, null, "Error: Row cannot be parsed");
+            return null;
+        }
+    }
+
+    private void processChunk(List<ImportRow> chunk, UserImportJob job){
+        //validate the rows and drop the duplicates inside the chunk
+        List<ImportRow> rows = new ArrayList<>(chunk.size());
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        for (ImportRow row : chunk){
+            SignupRequest request = row.request;
+            Set<ConstraintViolation<SignupRequest>> violations = validator.validate(request);
+            if(!violations.isEmpty()){
+                ConstraintViolation<SignupRequest> violation = violations.iterator().next();
+                job.rowFailed(row.line, request.getUsername(),
+                        "Error: " + violation.getPropertyPath() + " " + violation.getMessage());
+            } else if(usernames.contains(request.getUsername())){
+                job.rowFailed(row.line, request.getUsername(), "Error: Username is already taken!");
+            } else if(emails.contains(request.getEmail())){
+                job.rowFailed(row.line, request.getUsername(), "Error Email is already in use!");
+            } else {
+                usernames.add(request.getUsername());
+                emails.add(request.getEmail());
+                rows.add(row);
+            }
+        }
+
+        //check existing username/email, one query each for the whole chunk
+        Set<String> existingUsernames = userBatchRepository.findExistingUsernames(usernames);
+        Set<String> existingEmails = userBatchRepository.findExistingEmails(emails);
+        List<ImportRow> newRows = new ArrayList<>(rows.size());
+        for (ImportRow row : rows){
+            if(existingUsernames.contains(row.request.getUsername())){
+                job.rowFailed(row.line, row.request.getUsername(), "Error: Username is already taken!");
+            } else if(existingEmails.contains(row.request.getEmail())){
+                job.rowFailed(row.line, row.request.getUsername(), "Error Email is already in use!");
+            } else {
+                newRows.add(row);
+            }
+        }
+        if(newRows.isEmpty()){
+            return;
+        }
+
+        //hash the passwords in parallel
+        List<Future<String>> hashes = new ArrayList<>(newRows.size());
+        for (ImportRow row : newRows){
+            String password = row.request.getPassword();
+            hashes.add(hashingPool.submit(() -> passwordEncoder.encode(password)));
+        }
+        List<User> users = new ArrayList<>(newRows.size());
+        long[] ids = userBatchRepository.nextIds(newRows.size());
+        for (int i = 0; i < newRows.size(); i++){
+            SignupRequest request = newRows.get(i).request;
+            User user = new User(request.getUsername(), request.getEmail(), await(hashes.get(i)));
+            user.setId(ids[i]);
+            user.setRoles(roleRegistry.resolveRoles(request.getRole()));
+            users.add(user);
+        }
+
+        //insert the chunk in JDBC batches; if it fails (a concurrent signup took a username), insert row by row
+        try {
+            transactionTemplate.executeWithoutResult(status -> userBatchRepository.insertUsers(users));
+            for (User user : users){
+                userIdentityIndex.add(user.getUsername(), user.getEmail());
+                job.rowImported();
+            }
+        } catch (DataAccessException e){
+            logger.warn("User import {}: batch insert failed, inserting row by row: {}", job.getId(), e.getMessage());
+            for (int i = 0; i < users.size(); i++){
+                User user = users.get(i);
+                try {
+                    transactionTemplate.executeWithoutResult(status ->
+                            userBatchRepository.insertUsers(Collections.singletonList(user)));
+                    userIdentityIndex.add(user.getUsername(), user.getEmail());
+                    job.rowImported();
+                } catch (DataAccessException rowException){
+                    job.rowFailed(newRows.get(i).line, user.getUsername(), insertError(user, rowException));
+                }
+            }
+        }
+    }
+
+    /**
+     * insertError: the error of a row that cannot be inserted.
+     * A constraint violation on a username or email taken meanwhile (concurrent signup) gets the signup message,
+     * any other failure (another constraint, the database) its own cause.
+     */
+    private String insertError(User user, DataAccessException e){
+        if(e instanceof DataIntegrityViolationException){
+            try {
+                if(!userBatchRepository.findExistingUsernames(Collections.singleton(user.getUsername())).isEmpty()){
+                    return "Error: Username is already taken!";
+                }
+                if(!userBatchRepository.findExistingEmails(Collections.singleton(user.getEmail())).isEmpty()){
+                    return "Error Email is already in use!";
+                }
+            } catch (DataAccessException lookupException){
+                logger.warn("Cannot look up the username and email of a failed import row: {}", lookupException.getMessage());
+            }
+        }
+        return "Error: " + e.getMostSpecificCause().getMessage();
+    }
+
+    private static String await(Future<String> hash){
+        try {
+            return hash.get();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing passwords", e);
+        } catch (ExecutionException e){
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    private static String field(List<String> fields, int index){
+        return index < fields.size() ? fields.get(index) : null;
+    }
+
+    //parseCsvLine: split a CSV line on commas, fields may be quoted ("" is an escaped quote)
+    static List<String> parseCsvLine(String line){
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++){
+            char c = line.charAt(i);
+            if(quoted){
+                if(c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"'){
+                    field.append('"');
+                    i++;
+                } else if(c == '"'){
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if(c == '"'){
+                quoted = true;
+            } else if(c == ','){
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static final class ImportRow {
+        private final long line;
+        private final SignupRequest request;
+
+        private ImportRow(long line, SignupRequest request) {
+            this.line = line;
+            this.request = request;
+        }
+    }
+}
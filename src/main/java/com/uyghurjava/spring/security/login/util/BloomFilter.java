@@ -0,0 +1,96 @@
+package com.uyghurjava.spring.security.login.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter of strings.
+ *
+ * mightContain() never returns false for a value that has been put (no false negatives),
+ * it returns true for a value that has not been put with the false positive probability it was sized for.
+ * Bits are set with compare-and-set, so put() and mightContain() can be called concurrently without locks.
+ * Values cannot be removed: rebuild a new filter from the live values instead.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+
+    private BloomFilter(long bitCount, int hashCount) {
+        this.words = new AtomicLongArray((int) ((bitCount + 63) >>> 6));
+        this.bitCount = (long) words.length() << 6;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * create: a filter sized for expectedInsertions values with a false positive probability fpp.
+     */
+    public static BloomFilter create(long expectedInsertions, double fpp){
+        long n = Math.max(1, expectedInsertions);
+        long bits = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+        return new BloomFilter(Math.max(64, bits), hashes);
+    }
+
+    public void put(String value){
+        long hash = hash64(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++){
+            setBit(index(h1 + i * h2));
+        }
+    }
+
+    public boolean mightContain(String value){
+        long hash = hash64(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++){
+            long bit = index(h1 + i * h2);
+            if((words.get((int) (bit >>> 6)) & (1L << bit)) == 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitCount(){
+        return bitCount;
+    }
+
+    public int getHashCount(){
+        return hashCount;
+    }
+
+    private long index(int combinedHash){
+        return (combinedHash & 0x7fffffffL) % bitCount;
+    }
+
+    private void setBit(long bit){
+        int word = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        long current;
+        do {
+            current = words.get(word);
+            if((current & mask) != 0){
+                return;
+            }
+        } while (!words.compareAndSet(word, current, current | mask));
+    }
+
+    //64-bit FNV-1a of the UTF-8 bytes, with a final avalanche mix
+    private static long hash64(String value){
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)){
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,4 @@
+-- One row per ERole. Idempotent: a database created by ddl-auto=update is baselined at version 1 and may already hold them.
+INSERT INTO roles (name) SELECT 'ROLE_USER' FROM DUAL WHERE NOT EXISTS (SELECT 1 FROM roles WHERE name = 'ROLE_USER');
+INSERT INTO roles (name) SELECT 'ROLE_MODERATOR' FROM DUAL WHERE NOT EXISTS (SELECT 1 FROM roles WHERE name = 'ROLE_MODERATOR');
+INSERT INTO roles (name) SELECT 'ROLE_ADMIN' FROM DUAL WHERE NOT EXISTS (SELECT 1 FROM roles WHERE name = 'ROLE_ADMIN');
@@ -0,0 +1,5 @@
+-- Login activity of the users (last_login, login_count), written in batches by LoginActivityTracker.
+-- Idempotent: a database created by ddl-auto=update is baselined at version 1 and may already have these columns.
+ALTER TABLE users ADD COLUMN IF NOT EXISTS last_login TIMESTAMP;
+ALTER TABLE users ADD COLUMN IF NOT EXISTS login_count BIGINT DEFAULT 0 NOT NULL;
+CREATE INDEX IF NOT EXISTS idx_users_last_login ON users (last_login);
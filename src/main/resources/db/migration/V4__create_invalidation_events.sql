@@ -0,0 +1,14 @@
+-- Table of the jdbc invalidation bus (uyghurcoder.app.invalidationBus=jdbc), see JdbcInvalidationBus.
+-- Idempotent: without Flyway the bus creates it at startup, so a database may already hold it, with or without subject_id.
+CREATE TABLE IF NOT EXISTS invalidation_events (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    node_id VARCHAR(36) NOT NULL,
+    kind VARCHAR(16) NOT NULL,
+    event_key VARCHAR(255) NOT NULL,
+    subject_id BIGINT DEFAULT 0 NOT NULL,
+    expires_at BIGINT NOT NULL,
+    published_at BIGINT NOT NULL
+);
+ALTER TABLE invalidation_events ADD COLUMN IF NOT EXISTS subject_id BIGINT DEFAULT 0 NOT NULL;
+-- the purge of the rows every instance has read
+CREATE INDEX IF NOT EXISTS idx_invalidation_events_published ON invalidation_events (published_at);
@@ -0,0 +1,68 @@
+package com.uyghurjava.spring.security.login;
+
+import com.uyghurjava.spring.security.login.models.ERole;
+import com.uyghurjava.spring.security.login.models.User;
+import com.uyghurjava.spring.security.login.repository.UserRepository;
+import com.uyghurjava.spring.security.login.security.service.RoleRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The prod profile: schema and roles from the Flyway migrations, validated by Hibernate, and lazy beans
+ * except those of the sign-in path.
+ */
+@ActiveProfiles("prod")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:prodprofile",
+        "uyghurcoder.app.bcryptStrength=4"
+})
+class ProdProfileTests {
+
+    @Autowired
+    ConfigurableApplicationContext context;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    RoleRegistry roleRegistry;
+    @Autowired
+    AuthenticationManager authenticationManager;
+
+    @Test
+    void schemaAndRolesComeFromTheMigrations(){
+        assertThat(jdbcTemplate.queryForList("SELECT \"version\" FROM \"flyway_schema_history\" WHERE \"success\" AND \"version\" IS NOT NULL ORDER BY \"installed_rank\"", String.class))
+                .containsExactly("1", "2", "3", "4");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM invalidation_events WHERE subject_id = 0", Integer.class)).isZero();
+        assertThat(jdbcTemplate.queryForList("SELECT name FROM roles", String.class))
+                .containsExactlyInAnyOrder("ROLE_USER", "ROLE_MODERATOR", "ROLE_ADMIN");
+    }
+
+    @Test
+    void onlyTheSigninPathIsCreatedAtStartup(){
+        assertThat(context.getBeanFactory().containsSingleton("authController")).isTrue();
+        assertThat(context.getBeanFactory().containsSingleton("adminController")).isFalse();
+        assertThat(context.getBeanFactory().containsSingleton("userImportService")).isFalse();
+    }
+
+    @Test
+    void signinWorksOnTheMigratedSchema(){
+        User user = new User("prodSignin", "prodSignin@uyghurjava.com", BCrypt.hashpw("12345678", BCrypt.gensalt(4)));
+        user.setRoles(Collections.singleton(roleRegistry.getRole(ERole.ROLE_USER)));
+        userRepository.save(user);
+
+        assertThat(authenticationManager.authenticate(new UsernamePasswordAuthenticationToken("prodSignin", "12345678"))
+                .isAuthenticated()).isTrue();
+    }
+}
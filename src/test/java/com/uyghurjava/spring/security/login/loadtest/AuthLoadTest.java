@@ -0,0 +1,327 @@
+package com.uyghurjava.spring.security.login.loadtest;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * End-to-end load test: the application on a random port with an in-memory H2 database, driven over HTTP by concurrent clients.
+ *
+ * – N users are seeded through /api/auth/signup (roles user and admin), each client signs in as one of them
+ * – the clients replay a weighted mix of /api/auth/signin, /api/test/user and /api/test/admin/allUsers with their JWT cookie
+ * – after the warmup, every response time is kept; throughput and p50/p99/p999 are printed per operation
+ * – the test fails when an operation goes over its p99 budget or when the error rate goes over maxErrorRate
+ *
+ * Closed loop by default (each client sends its next request when the previous one is answered).
+ * With loadtest.rate > 0 each client sends at a fixed rate and the latency is measured from the time the request
+ * should have been sent, so a stalled server shows in the tail instead of slowing the clients down.
+ *
+ * Not part of mvn test (tag loadtest), run with: mvn -Ploadtest test
+ * Settings are system properties, for example: mvn -Ploadtest test -Dloadtest.clients=64 -Dloadtest.durationSeconds=60
+ * The sign-in throttle is relaxed: this measures the service, not the throttle.
+ */
+@Tag("loadtest")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:loadtest",
+        "spring.jpa.show-sql=false",
+        "logging.level.com.uyghurjava=WARN",
+        "uyghurcoder.app.loginUserCapacity=1000",
+        "uyghurcoder.app.loginUserRefillPerMinute=1000000",
+        "uyghurcoder.app.loginIpCapacity=1000",
+        "uyghurcoder.app.loginIpRefillPerMinute=1000000"
+})
+class AuthLoadTest {
+
+    private static final String PASSWORD = "loadtest-password";
+    private static final String JWT_COOKIE = "uyghurCoder";
+
+    enum Operation { SIGNIN, USER, ALL_USERS }
+
+    private final int users = Integer.getInteger("loadtest.users", 20);
+    private final int clients = Integer.getInteger("loadtest.clients", 8);
+    private final int warmupSeconds = Integer.getInteger("loadtest.warmupSeconds", 5);
+    private final int durationSeconds = Integer.getInteger("loadtest.durationSeconds", 15);
+    //requests per second of each client, 0: closed loop
+    private final double rate = Double.parseDouble(System.getProperty("loadtest.rate", "0"));
+    private final Map<Operation, Integer> mix = perOperation(System.getProperty("loadtest.mix", "signin:5,user:80,all_users:15"));
+    private final Map<Operation, Integer> p99BudgetMs =
+            perOperation(System.getProperty("loadtest.p99BudgetMs", "signin:3000,user:250,all_users:500"));
+    private final double maxErrorRate = Double.parseDouble(System.getProperty("loadtest.maxErrorRate", "0.001"));
+
+    @LocalServerPort
+    int port;
+
+    @Test
+    void signinAndAuthenticatedTraffic() throws Exception {
+        seedUsers();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        long startedAt = System.nanoTime();
+        long measureFrom = startedAt + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long deadline = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        List<Future<Client>> futures = new ArrayList<>();
+        for (int i = 0; i < clients; i++){
+            Client client = new Client("loaduser" + (i % users));
+            futures.add(pool.submit(() -> client.run(measureFrom, deadline)));
+        }
+        Map<Operation, LatencyLog> latencies = new EnumMap<>(Operation.class);
+        Map<Operation, Long> errors = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()){
+            latencies.put(operation, new LatencyLog());
+            errors.put(operation, 0L);
+        }
+        for (Future<Client> future : futures){
+            Client client = future.get();
+            for (Operation operation : Operation.values()){
+                latencies.get(operation).addAll(client.latencies.get(operation));
+                errors.merge(operation, client.errors.get(operation), Long::sum);
+            }
+        }
+        pool.shutdown();
+
+        StringWriter report = new StringWriter();
+        PrintWriter out = new PrintWriter(report);
+        out.printf(Locale.ROOT, "%nLoad test: %d users, %d clients, %s, %d s measured after %d s warmup%n",
+                users, clients, rate > 0 ? rate + " req/s per client" : "closed loop", durationSeconds, warmupSeconds);
+        out.printf(Locale.ROOT, "%-10s %9s %7s %9s %9s %9s %9s %9s%n", "operation", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        long requests = 0;
+        long failed = 0;
+        for (Operation operation : Operation.values()){
+            LatencyLog log = latencies.get(operation);
+            log.sort();
+            requests += log.size;
+            failed += errors.get(operation);
+            out.printf(Locale.ROOT, "%-10s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n", tagValue(operation), log.size, errors.get(operation),
+                    log.size / (double) durationSeconds, log.percentileMs(0.50), log.percentileMs(0.99), log.percentileMs(0.999), log.percentileMs(1.0));
+        }
+        out.printf(Locale.ROOT, "%-10s %9d %7d %9.1f%n", "total", requests, failed, requests / (double) durationSeconds);
+        out.flush();
+        System.out.println(report);
+
+        assertThat(requests).as("requests measured").isPositive();
+        assertThat(failed / (double) requests).as("error rate").isLessThanOrEqualTo(maxErrorRate);
+        for (Operation operation : Operation.values()){
+            Integer budget = p99BudgetMs.get(operation);
+            if(budget != null && latencies.get(operation).size > 0){
+                assertThat(latencies.get(operation).percentileMs(0.99)).as("p99 of %s (ms)", tagValue(operation)).isLessThanOrEqualTo(budget);
+            }
+        }
+    }
+
+    //seedUsers: N users through the signup path, as a client would create them
+    private void seedUsers() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(clients, users));
+        List<Future<Integer>> statuses = new ArrayList<>();
+        for (int i = 0; i < users; i++){
+            String username = "loaduser" + i;
+            String body = "{\"username\":\"" + username + "\",\"email\":\"" + username + "@loadtest.com\","
+                    + "\"password\":\"" + PASSWORD + "\",\"role\":[\"user\",\"admin\"]}";
+            statuses.add(pool.submit(() -> new Response(post("/api/auth/signup", body)).status));
+        }
+        for (Future<Integer> status : statuses){
+            assertThat(status.get()).as("signup status").isEqualTo(200);
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * One client: signs in once, then replays the mix until the deadline.
+     */
+    private final class Client {
+        private final String username;
+        private final Map<Operation, LatencyLog> latencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, Long> errors = new EnumMap<>(Operation.class);
+        private String cookie;
+
+        private Client(String username) {
+            this.username = username;
+            for (Operation operation : Operation.values()){
+                latencies.put(operation, new LatencyLog());
+                errors.put(operation, 0L);
+            }
+        }
+
+        private Client run(long measureFrom, long deadline) throws IOException, InterruptedException {
+            cookie = signin().cookie;
+            long intervalNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+            long scheduledAt = System.nanoTime();
+            while (scheduledAt < deadline){
+                if(intervalNanos > 0){
+                    long wait = scheduledAt - System.nanoTime();
+                    if(wait > 0){
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                }
+                long sentAt = intervalNanos > 0 ? scheduledAt : System.nanoTime();
+                Operation operation = nextOperation();
+                boolean ok = execute(operation);
+                long answeredAt = System.nanoTime();
+                if(sentAt >= measureFrom){
+                    latencies.get(operation).add(answeredAt - sentAt);
+                    if(!ok){
+                        errors.merge(operation, 1L, Long::sum);
+                    }
+                }
+                scheduledAt = intervalNanos > 0 ? scheduledAt + intervalNanos : answeredAt;
+            }
+            return this;
+        }
+
+        private boolean execute(Operation operation) throws IOException {
+            switch (operation){
+                case SIGNIN:
+                    Response response = signin();
+                    if(response.cookie != null){
+                        cookie = response.cookie;
+                    }
+                    return response.status == 200;
+                case USER:
+                    return new Response(get("/api/test/user", cookie)).status == 200;
+                default:
+                    return new Response(get("/api/test/admin/allUsers?size=20", cookie)).status == 200;
+            }
+        }
+
+        private Response signin() throws IOException {
+            return new Response(post("/api/auth/signin",
+                    "{\"username\":\"" + username + "\",\"password\":\"" + PASSWORD + "\"}"));
+        }
+    }
+
+    private Operation nextOperation(){
+        int total = 0;
+        for (int weight : mix.values()){
+            total += weight;
+        }
+        int pick = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()){
+            pick -= entry.getValue();
+            if(pick < 0){
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty loadtest.mix");
+    }
+
+    private HttpURLConnection post(String path, String json) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setDoOutput(true);
+        try (OutputStream body = connection.getOutputStream()) {
+            body.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        return connection;
+    }
+
+    private HttpURLConnection get(String path, String cookie) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+        connection.setRequestProperty("Cookie", JWT_COOKIE + "=" + cookie);
+        return connection;
+    }
+
+    //perOperation: "signin:5,user:80" into a map by Operation
+    private static Map<Operation, Integer> perOperation(String spec){
+        Map<Operation, Integer> values = new EnumMap<>(Operation.class);
+        for (String item : spec.split(",")){
+            String[] pair = item.trim().split(":");
+            values.put(Operation.valueOf(pair[0].trim().toUpperCase(Locale.ROOT)), Integer.valueOf(pair[1].trim()));
+        }
+        return values;
+    }
+
+    private static String tagValue(Operation operation){
+        return operation.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Status and JWT cookie of a response; the body is read to the end so the keep-alive connection is reused.
+     */
+    private static final class Response {
+        private final int status;
+        private final String cookie;
+
+        private Response(HttpURLConnection connection) throws IOException {
+            status = connection.getResponseCode();
+            String jwt = null;
+            List<String> setCookies = connection.getHeaderFields().get("Set-Cookie");
+            if(setCookies != null){
+                for (String setCookie : setCookies){
+                    if(setCookie.startsWith(JWT_COOKIE + "=")){
+                        jwt = setCookie.substring(JWT_COOKIE.length() + 1, setCookie.indexOf(';'));
+                    }
+                }
+            }
+            cookie = jwt;
+            InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if(body != null){
+                try (InputStream in = body) {
+                    drain(in);
+                }
+            }
+        }
+
+        private static void drain(InputStream in) throws IOException {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) >= 0){
+                //discarded
+            }
+        }
+    }
+
+    /**
+     * Response times of one operation in nanoseconds, one growing array per client (no sharing while measuring).
+     */
+    private static final class LatencyLog {
+        private long[] values = new long[1024];
+        private int size;
+
+        private void add(long nanos){
+            if(size == values.length){
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        private void addAll(LatencyLog other){
+            values = Arrays.copyOf(values, Math.max(values.length, size + other.size));
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+
+        private void sort(){
+            Arrays.sort(values, 0, size);
+        }
+
+        //percentileMs: nearest-rank percentile of the sorted values
+        private double percentileMs(double percentile){
+            if(size == 0){
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile * size);
+            return values[Math.max(0, rank - 1)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.uyghurjava.spring.security.login.repository;
+
+import com.uyghurjava.spring.security.login.models.ERole;
+import com.uyghurjava.spring.security.login.models.User;
+import com.uyghurjava.spring.security.login.security.service.RoleRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Signups (Hibernate inserts) and imports (JDBC batches with ids from nextIds()) running side by side
+ * on an empty database never get the same id, from the first block of users_seq on.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:userbatch")
+class UserBatchRepositoryTests {
+
+    private static final int USERS = 3 * User.ID_ALLOCATION_SIZE;
+    private static final int IMPORT_CHUNK = 7;
+
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    UserBatchRepository userBatchRepository;
+    @Autowired
+    RoleRegistry roleRegistry;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void signupsAndImportsOnAnEmptyDatabaseGetDistinctIds() throws Exception {
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class)).isZero();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+
+        Future<?> signups = threads.submit(() -> {
+            for (int i = 0; i < USERS; i++){
+                userRepository.save(user("signup" + i));
+            }
+        });
+        Future<?> imports = threads.submit(() -> {
+            for (int start = 0; start < USERS; start += IMPORT_CHUNK){
+                int size = Math.min(IMPORT_CHUNK, USERS - start);
+                long[] ids = userBatchRepository.nextIds(size);
+                List<User> users = new ArrayList<>(size);
+                for (int i = 0; i < size; i++){
+                    User user = user("import" + (start + i));
+                    user.setId(ids[i]);
+                    users.add(user);
+                }
+                transactionTemplate.executeWithoutResult(status -> userBatchRepository.insertUsers(users));
+            }
+        });
+        signups.get();
+        imports.get();
+        threads.shutdown();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(DISTINCT id) FROM users", Long.class)).isEqualTo(2L * USERS);
+        assertThat(jdbcTemplate.queryForObject("SELECT MIN(id) FROM users", Long.class)).isEqualTo(1);
+    }
+
+    private User user(String username){
+        User user = new User(username, username + "@uyghurjava.com", "password");
+        user.setRoles(Collections.singleton(roleRegistry.getRole(ERole.ROLE_USER)));
+        return user;
+    }
+}
@@ -0,0 +1,144 @@
+package com.uyghurjava.spring.security.login.repository;
+
+import com.uyghurjava.spring.security.login.models.ERole;
+import com.uyghurjava.spring.security.login.models.User;
+import com.uyghurjava.spring.security.login.security.service.RoleRegistry;
+import com.uyghurjava.spring.security.login.security.service.UserDetailsServiceImpl;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * With the UserDetails cache disabled, repeated authentications are served by the second-level and query caches:
+ * the first one runs one SQL statement, the next ones none. Evicting a user leaves the other cached queries in place.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:secondlevelcache",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "uyghurcoder.app.userCacheMaxSize=0",
+        "uyghurcoder.app.bcryptStrength=4"
+})
+class UserSecondLevelCacheTests {
+
+    private static final String PASSWORD = "12345678";
+
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    UserBatchRepository userBatchRepository;
+    @Autowired
+    RoleRepository roleRepository;
+    @Autowired
+    UserDetailsServiceImpl userDetailsService;
+    @Autowired
+    RoleRegistry roleRegistry;
+    @Autowired
+    AuthenticationManager authenticationManager;
+    @Autowired
+    EntityCache entityCache;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private Statistics statistics;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp(){
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    void repeatedAuthenticationsRunNoStatement(){
+        entityCache.evictUser(saveUser("cachedSignin").getId());
+
+        statistics.clear();
+        authenticate("cachedSignin");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        statistics.clear();
+        for (int i = 0; i < 3; i++){
+            authenticate("cachedSignin");
+        }
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getQueryCacheHitCount()).isEqualTo(3);
+
+        Map<String, Object> stats = entityCache.stats();
+        assertThat(stats).containsKeys(HibernateCacheConfig.USERS_REGION, HibernateCacheConfig.USER_ROLES_REGION, "queries");
+    }
+
+    @Test
+    void evictingAUserRunsNoStatementAndKeepsTheRoleQueries(){
+        User user = saveUser("evictedUser");
+        authenticate("evictedUser");
+        roleRepository.findByName(ERole.ROLE_USER);
+
+        statistics.clear();
+        entityCache.evictUser(user.getId());
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+
+        roleRepository.findByName(ERole.ROLE_USER);
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        authenticate("evictedUser");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void findUserByUsernameIsServedByTheNaturalIdRegion(){
+        saveUser("naturalIdUser");
+        transactionTemplate.executeWithoutResult(status -> userRepository.findUserByUsername("naturalIdUser"));
+
+        statistics.clear();
+        String email = transactionTemplate.execute(status ->
+                userRepository.findUserByUsername("naturalIdUser").map(User::getEmail).orElse(null));
+
+        assertThat(email).isEqualTo("naturalIdUser@uyghurjava.com");
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getNaturalIdCacheHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void usersInsertedWithJdbcAreNotHiddenByACachedMiss(){
+        assertThatThrownBy(() -> userDetailsService.loadUserByUsername("importedUser"))
+                .isInstanceOf(UsernameNotFoundException.class);
+
+        User user = user("importedUser");
+        user.setId(userBatchRepository.nextId());
+        transactionTemplate.executeWithoutResult(status -> userBatchRepository.insertUsers(Collections.singletonList(user)));
+
+        assertThat(userDetailsService.loadUserByUsername("importedUser").getUsername()).isEqualTo("importedUser");
+    }
+
+    private void authenticate(String username){
+        assertThat(authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, PASSWORD))
+                .isAuthenticated()).isTrue();
+    }
+
+    private User saveUser(String username){
+        return userRepository.save(user(username));
+    }
+
+    private User user(String username){
+        User user = new User(username, username + "@uyghurjava.com", BCrypt.hashpw(PASSWORD, BCrypt.gensalt(4)));
+        user.setRoles(Collections.singleton(roleRegistry.getRole(ERole.ROLE_USER)));
+        return user;
+    }
+}
@@ -0,0 +1,124 @@
+package com.uyghurjava.spring.security.login.security.service;
+
+import com.uyghurjava.spring.security.login.models.User;
+import com.uyghurjava.spring.security.login.repository.RefreshTokenRepository;
+import com.uyghurjava.spring.security.login.repository.UserRepository;
+import com.uyghurjava.spring.security.login.security.service.jwt.TokenDigestCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.servlet.http.Cookie;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Each refresh token can be used once: a replay deletes the whole session (family), of two concurrent rotations
+ * of one token only one succeeds, and an expired token is refused (403) and deleted.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:refreshtoken")
+@AutoConfigureMockMvc
+class RefreshTokenServiceTests {
+
+    private static final String REFRESH_COOKIE = "uyghurCoder-jwt-refresh";
+
+    @Autowired
+    RefreshTokenService refreshTokenService;
+    @Autowired
+    RefreshTokenRepository refreshTokenRepository;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    MockMvc mockMvc;
+
+    @Test
+    void reusedTokenDeletesTheWholeFamily(){
+        long userId = saveUser("reusedRefresh");
+        String first = refreshTokenService.createRefreshToken(userId);
+        String second = refreshTokenService.rotateRefreshToken(first).getToken();
+        String third = refreshTokenService.rotateRefreshToken(second).getToken();
+        String otherSession = refreshTokenService.createRefreshToken(userId);
+        assertThat(familySize(third)).isEqualTo(3);
+
+        assertThatThrownBy(() -> refreshTokenService.rotateRefreshToken(first))
+                .isInstanceOf(TokenRefreshException.class)
+                .hasMessageContaining("already used");
+
+        assertThat(familySize(third)).isZero();
+        assertThatThrownBy(() -> refreshTokenService.rotateRefreshToken(third))
+                .isInstanceOf(TokenRefreshException.class)
+                .hasMessageContaining("not in database");
+        assertThat(refreshTokenService.rotateRefreshToken(otherSession).getUsername()).isEqualTo("reusedRefresh");
+    }
+
+    @Test
+    void concurrentRotationsOfOneTokenHaveOneWinner() throws Exception {
+        long userId = saveUser("concurrentRefresh");
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 20; round++){
+                String token = refreshTokenService.createRefreshToken(userId);
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<String>> rotations = new ArrayList<>();
+                for (int i = 0; i < 2; i++){
+                    rotations.add(threads.submit(() -> {
+                        start.await();
+                        try {
+                            return refreshTokenService.rotateRefreshToken(token).getToken();
+                        } catch (TokenRefreshException e){
+                            return null;
+                        }
+                    }));
+                }
+                start.countDown();
+                int winners = 0;
+                for (Future<String> rotation : rotations){
+                    if(rotation.get() != null){
+                        winners++;
+                    }
+                }
+                assertThat(winners).as("round %d", round).isEqualTo(1);
+            }
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    @Test
+    void expiredTokenIsRefusedAndDeleted() throws Exception {
+        long userId = saveUser("expiredRefresh");
+        String token = refreshTokenService.createRefreshToken(userId);
+        jdbcTemplate.update("UPDATE refresh_tokens SET expiry_date = ? WHERE token_hash = ?",
+                Timestamp.from(Instant.now().minusSeconds(1)), TokenDigestCache.digest(token));
+
+        mockMvc.perform(post("/api/auth/refreshtoken").cookie(new Cookie(REFRESH_COOKIE, token)))
+                .andExpect(status().isForbidden());
+
+        assertThat(refreshTokenRepository.findWithUserByTokenHash(TokenDigestCache.digest(token))).isEmpty();
+    }
+
+    private long familySize(String token){
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM refresh_tokens WHERE family_id ="
+                + " (SELECT family_id FROM refresh_tokens WHERE token_hash = ?)", Long.class, TokenDigestCache.digest(token));
+    }
+
+    private long saveUser(String username){
+        return userRepository.save(new User(username, username + "@uyghurjava.com", "password")).getId();
+    }
+}
@@ -0,0 +1,95 @@
+package com.uyghurjava.spring.security.login.security.service;
+
+import com.uyghurjava.spring.security.login.models.ERole;
+import com.uyghurjava.spring.security.login.models.Role;
+import com.uyghurjava.spring.security.login.models.User;
+import com.uyghurjava.spring.security.login.repository.UserRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The principal of an authentication is loaded with exactly one SQL statement (user, password hash and roles).
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:userdetailsservice",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "uyghurcoder.app.bcryptStrength=4"
+})
+class UserDetailsServiceImplTests {
+
+    private static final String PASSWORD = "12345678";
+
+    @Autowired
+    UserDetailsServiceImpl userDetailsService;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    RoleRegistry roleRegistry;
+    @Autowired
+    AuthenticationManager authenticationManager;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp(){
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void loadUserByUsernameRunsOneStatement(){
+        User user = saveUser("loaderUser", ERole.ROLE_USER, ERole.ROLE_MODERATOR);
+        userDetailsService.evictUser(user.getId(), user.getUsername());
+
+        statistics.clear();
+        UserDetails userDetails = userDetailsService.loadUserByUsername("loaderUser");
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(userDetails.getAuthorities()).extracting("authority")
+                .containsExactlyInAnyOrder("ROLE_USER", "ROLE_MODERATOR");
+
+        //the second load is served by the UserDetails cache
+        statistics.clear();
+        userDetailsService.loadUserByUsername("loaderUser");
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    void authenticationRunsOneStatement(){
+        User user = saveUser("signinUser", ERole.ROLE_USER, ERole.ROLE_ADMIN);
+        userDetailsService.evictUser(user.getId(), user.getUsername());
+
+        statistics.clear();
+        Authentication authentication = authenticationManager
+                .authenticate(new UsernamePasswordAuthenticationToken("signinUser", PASSWORD));
+
+        assertThat(authentication.isAuthenticated()).isTrue();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    private User saveUser(String username, ERole... roleNames){
+        User user = new User(username, username + "@uyghurjava.com", BCrypt.hashpw(PASSWORD, BCrypt.gensalt(4)));
+        Set<Role> roles = new HashSet<>();
+        for (ERole roleName : roleNames){
+            roles.add(roleRegistry.getRole(roleName));
+        }
+        user.setRoles(roles);
+        return userRepository.save(user);
+    }
+}
@@ -0,0 +1,175 @@
+package com.uyghurjava.spring.security.login.security.service.audit;
+
+import com.uyghurjava.spring.security.login.security.service.metrics.AuthMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Events published by concurrent threads are written once each, in the segment files, and read back by user and time range,
+ * across segment rotations and restarts.
+ */
+class AuditLogTests {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    @TempDir
+    Path directory;
+
+    private final List<AuditLog> logs = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (AuditLog log : logs){
+            log.shutdown();
+        }
+    }
+
+    @Test
+    void eventsAreReadBackByUserAndTimeRange() throws Exception {
+        AuditLog log = auditLog(1024, 1 << 20);
+        long before = System.currentTimeMillis();
+        log.signin(AuthMetrics.SigninOutcome.SUCCESS, 7, "auditUser", "10.0.0.1");
+        log.signin(AuthMetrics.SigninOutcome.BAD_CREDENTIALS, 0, "otherUser", "2001:db8::1");
+        log.signup(AuthMetrics.SignupOutcome.USERNAME_TAKEN, 0, "auditUser", "10.0.0.2");
+        log.signout(7, "auditUser", "10.0.0.1");
+        awaitWritten(log, 4);
+        long after = System.currentTimeMillis();
+
+        AuditLogReader reader = log.getReader();
+        assertThat(reader.find("auditUser", before, after, 100))
+                .extracting(AuditEvent::getType, AuditEvent::getOutcome, AuditEvent::getUserId, AuditEvent::getClientIp)
+                .containsExactly(
+                        tuple(AuditEvent.Type.SIGNIN, AuditEvent.Outcome.SUCCESS, 7L, "10.0.0.1"),
+                        tuple(AuditEvent.Type.SIGNUP, AuditEvent.Outcome.USERNAME_TAKEN, 0L, "10.0.0.2"),
+                        tuple(AuditEvent.Type.SIGNOUT, AuditEvent.Outcome.SUCCESS, 7L, "10.0.0.1"));
+        assertThat(reader.find(null, before, after, 2)).extracting(AuditEvent::getUsername)
+                .containsExactly("auditUser", "otherUser");
+        assertThat(reader.find(null, after + 1, Long.MAX_VALUE, 100)).isEmpty();
+    }
+
+    @Test
+    void concurrentEventsAreWrittenOnceAcrossSegmentsAndRestarts() throws Exception {
+        //segments of 16 records, at most 100 segments: 400 events use 25 of them
+        AuditLog log = auditLog(64, 16 * AuditEvent.RECORD_SIZE);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int thread = 0; thread < 4; thread++){
+            String username = "thread" + thread;
+            threads.execute(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < 50; i++){
+                    awaitRoom(log);
+                    log.signin(AuthMetrics.SigninOutcome.SUCCESS, i, username, "127.0.0.1");
+                }
+            });
+        }
+        start.countDown();
+        threads.shutdown();
+        assertThat(threads.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+        awaitWritten(log, 200);
+        log.shutdown();
+
+        //a restart appends after the last record
+        AuditLog restarted = auditLog(64, 16 * AuditEvent.RECORD_SIZE);
+        for (int i = 0; i < 200; i++){
+            awaitRoom(restarted);
+            restarted.signout(i, "restarted", "127.0.0.1");
+        }
+        awaitWritten(restarted, 200);
+
+        AuditLogReader reader = restarted.getReader();
+        List<AuditEvent> events = reader.find(null, 0, Long.MAX_VALUE, Integer.MAX_VALUE);
+        assertThat(events).hasSize(400);
+        for (int thread = 0; thread < 4; thread++){
+            assertThat(reader.find("thread" + thread, 0, Long.MAX_VALUE, Integer.MAX_VALUE))
+                    .extracting(AuditEvent::getUserId).containsExactlyElementsOf(range(50));
+        }
+        assertThat(reader.find("restarted", 0, Long.MAX_VALUE, Integer.MAX_VALUE))
+                .extracting(AuditEvent::getUserId).containsExactlyElementsOf(range(200));
+        assertThat(AuditLogReader.segments(directory)).hasSize(25);
+        assertThat(log.stats().get("dropped") + restarted.stats().get("dropped")).isZero();
+    }
+
+    @Test
+    void aFullRingDropsEventsInsteadOfBlocking() throws Exception {
+        AuditLog log = auditLog(4, 1 << 20);
+        log.shutdown();
+        //the writer is stopped: the ring fills up
+        for (int i = 0; i < 10; i++){
+            log.signout(i, "dropped", "127.0.0.1");
+        }
+        assertThat(log.stats().get("published")).isEqualTo(4);
+        assertThat(log.stats().get("dropped")).isEqualTo(6);
+    }
+
+    @Test
+    void oldestSegmentsAreDeleted() throws Exception {
+        AuditLog log = auditLog(64, 4 * AuditEvent.RECORD_SIZE);
+        ReflectionTestUtils.setField(log, "maxSegments", 3);
+        for (int i = 0; i < 20; i++){
+            log.signout(i, "rotated", "127.0.0.1");
+        }
+        awaitWritten(log, 20);
+
+        assertThat(AuditLogReader.segments(directory)).extracting(AuditLogReader::segmentNumber).containsExactly(3L, 4L, 5L);
+        assertThat(log.getReader().find("rotated", 0, Long.MAX_VALUE, 100)).extracting(AuditEvent::getUserId)
+                .containsExactly(8L, 9L, 10L, 11L, 12L, 13L, 14L, 15L, 16L, 17L, 18L, 19L);
+    }
+
+    private AuditLog auditLog(int bufferSize, long segmentBytes) throws IOException {
+        AuditLog log = new AuditLog();
+        ReflectionTestUtils.setField(log, "directory", directory.toString());
+        ReflectionTestUtils.setField(log, "bufferSize", bufferSize);
+        ReflectionTestUtils.setField(log, "segmentBytes", segmentBytes);
+        ReflectionTestUtils.setField(log, "maxSegments", 100);
+        ReflectionTestUtils.setField(log, "forceMs", 100L);
+        log.init();
+        logs.add(log);
+        return log;
+    }
+
+    private static List<Long> range(int size){
+        List<Long> values = new ArrayList<>();
+        for (long i = 0; i < size; i++){
+            values.add(i);
+        }
+        return values;
+    }
+
+    private static void awaitWritten(AuditLog log, long events) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (log.stats().get("written") < events){
+            assertThat(System.currentTimeMillis()).as("waiting for the writer").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    //awaitRoom: the rings of these tests hold 64 events, let the writer keep up instead of dropping
+    private static void awaitRoom(AuditLog log){
+        while (log.stats().get("pending") > 32){
+            Thread.yield();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch){
+        try {
+            latch.await();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.uyghurjava.spring.security.login.security.service.invalidation;
+
+import com.uyghurjava.spring.security.login.security.service.metrics.AuthMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Invalidations published on one instance reach the other instances, coalesced, and never come back to the publisher.
+ * Each test runs several buses in this JVM: JdbcInvalidationBus instances on one in-memory H2 database, or LocalInvalidationBus
+ * instances on one channel.
+ */
+class InvalidationBusTests {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<AbstractInvalidationBus> buses = new ArrayList<>();
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown(){
+        for (AbstractInvalidationBus bus : buses){
+            bus.shutdown();
+        }
+    }
+
+    @Test
+    void jdbcBusDeliversCoalescedEventsToTheOtherInstances() throws InterruptedException {
+        JdbcInvalidationBus publisher = jdbcBus();
+        JdbcInvalidationBus subscriber = jdbcBus();
+        Queue<InvalidationEvent> publisherEvents = listen(publisher);
+        Queue<InvalidationEvent> subscriberEvents = listen(subscriber);
+
+        long expiresAt = System.currentTimeMillis() + 60000;
+        publisher.publish(InvalidationEvent.Kind.USER, "alice", 42, 0);
+        publisher.publish(InvalidationEvent.Kind.USER, "alice", 42, 0);
+        publisher.publish(InvalidationEvent.Kind.TOKEN_REVOKED, "jti-1", expiresAt);
+
+        awaitTrue(() -> subscriberEvents.size() >= 2);
+        //let a few more polls run: nothing is delivered twice
+        Thread.sleep(500);
+
+        assertThat(subscriberEvents).extracting(InvalidationEvent::getKind, InvalidationEvent::getKey)
+                .containsExactlyInAnyOrder(
+                        tuple(InvalidationEvent.Kind.USER, "alice"),
+                        tuple(InvalidationEvent.Kind.TOKEN_REVOKED, "jti-1"));
+        assertThat(subscriberEvents).filteredOn(event -> event.getKind() == InvalidationEvent.Kind.USER)
+                .extracting(InvalidationEvent::getSubjectId).containsExactly(42L);
+        assertThat(subscriberEvents).filteredOn(event -> event.getKind() == InvalidationEvent.Kind.TOKEN_REVOKED)
+                .extracting(InvalidationEvent::getExpiresAt).containsExactly(expiresAt);
+        assertThat(publisherEvents).isEmpty();
+        assertThat(publisher.stats().get("coalesced")).isEqualTo(1L);
+        assertThat(meterRegistry.get("auth.invalidation.lag").tag("kind", "user").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void jdbcBusReplaysLiveRevocationsToANewInstance(){
+        JdbcInvalidationBus publisher = jdbcBus();
+        publisher.startReceiving();
+        publisher.publish(InvalidationEvent.Kind.TOKEN_REVOKED, "jti-2", System.currentTimeMillis() + 60000);
+        awaitTrue(() -> jdbcTemplate.queryForObject("SELECT COUNT(*) FROM invalidation_events", Integer.class) == 1);
+
+        JdbcInvalidationBus newcomer = jdbcBus();
+        Queue<InvalidationEvent> events = listen(newcomer);
+
+        awaitTrue(() -> !events.isEmpty());
+        assertThat(events.peek().getKey()).isEqualTo("jti-2");
+    }
+
+    @Test
+    void jdbcBusReplaysASparseHistoryWithoutHoldingBackLiveEvents(){
+        JdbcInvalidationBus publisher = jdbcBus();
+        //600 revocations left by the purge, one id out of two: more than one poll, and a gap before each row
+        long expiresAt = System.currentTimeMillis() + 60000;
+        List<Object[]> history = new ArrayList<>();
+        for (int i = 1; i <= 600; i++){
+            history.add(new Object[]{2L * i, "other-node", "TOKEN_REVOKED", "jti-history-" + i, expiresAt, System.currentTimeMillis()});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO invalidation_events (id, node_id, kind, event_key, expires_at, published_at) VALUES (?, ?, ?, ?, ?, ?)",
+                history);
+        jdbcTemplate.execute("ALTER TABLE invalidation_events ALTER COLUMN id RESTART WITH 1201");
+
+        long startedAt = System.currentTimeMillis();
+        JdbcInvalidationBus newcomer = jdbcBus();
+        Queue<InvalidationEvent> events = listen(newcomer);
+        publisher.publish(InvalidationEvent.Kind.USER, "live", 7, 0);
+
+        awaitTrue(() -> events.size() >= 601);
+        //well before the gaps time out
+        assertThat(System.currentTimeMillis() - startedAt).isLessThan(2500);
+        assertThat(events).extracting(InvalidationEvent::getKey).doesNotHaveDuplicates().contains("live", "jti-history-600");
+    }
+
+    @Test
+    void localBusDeliversToTheOtherMembersOfTheChannel(){
+        String channel = UUID.randomUUID().toString();
+        LocalInvalidationBus publisher = localBus(channel);
+        LocalInvalidationBus subscriber = localBus(channel);
+        LocalInvalidationBus otherChannel = localBus(UUID.randomUUID().toString());
+        Queue<InvalidationEvent> publisherEvents = listen(publisher);
+        Queue<InvalidationEvent> subscriberEvents = listen(subscriber);
+        Queue<InvalidationEvent> otherChannelEvents = listen(otherChannel);
+
+        publisher.publish(InvalidationEvent.Kind.ROLES, "*", 0);
+
+        awaitTrue(() -> !subscriberEvents.isEmpty());
+        assertThat(subscriberEvents).extracting(InvalidationEvent::getKey).containsExactly("*");
+        assertThat(publisherEvents).isEmpty();
+        assertThat(otherChannelEvents).isEmpty();
+    }
+
+    private JdbcInvalidationBus jdbcBus(){
+        if(jdbcTemplate == null){
+            jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                    "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        }
+        JdbcInvalidationBus bus = new JdbcInvalidationBus();
+        ReflectionTestUtils.setField(bus, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(bus, "pollMs", 20L);
+        ReflectionTestUtils.setField(bus, "retentionMs", 60000L);
+        bus.createTable();
+        return start(bus);
+    }
+
+    private LocalInvalidationBus localBus(String channel){
+        LocalInvalidationBus bus = new LocalInvalidationBus();
+        ReflectionTestUtils.setField(bus, "channel", channel);
+        return start(bus);
+    }
+
+    private <B extends AbstractInvalidationBus> B start(B bus){
+        AuthMetrics authMetrics = new AuthMetrics();
+        ReflectionTestUtils.setField(authMetrics, "meterRegistry", meterRegistry);
+        authMetrics.init();
+        ReflectionTestUtils.setField(bus, "authMetrics", authMetrics);
+        ReflectionTestUtils.setField(bus, "batchMs", 20L);
+        bus.init();
+        buses.add(bus);
+        return bus;
+    }
+
+    private static Queue<InvalidationEvent> listen(AbstractInvalidationBus bus){
+        Queue<InvalidationEvent> events = new ConcurrentLinkedQueue<>();
+        for (InvalidationEvent.Kind kind : InvalidationEvent.Kind.values()){
+            bus.subscribe(kind, events::add);
+        }
+        //as on ContextRefreshedEvent, once the listeners are subscribed
+        bus.startReceiving();
+        return events;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition){
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()){
+            assertThat(System.currentTimeMillis()).as("waiting for the invalidation").isLessThan(deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.uyghurjava.spring.security.login.security.service.jwt;
+
+import com.uyghurjava.spring.security.login.security.service.invalidation.LocalInvalidationBus;
+import com.uyghurjava.spring.security.login.security.service.metrics.AuthMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A signed out token is rejected by verifyJwtToken, also after a restart with the revocation file;
+ * each revocation is dropped by the timing wheel when its token expires, and the Bloom filter is rebuilt without them.
+ */
+class TokenRevocationStoreTests {
+
+    private static final long TIMEOUT_MS = 5000;
+    private static final String JWT_SECRET = "uyghurCoderSecretKey";
+
+    @TempDir
+    Path directory;
+
+    private final List<TokenRevocationStore> stores = new ArrayList<>();
+    private final List<LocalInvalidationBus> buses = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (TokenRevocationStore store : stores){
+            store.shutdown();
+        }
+        for (LocalInvalidationBus bus : buses){
+            bus.shutdown();
+        }
+    }
+
+    @Test
+    void revokedTokenIsRejectedByVerifyJwtToken() throws Exception {
+        TokenRevocationStore store = store(null);
+        JwtUtils jwtUtils = jwtUtils(store);
+        String token = jwtUtils.generateTokenFromUsername("revokedUser");
+        //verified once: the claims are in the verified-token cache
+        assertThat(jwtUtils.verifyJwtToken(token)).isNotNull();
+
+        assertThat(jwtUtils.revokeJwtToken(token)).isTrue();
+
+        assertThat(jwtUtils.verifyJwtToken(token)).isNull();
+        assertThat(jwtUtils.revokeJwtToken(token)).isFalse();
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(jwtUtils.verifyJwtToken(jwtUtils.generateTokenFromUsername("revokedUser"))).isNotNull();
+    }
+
+    @Test
+    void expiredRevocationIsDroppedByTheTimingWheel() throws Exception {
+        TokenRevocationStore store = store(null);
+        store.revoke("shortLived", System.currentTimeMillis() + 100);
+        store.revoke("longLived", System.currentTimeMillis() + 60000);
+        assertThat(store.isRevoked("shortLived")).isTrue();
+
+        awaitTrue(() -> store.size() == 1);
+
+        assertThat(store.isRevoked("shortLived")).isFalse();
+        assertThat(store.isRevoked("longLived")).isTrue();
+        assertThat(store.stats()).containsEntry("expirations", 1L).containsEntry("revocations", 2L);
+    }
+
+    @Test
+    void bloomFilterIsRebuiltWithoutTheExpiredRevocations() throws Exception {
+        TokenRevocationStore store = store(null);
+        long shortExpiration = System.currentTimeMillis() + 100;
+        for (int i = 0; i < 64; i++){
+            store.revoke("expired-" + i, shortExpiration);
+        }
+        store.revoke("live", System.currentTimeMillis() + 60000);
+
+        awaitTrue(() -> store.stats().get("bloomRebuilds") == 1L);
+
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.isRevoked("live")).isTrue();
+        //before the rebuild, every expired id was a Bloom filter hit (then a false positive); after it, about 1%
+        for (int i = 0; i < 64; i++){
+            assertThat(store.isRevoked("expired-" + i)).isFalse();
+        }
+        assertThat(store.getBloomFalsePositives()).isLessThan(8);
+    }
+
+    @Test
+    void revocationFileKeepsTheTokenRevokedAfterARestart() throws Exception {
+        Path file = directory.resolve("revocations").resolve("revoked.log");
+        TokenRevocationStore store = store(file);
+        JwtUtils jwtUtils = jwtUtils(store);
+        String token = jwtUtils.generateTokenFromUsername("restartUser");
+        String other = jwtUtils.generateTokenFromUsername("otherUser");
+        assertThat(jwtUtils.revokeJwtToken(token)).isTrue();
+        store.revoke("alreadyExpired", System.currentTimeMillis() + 1);
+        store.shutdown();
+        stores.remove(store);
+        Thread.sleep(5);
+
+        TokenRevocationStore restarted = store(file);
+        JwtUtils restartedJwtUtils = jwtUtils(restarted);
+
+        assertThat(restartedJwtUtils.verifyJwtToken(token)).isNull();
+        assertThat(restartedJwtUtils.verifyJwtToken(other)).isNotNull();
+        assertThat(restarted.size()).isEqualTo(1);
+        assertThat(restarted.getRevocations()).isZero();
+    }
+
+    private TokenRevocationStore store(Path file) throws IOException {
+        LocalInvalidationBus bus = new LocalInvalidationBus();
+        ReflectionTestUtils.setField(bus, "channel", UUID.randomUUID().toString());
+        ReflectionTestUtils.setField(bus, "authMetrics", authMetrics());
+        ReflectionTestUtils.setField(bus, "batchMs", 20L);
+        bus.init();
+        buses.add(bus);
+        TokenRevocationStore store = new TokenRevocationStore();
+        ReflectionTestUtils.setField(store, "expectedSize", 1000);
+        ReflectionTestUtils.setField(store, "revocationFile", file == null ? "" : file.toString());
+        ReflectionTestUtils.setField(store, "invalidationBus", bus);
+        store.init();
+        stores.add(store);
+        return store;
+    }
+
+    private static JwtUtils jwtUtils(TokenRevocationStore store) throws Exception {
+        JwtKeyRing keyRing = new JwtKeyRing();
+        ReflectionTestUtils.setField(keyRing, "jwtSecret", JWT_SECRET);
+        ReflectionTestUtils.setField(keyRing, "jwtExpirationMs", 60000L);
+        ReflectionTestUtils.setField(keyRing, "algorithmName", "HS512");
+        ReflectionTestUtils.setField(keyRing, "privateKeyFile", "");
+        ReflectionTestUtils.setField(keyRing, "publicKeyFile", "");
+        keyRing.init();
+        JwtUtils jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 60000);
+        ReflectionTestUtils.setField(jwtUtils, "jwtCacheMaxSize", 100);
+        ReflectionTestUtils.setField(jwtUtils, "jwtRejectedCacheMaxSize", 100);
+        ReflectionTestUtils.setField(jwtUtils, "jwtRejectedCacheTtlMs", 60000L);
+        ReflectionTestUtils.setField(jwtUtils, "jwtMaxLength", 4096);
+        ReflectionTestUtils.setField(jwtUtils, "tokenMode", "jwt");
+        ReflectionTestUtils.setField(jwtUtils, "revocationStore", store);
+        ReflectionTestUtils.setField(jwtUtils, "jwtKeyRing", keyRing);
+        ReflectionTestUtils.setField(jwtUtils, "authMetrics", authMetrics());
+        jwtUtils.init();
+        return jwtUtils;
+    }
+
+    private static AuthMetrics authMetrics(){
+        AuthMetrics authMetrics = new AuthMetrics();
+        ReflectionTestUtils.setField(authMetrics, "meterRegistry", new SimpleMeterRegistry());
+        authMetrics.init();
+        return authMetrics;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()){
+            assertThat(System.currentTimeMillis()).as("waiting for the timing wheel").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.uyghurjava.spring.security.login.security.service.password;
+
+import com.uyghurjava.spring.security.login.security.service.metrics.AuthMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A correct signin whose stored hash needs re-encoding succeeds even when the hashing queue fills up before the re-encode,
+ * and the stored hash is upgraded once the queue has room.
+ */
+class BestEffortRehashAuthenticationProviderTests {
+
+    private static final String PASSWORD = "rehashPassword";
+    private static final long TIMEOUT_MS = 5000;
+
+    private PasswordHashingExecutor executor;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<Thread> blockers = new ArrayList<>();
+    private final AtomicReference<String> storedHash = new AtomicReference<>(BCrypt.hashpw(PASSWORD, BCrypt.gensalt(4)));
+    private volatile boolean fillQueueOnUpgrade;
+
+    @BeforeEach
+    void setUp(){
+        AuthMetrics authMetrics = new AuthMetrics();
+        ReflectionTestUtils.setField(authMetrics, "meterRegistry", new SimpleMeterRegistry());
+        authMetrics.init();
+        executor = new PasswordHashingExecutor();
+        ReflectionTestUtils.setField(executor, "threads", 1);
+        ReflectionTestUtils.setField(executor, "queueCapacity", 1);
+        ReflectionTestUtils.setField(executor, "tomcatMaxThreads", 200);
+        ReflectionTestUtils.setField(executor, "retryAfterSeconds", 1);
+        ReflectionTestUtils.setField(executor, "authMetrics", authMetrics);
+        executor.init();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        release.countDown();
+        for (Thread blocker : blockers){
+            blocker.join(TIMEOUT_MS);
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    void signinSucceedsWhenTheQueueFillsBeforeTheRehash() throws Exception {
+        fillQueueOnUpgrade = true;
+        String before = storedHash.get();
+
+        Authentication result = provider().authenticate(new UsernamePasswordAuthenticationToken("rehashUser", PASSWORD));
+
+        assertThat(result.isAuthenticated()).isTrue();
+        assertThat(executor.getRejected()).isEqualTo(1);
+        assertThat(storedHash.get()).isEqualTo(before);
+    }
+
+    @Test
+    void storedHashIsUpgradedWhenTheQueueHasRoom(){
+        Authentication result = provider().authenticate(new UsernamePasswordAuthenticationToken("rehashUser", PASSWORD));
+
+        assertThat(result.isAuthenticated()).isTrue();
+        assertThat(BCryptCostCalibrator.strengthOf(storedHash.get())).isEqualTo(5);
+        assertThat(BCrypt.checkpw(PASSWORD, storedHash.get())).isTrue();
+        assertThat(((UserDetails) result.getPrincipal()).getPassword()).isEqualTo(storedHash.get());
+    }
+
+    private BestEffortRehashAuthenticationProvider provider(){
+        CalibratedBCryptPasswordEncoder bcrypt = new CalibratedBCryptPasswordEncoder(5) {
+            //upgradeEncoding runs after the password matched and before the re-encode: the queue fills up in between
+            @Override
+            public boolean upgradeEncoding(String encodedPassword) {
+                if(fillQueueOnUpgrade){
+                    fillQueue();
+                }
+                return super.upgradeEncoding(encodedPassword);
+            }
+        };
+        BestEffortRehashAuthenticationProvider provider = new BestEffortRehashAuthenticationProvider();
+        provider.setUserDetailsService(username -> user(username, storedHash.get()));
+        provider.setUserDetailsPasswordService((user, newPassword) -> {
+            storedHash.set(newPassword);
+            return user(user.getUsername(), newPassword);
+        });
+        provider.setPasswordEncoder(new OffloadingPasswordEncoder(bcrypt, executor));
+        return provider;
+    }
+
+    //fillQueue: one task running on the single worker, then one waiting in the queue of 1
+    private void fillQueue(){
+        CountDownLatch running = new CountDownLatch(1);
+        block(running);
+        try {
+            assertThat(running.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        block(new CountDownLatch(1));
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (executor.getQueueDepth() < 1 && System.currentTimeMillis() < deadline){
+            Thread.yield();
+        }
+        assertThat(executor.getQueueDepth()).isEqualTo(1);
+    }
+
+    private void block(CountDownLatch running){
+        Thread blocker = new Thread(() -> executor.execute(AuthMetrics.PasswordOperation.ENCODE, () -> {
+            running.countDown();
+            release.await();
+            return null;
+        }));
+        blocker.start();
+        blockers.add(blocker);
+    }
+
+    private static UserDetails user(String username, String password){
+        return new User(username, password, Collections.emptyList());
+    }
+}
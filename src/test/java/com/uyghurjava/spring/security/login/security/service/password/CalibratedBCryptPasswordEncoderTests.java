@@ -0,0 +1,27 @@
+package com.uyghurjava.spring.security.login.security.service.password;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Stored hashes below the target strength are upgraded, one strength above it is kept, two or more above are downgraded.
+ */
+class CalibratedBCryptPasswordEncoderTests {
+
+    @Test
+    void upgradeEncodingHasHysteresis(){
+        CalibratedBCryptPasswordEncoder encoder = new CalibratedBCryptPasswordEncoder(5);
+
+        assertThat(encoder.upgradeEncoding(hash(4))).isTrue();
+        assertThat(encoder.upgradeEncoding(hash(5))).isFalse();
+        assertThat(encoder.upgradeEncoding(hash(6))).isFalse();
+        assertThat(encoder.upgradeEncoding(hash(7))).isTrue();
+        assertThat(encoder.upgradeEncoding("not a bcrypt hash")).isFalse();
+    }
+
+    private static String hash(int strength){
+        return BCrypt.hashpw("hysteresisPassword", BCrypt.gensalt(strength));
+    }
+}
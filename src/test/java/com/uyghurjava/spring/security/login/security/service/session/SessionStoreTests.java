@@ -0,0 +1,134 @@
+package com.uyghurjava.spring.security.login.security.service.session;
+
+import com.uyghurjava.spring.security.login.models.ERole;
+import com.uyghurjava.spring.security.login.security.service.RoleMask;
+import com.uyghurjava.spring.security.login.security.service.UserDetailsImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A session lives from its creation to its revocation or expiry: an expired session is dropped when it is looked up
+ * or by the sweeper, and a full shard drops its expired sessions before evicting live ones.
+ */
+class SessionStoreTests {
+
+    private static final long TIMEOUT_MS = 5000;
+    private static final long NO_SWEEP_MS = 3600000;
+
+    private final List<SessionStore> stores = new ArrayList<>();
+
+    @AfterEach
+    void tearDown(){
+        for (SessionStore store : stores){
+            store.shutdown();
+        }
+    }
+
+    @Test
+    void sessionIsCreatedFoundAndRevoked(){
+        SessionStore store = store(60000, 1000, NO_SWEEP_MS);
+        int roleMask = RoleMask.bit(ERole.ROLE_USER) | RoleMask.bit(ERole.ROLE_MODERATOR);
+
+        String token = store.create(new UserDetailsImpl(7L, "sessionUser", "session@uyghurjava.com", null, roleMask));
+
+        assertThat(token).hasSize(SessionStore.TOKEN_LENGTH);
+        SessionStore.Session session = store.get(token);
+        assertThat(session.getUserId()).isEqualTo(7);
+        assertThat(session.getUsername()).isEqualTo("sessionUser");
+        assertThat(session.getRoleMask()).isEqualTo(roleMask);
+        assertThat(session.getExpiresAt()).isGreaterThan(System.currentTimeMillis());
+
+        assertThat(store.revoke(token)).isTrue();
+        assertThat(store.get(token)).isNull();
+        assertThat(store.revoke(token)).isFalse();
+        assertThat(store.get("tooShort")).isNull();
+        assertThat(store.stats()).containsEntry("created", 1L).containsEntry("revoked", 1L).containsEntry("live", 0L);
+    }
+
+    @Test
+    void expiredSessionIsDroppedOnLookup() throws InterruptedException {
+        SessionStore store = store(50, 1000, NO_SWEEP_MS);
+        String token = store.create(user());
+        Thread.sleep(60);
+        assertThat(store.size()).isEqualTo(1);
+
+        assertThat(store.get(token)).isNull();
+
+        assertThat(store.size()).isZero();
+        assertThat(store.getExpired()).isEqualTo(1);
+    }
+
+    @Test
+    void sweeperDropsTheSessionsNeverLookedUpAgain() throws InterruptedException {
+        SessionStore store = store(50, 1000, 160);
+        for (int i = 0; i < 20; i++){
+            store.create(user());
+        }
+
+        awaitTrue(() -> store.size() == 0);
+
+        assertThat(store.getExpired()).isEqualTo(20);
+        assertThat(store.getEvicted()).isZero();
+    }
+
+    @Test
+    void fullShardDropsItsExpiredSessionsFirst() throws InterruptedException {
+        //one session per shard: 200 sessions fill every shard
+        SessionStore store = store(500, 16, NO_SWEEP_MS);
+        for (int i = 0; i < 200; i++){
+            store.create(user());
+        }
+        long evicted = store.getEvicted();
+        assertThat(evicted).isEqualTo(200 - store.size());
+        Thread.sleep(600);
+
+        String token = store.create(user());
+
+        assertThat(store.getEvicted()).isEqualTo(evicted);
+        assertThat(store.getExpired()).isEqualTo(1);
+        assertThat(store.get(token)).isNotNull();
+    }
+
+    @Test
+    void fullShardEvictsLiveSessions(){
+        SessionStore store = store(60000, 64, NO_SWEEP_MS);
+        String last = null;
+        for (int i = 0; i < 1000; i++){
+            last = store.create(user());
+        }
+
+        assertThat(store.size()).isLessThanOrEqualTo(64);
+        assertThat(store.getEvicted()).isEqualTo(1000 - store.size());
+        assertThat(store.getExpired()).isZero();
+        assertThat(store.get(last)).isNotNull();
+    }
+
+    private SessionStore store(long sessionDurationMs, int maxSessions, long sweepMs){
+        SessionStore store = new SessionStore();
+        ReflectionTestUtils.setField(store, "sessionDurationMs", sessionDurationMs);
+        ReflectionTestUtils.setField(store, "maxSessions", maxSessions);
+        ReflectionTestUtils.setField(store, "sweepMs", sweepMs);
+        store.init();
+        stores.add(store);
+        return store;
+    }
+
+    private static UserDetailsImpl user(){
+        return new UserDetailsImpl(1L, "sessionUser", "session@uyghurjava.com", null, RoleMask.bit(ERole.ROLE_USER));
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()){
+            assertThat(System.currentTimeMillis()).as("waiting for the sweeper").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.uyghurjava.spring.security.login.security.service.throttle;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Token buckets refill at their rate up to their capacity, failures beyond the free ones block the key with a doubling
+ * backoff up to its maximum, a success clears them, and a full stripe drops its idle keys first and its blocked keys last.
+ * Every call gets an explicit time, taken after the table is created (its times are relative to its creation).
+ */
+class ThrottleTableTests {
+
+    @Test
+    void bucketRefillsAtTheConfiguredRate(){
+        ThrottleTable table = new ThrottleTable(3, 60, 100, 1000, 60000, 1024, 60000);
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < 3; i++){
+            assertThat(table.tryAcquire("refill", start)).isZero();
+        }
+        //one attempt per second: the next one in a second
+        assertThat(table.tryAcquire("refill", start)).isEqualTo(1000);
+        assertThat(table.tryAcquire("refill", start + 999)).isEqualTo(1);
+        assertThat(table.tryAcquire("refill", start + 1000)).isZero();
+        assertThat(table.tryAcquire("refill", start + 1000)).isEqualTo(1000);
+
+        //a long pause refills up to the capacity only
+        long later = start + 3600000;
+        for (int i = 0; i < 3; i++){
+            assertThat(table.tryAcquire("refill", later)).isZero();
+        }
+        assertThat(table.tryAcquire("refill", later)).isPositive();
+    }
+
+    @Test
+    void backoffDoublesAfterTheFreeFailuresUpToTheMaximum(){
+        ThrottleTable table = new ThrottleTable(100, 60, 2, 1000, 5000, 1024, 60000);
+        long now = System.currentTimeMillis();
+
+        table.onFailure("backoff", now);
+        table.onFailure("backoff", now);
+        assertThat(table.tryAcquire("backoff", now)).isZero();
+
+        long[] expectedBackoffs = {1000, 2000, 4000, 5000, 5000};
+        for (long expected : expectedBackoffs){
+            table.onFailure("backoff", now);
+            assertThat(table.tryAcquire("backoff", now)).isEqualTo(-expected);
+        }
+        assertThat(table.tryAcquire("backoff", now + 4999)).isEqualTo(-1);
+        assertThat(table.tryAcquire("backoff", now + 5000)).isZero();
+    }
+
+    @Test
+    void successClearsTheFailures(){
+        ThrottleTable table = new ThrottleTable(100, 60, 2, 1000, 5000, 1024, 60000);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 4; i++){
+            table.onFailure("success", now);
+        }
+        assertThat(table.tryAcquire("success", now)).isNegative();
+
+        table.onSuccess("success");
+
+        assertThat(table.tryAcquire("success", now)).isZero();
+        //the free failures are available again
+        table.onFailure("success", now);
+        table.onFailure("success", now);
+        assertThat(table.tryAcquire("success", now)).isZero();
+        table.onFailure("success", now);
+        assertThat(table.tryAcquire("success", now)).isEqualTo(-1000);
+    }
+
+    @Test
+    void fullStripeDropsIdleKeysFirst(){
+        //4 keys per stripe
+        ThrottleTable table = new ThrottleTable(100, 60, 0, 60000, 60000, 64, 1000);
+        long now = System.currentTimeMillis();
+        List<String> keys = keysOfOneStripe(5);
+        String blocked = keys.get(0);
+        String active = keys.get(1);
+        table.onFailure(blocked, now);
+        table.tryAcquire(keys.get(2), now);
+        table.tryAcquire(keys.get(3), now);
+        long later = now + 5000;
+        table.tryAcquire(active, later);
+
+        table.tryAcquire(keys.get(4), later);
+
+        assertThat(table.getEvictions()).isEqualTo(2);
+        assertThat(table.size()).isEqualTo(3);
+        assertThat(table.tryAcquire(blocked, later)).isNegative();
+    }
+
+    @Test
+    void fullStripeWithoutIdleKeysKeepsTheBlockedKeys(){
+        ThrottleTable table = new ThrottleTable(100, 60, 0, 60000, 60000, 64, 1000);
+        long now = System.currentTimeMillis();
+        List<String> keys = keysOfOneStripe(5);
+        String blocked = keys.get(0);
+        table.onFailure(blocked, now);
+        for (int i = 1; i < 4; i++){
+            table.tryAcquire(keys.get(i), now);
+        }
+
+        table.tryAcquire(keys.get(4), now);
+
+        assertThat(table.getEvictions()).isEqualTo(1);
+        assertThat(table.size()).isEqualTo(4);
+        assertThat(table.tryAcquire(blocked, now)).isNegative();
+    }
+
+    private static List<String> keysOfOneStripe(int count){
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; keys.size() < count; i++){
+            String key = "10.0.0." + i;
+            int stripe = ReflectionTestUtils.invokeMethod(ThrottleTable.class, "stripe", key);
+            if(stripe == 0){
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,133 @@
+package com.uyghurjava.spring.security.login.service;
+
+import com.uyghurjava.spring.security.login.models.User;
+import com.uyghurjava.spring.security.login.models.UserLoginActivity;
+import com.uyghurjava.spring.security.login.repository.UserBatchRepository;
+import com.uyghurjava.spring.security.login.repository.UserLoginActivityRepository;
+import com.uyghurjava.spring.security.login.repository.UserRepository;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Logins are coalesced per user and written in batches by flush() without evicting the cached users,
+ * concurrent logins are neither lost nor counted twice, and shutdown() writes what is still pending.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:loginactivity",
+        "uyghurcoder.app.loginActivityFlushMs=3600000"
+})
+class LoginActivityTrackerTests {
+
+    @Autowired
+    LoginActivityTracker loginActivityTracker;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    UserBatchRepository userBatchRepository;
+    @Autowired
+    UserLoginActivityRepository userLoginActivityRepository;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void repeatedLoginsAreOneRowUpdate(){
+        long frequent = saveUser("frequentLogin");
+        long occasional = saveUser("occasionalLogin");
+        assertThat(loginActivity(frequent).getLoginCount()).isZero();
+        assertThat(loginActivity(frequent).getLastLogin()).isNull();
+
+        Instant before = Instant.now().minusMillis(1);
+        for (int i = 0; i < 3; i++){
+            loginActivityTracker.recordLogin(frequent);
+        }
+        loginActivityTracker.recordLogin(occasional);
+        assertThat(loginCount(frequent)).isZero();
+
+        assertThat(loginActivityTracker.flush()).isEqualTo(2);
+        assertThat(loginActivityTracker.flush()).isZero();
+
+        UserLoginActivity activity = loginActivity(frequent);
+        assertThat(activity.getLoginCount()).isEqualTo(3);
+        assertThat(activity.getLastLogin()).isAfter(before);
+        assertThat(loginActivity(occasional).getLoginCount()).isEqualTo(1);
+        //the second-level cache does not hold the login activity: the flush leaves the cached users in place
+        assertThat(entityManagerFactory.unwrap(SessionFactory.class).getCache().containsEntity(User.class, frequent)).isTrue();
+    }
+
+    @Test
+    void concurrentLoginsAreCountedOnce() throws Exception {
+        long id = saveUser("concurrentLogin");
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        List<Future<?>> logins = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++){
+            logins.add(threads.submit(() -> {
+                for (int i = 0; i < 1000; i++){
+                    loginActivityTracker.recordLogin(id);
+                }
+            }));
+        }
+        //flushes race with the logins
+        boolean done = false;
+        while (!done){
+            loginActivityTracker.flush();
+            done = logins.stream().allMatch(Future::isDone);
+        }
+        threads.shutdown();
+        loginActivityTracker.flush();
+
+        assertThat(loginCount(id)).isEqualTo(4000);
+    }
+
+    @Test
+    void shutdownWritesThePendingLoginsInBatches() throws Exception {
+        LoginActivityTracker tracker = new LoginActivityTracker();
+        ReflectionTestUtils.setField(tracker, "userBatchRepository", userBatchRepository);
+        ReflectionTestUtils.setField(tracker, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(tracker, "flushMs", 3600000L);
+        ReflectionTestUtils.setField(tracker, "batchSize", 2);
+        tracker.init();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++){
+            ids.add(saveUser("shutdownLogin" + i));
+            tracker.recordLogin(ids.get(i));
+        }
+
+        tracker.shutdown();
+
+        for (long id : ids){
+            assertThat(loginCount(id)).isEqualTo(1);
+        }
+        assertThat(tracker.stats()).containsEntry("rowsUpdated", 5L).containsEntry("batches", 3L).containsEntry("pendingUsers", 0L);
+    }
+
+    private long saveUser(String username){
+        return userRepository.save(new User(username, username + "@uyghurjava.com", "password")).getId();
+    }
+
+    private UserLoginActivity loginActivity(long id){
+        return userLoginActivityRepository.findById(id).orElse(null);
+    }
+
+    private long loginCount(long id){
+        return jdbcTemplate.queryForObject("SELECT login_count FROM users WHERE id = ?", Long.class, id);
+    }
+}
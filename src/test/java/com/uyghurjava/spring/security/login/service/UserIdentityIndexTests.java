@@ -0,0 +1,111 @@
+package com.uyghurjava.spring.security.login.service;
+
+import com.uyghurjava.spring.security.login.models.ERole;
+import com.uyghurjava.spring.security.login.models.User;
+import com.uyghurjava.spring.security.login.repository.UserBatchRepository;
+import com.uyghurjava.spring.security.login.repository.UserRepository;
+import com.uyghurjava.spring.security.login.security.service.RoleRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The signup uniqueness check runs no query for a username and an email the Bloom filters know to be new,
+ * one query for a possible hit, and a duplicate the filters missed (inserted elsewhere) still gets a 400.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:useridentityindex",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "uyghurcoder.app.bcryptStrength=4"
+})
+@AutoConfigureMockMvc
+class UserIdentityIndexTests {
+
+    @Autowired
+    UserIdentityIndex userIdentityIndex;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    UserBatchRepository userBatchRepository;
+    @Autowired
+    RoleRegistry roleRegistry;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    MockMvc mockMvc;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp(){
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void newUsernameAndEmailSkipTheDatabase(){
+        long skipped = userIdentityIndex.stats().get("skipped");
+        statistics.clear();
+
+        assertThat(userIdentityIndex.check("brandNewUser", "brandNewUser@uyghurjava.com")).isEqualTo(UserIdentityIndex.Conflict.NONE);
+
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(userIdentityIndex.stats().get("skipped")).isEqualTo(skipped + 1);
+    }
+
+    @Test
+    void possibleHitRunsOneQuery(){
+        User existing = userRepository.save(user("indexedUser"));
+        userIdentityIndex.add(existing.getUsername(), existing.getEmail());
+
+        statistics.clear();
+        assertThat(userIdentityIndex.check("indexedUser", "someoneElse@uyghurjava.com")).isEqualTo(UserIdentityIndex.Conflict.USERNAME);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        statistics.clear();
+        assertThat(userIdentityIndex.check("someoneElse", "indexedUser@uyghurjava.com")).isEqualTo(UserIdentityIndex.Conflict.EMAIL);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void duplicateMissedByTheFiltersGetsABadRequest() throws Exception {
+        //inserted by another instance: this index has not seen it
+        User other = user("racedUser");
+        other.setId(userBatchRepository.nextId());
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                userBatchRepository.insertUsers(Collections.singletonList(other)));
+        long violations = userIdentityIndex.stats().get("constraintViolations");
+
+        mockMvc.perform(post("/api/auth/signup").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\":\"racedUser\",\"email\":\"raced@uyghurjava.com\",\"password\":\"12345678\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Error: Username is already taken!"));
+
+        assertThat(userIdentityIndex.stats().get("constraintViolations")).isEqualTo(violations + 1);
+        //now in the filters: the next signup with this username runs the query instead
+        assertThat(userIdentityIndex.check("racedUser", "raced@uyghurjava.com")).isEqualTo(UserIdentityIndex.Conflict.USERNAME);
+    }
+
+    private User user(String username){
+        User user = new User(username, username + "@uyghurjava.com", "password");
+        user.setRoles(Collections.singleton(roleRegistry.getRole(ERole.ROLE_USER)));
+        return user;
+    }
+}